@@ -1,11 +1,56 @@
 package code;
 
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 /**
  * Entry point for the application.
+ * <p>
+ * Without arguments the application runs interactively. With {@code --script <file>} it runs
+ * the commands in the file, or in standard input if the file is "-" ({@code --batch} is short
+ * for {@code --script -}), without prompts, and stops at the end of the input. In that mode all
+ * output goes through one large buffer that is written out when it fills up and when the
+ * program ends, so long scripts are not slowed down by console output.
+ * </p>
  */
 public class Application {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
     public static void main(String[] args) {
-        CLI cli = new CLI();
-        cli.start();
+        if (args.length == 0) {
+            CLI cli = new CLI();
+            cli.start();
+            return;
+        }
+
+        String script;
+        if (args.length == 1 && args[0].equals("--batch")) {
+            script = "-";
+        } else if (args.length == 2 && args[0].equals("--script")) {
+            script = args[1];
+        } else {
+            System.err.println("Usage: Application [--script <file> | --script - | --batch]");
+            System.exit(2);
+            return;
+        }
+
+        BufferedReader input;
+        try {
+            input = script.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in), 1 << 16)
+                    : Files.newBufferedReader(Paths.get(script), Charset.defaultCharset());
+        } catch (IOException e) {
+            System.err.println("Cannot read script " + script + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE), false);
+        System.setOut(out);
+        // the exit command ends the program with System.exit
+        Runtime.getRuntime().addShutdownHook(new Thread(out::flush));
+        new CLI(input, false).start();
     }
 }
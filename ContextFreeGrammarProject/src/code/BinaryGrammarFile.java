@@ -0,0 +1,339 @@
+package code;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary grammar format (".cfgb") read through a memory mapping.
+ * <p>
+ * Layout, where every number is an unsigned LEB128 varint unless noted otherwise:
+ * <pre>
+ * "CFGB" version(1 byte)
+ * symbol table:  count, then the char code of every symbol
+ * grammar blocks, each:
+ *     start symbol, variable count, variables, terminal count, terminals, rule count,
+ *     then per rule: rule ID, left side, right side length, right side symbols
+ * directory:     count, then per grammar: ID length, ID (UTF-8), block offset, block length
+ * directory offset (8 bytes, big endian)
+ * </pre>
+ * Symbols are written as indices into the symbol table. A rule ID of the form "rN" is written
+ * as {@code N + 1}; any other rule ID is written as {@code 0} followed by its length and its
+ * UTF-8 bytes. Opening a file reads only the symbol table and the directory; a grammar block
+ * is decoded when {@link #load(String)} is called.
+ * </p>
+ */
+public class BinaryGrammarFile implements GrammarSource {
+    /**
+     * File extension that selects this format.
+     */
+    public static final String EXTENSION = ".cfgb";
+
+    private static final byte[] MAGIC = {'C', 'F', 'G', 'B'};
+    private static final int VERSION = 1;
+
+    private final String filePath;
+    private final MappedFile file;
+    private final char[] symbols;
+    private final Map<String, long[]> blocks = new LinkedHashMap<>();
+
+    private BinaryGrammarFile(String filePath, MappedFile file) throws IOException {
+        this.filePath = filePath;
+        this.file = file;
+
+        Input in = new Input(file, 0);
+        for (byte b : MAGIC) {
+            if (file.size() < MAGIC.length + 1 + 8 || in.readByte() != b) {
+                throw new IOException(filePath + " is not a binary grammar file");
+            }
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary grammar file version " + version);
+        }
+        symbols = new char[(int) in.readVarint()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = (char) in.readVarint();
+        }
+
+        long directory = 0;
+        for (int i = 0; i < 8; i++) {
+            directory = (directory << 8) | (file.get(file.size() - 8 + i) & 0xFF);
+        }
+        in = new Input(file, directory);
+        long count = in.readVarint();
+        for (long g = 0; g < count; g++) {
+            String id = in.readString();
+            long offset = in.readVarint();
+            long length = in.readVarint();
+            blocks.put(id, new long[]{offset, length});
+        }
+    }
+
+    /**
+     * Opens a binary grammar file. If the file does not exist, an empty one is created.
+     *
+     * @param filePath the path to the file
+     * @return the opened file
+     * @throws IOException if the file cannot be read or is not in the binary format
+     */
+    public static BinaryGrammarFile open(String filePath) throws IOException {
+        File f = new File(filePath);
+        if (!f.exists()) {
+            write(filePath, Collections.emptyMap());
+        }
+        MappedFile file = new MappedFile(filePath);
+        try {
+            return new BinaryGrammarFile(filePath, file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    @Override
+    public Set<String> getGrammarIds() {
+        return Collections.unmodifiableSet(blocks.keySet());
+    }
+
+    @Override
+    public Grammar load(String id) throws IOException {
+        long[] block = blocks.get(id);
+        if (block == null) {
+            return null;
+        }
+        Input in = new Input(file, block[0]);
+        Grammar grammar = new Grammar(id, symbol(in.readVarint()));
+        long variables = in.readVarint();
+        for (long i = 0; i < variables; i++) {
+            grammar.addVariable(symbol(in.readVarint()));
+        }
+        long terminals = in.readVarint();
+        for (long i = 0; i < terminals; i++) {
+            grammar.addTerminal(symbol(in.readVarint()));
+        }
+        long rules = in.readVarint();
+        char[] rhs = new char[16];
+        for (long i = 0; i < rules; i++) {
+            long number = in.readVarint();
+            String ruleId = number == 0 ? in.readString() : "r" + (number - 1);
+            char lhs = symbol(in.readVarint());
+            int length = (int) in.readVarint();
+            if (length > rhs.length) {
+                rhs = new char[Math.max(length, rhs.length * 2)];
+            }
+            for (int j = 0; j < length; j++) {
+                rhs[j] = symbol(in.readVarint());
+            }
+            grammar.addRule(ruleId, lhs, new String(rhs, 0, length));
+        }
+        return grammar;
+    }
+
+    private char symbol(long index) throws IOException {
+        if (index >= symbols.length) {
+            throw new IOException("Invalid symbol index " + index + " in " + filePath);
+        }
+        return symbols[(int) index];
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Writes grammars in the binary format, overwriting the file.
+     *
+     * @param filePath the path to the output file
+     * @param grammars a Map of grammar IDs to {@link Grammar} instances to save
+     * @throws IOException if an I/O error occurs writing to the file
+     */
+    public static void write(String filePath, Map<String, Grammar> grammars) throws IOException {
+        Map<Character, Integer> symbolIds = new LinkedHashMap<>();
+        for (Grammar grammar : grammars.values()) {
+            symbolIds.putIfAbsent(grammar.getStartSymbol(), symbolIds.size());
+            for (char v : grammar.getVariables()) symbolIds.putIfAbsent(v, symbolIds.size());
+            for (char t : grammar.getTerminals()) symbolIds.putIfAbsent(t, symbolIds.size());
+            for (Rule rule : grammar.getAllRules()) {
+                symbolIds.putIfAbsent(rule.getLeftSide(), symbolIds.size());
+                String rhs = rule.getRightSide();
+                for (int i = 0; i < rhs.length(); i++) {
+                    symbolIds.putIfAbsent(rhs.charAt(i), symbolIds.size());
+                }
+            }
+        }
+
+        try (Output out = new Output(new FileOutputStream(filePath))) {
+            out.writeBytes(MAGIC);
+            out.writeByte(VERSION);
+            out.writeVarint(symbolIds.size());
+            for (char c : symbolIds.keySet()) {
+                out.writeVarint(c);
+            }
+
+            List<String> ids = new ArrayList<>();
+            List<long[]> offsets = new ArrayList<>();
+            for (Grammar grammar : grammars.values()) {
+                long start = out.position();
+                out.writeVarint(symbolIds.get(grammar.getStartSymbol()));
+                out.writeVarint(grammar.getVariables().size());
+                for (char v : grammar.getVariables()) out.writeVarint(symbolIds.get(v));
+                out.writeVarint(grammar.getTerminals().size());
+                for (char t : grammar.getTerminals()) out.writeVarint(symbolIds.get(t));
+                out.writeVarint(grammar.getAllRules().size());
+                for (Rule rule : grammar.getAllRules()) {
+                    writeRuleId(out, rule.getId());
+                    out.writeVarint(symbolIds.get(rule.getLeftSide()));
+                    String rhs = rule.getRightSide();
+                    out.writeVarint(rhs.length());
+                    for (int i = 0; i < rhs.length(); i++) {
+                        out.writeVarint(symbolIds.get(rhs.charAt(i)));
+                    }
+                }
+                ids.add(grammar.getId());
+                offsets.add(new long[]{start, out.position() - start});
+            }
+
+            long directory = out.position();
+            out.writeVarint(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                out.writeString(ids.get(i));
+                out.writeVarint(offsets.get(i)[0]);
+                out.writeVarint(offsets.get(i)[1]);
+            }
+            for (int i = 7; i >= 0; i--) {
+                out.writeByte((int) (directory >>> (8 * i)));
+            }
+        }
+    }
+
+    private static void writeRuleId(Output out, String id) throws IOException {
+        if (id.length() > 1 && id.length() <= 10 && id.charAt(0) == 'r' && id.charAt(1) != '0') {
+            long number = 0;
+            boolean numeric = true;
+            for (int i = 1; i < id.length() && numeric; i++) {
+                char c = id.charAt(i);
+                numeric = c >= '0' && c <= '9';
+                number = number * 10 + (c - '0');
+            }
+            if (numeric) {
+                out.writeVarint(number + 1);
+                return;
+            }
+        }
+        out.writeVarint(0);
+        out.writeString(id);
+    }
+
+    /**
+     * Sequential reader over a mapped file.
+     */
+    private static final class Input {
+        private final MappedFile file;
+        private long position;
+
+        Input(MappedFile file, long position) {
+            this.file = file;
+            this.position = position;
+        }
+
+        int readByte() throws IOException {
+            if (position >= file.size()) {
+                throw new EOFException("Unexpected end of binary grammar file");
+            }
+            return file.get(position++) & 0xFF;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+                if (shift > 63) {
+                    throw new IOException("Malformed varint in binary grammar file");
+                }
+            }
+        }
+
+        String readString() throws IOException {
+            int length = (int) readVarint();
+            if (position + length > file.size()) {
+                throw new EOFException("Unexpected end of binary grammar file");
+            }
+            byte[] bytes = file.readBytes(position, position + length);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Buffered writer that keeps track of the absolute position in the file.
+     */
+    private static final class Output implements Closeable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[1 << 16];
+        private int count;
+        private long flushed;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        long position() {
+            return flushed + count;
+        }
+
+        void writeByte(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            for (byte b : bytes) {
+                writeByte(b);
+            }
+        }
+
+        void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer, 0, count);
+            flushed += count;
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package code;
+
+import code.extensions.FreshVariables;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Single-pass importer for grammars written in BNF or EBNF.
+ * <p>
+ * Accepted notation:
+ * <ul>
+ *     <li>rules {@code <name> ::= ...} or {@code name = ...}, optionally ended by ';' or '.';
+ *     without a terminator a rule ends where the next "name ::=" begins</li>
+ *     <li>nonterminals as {@code <any text>} or bare identifiers, terminals as quoted strings
+ *     ({@code "..."} or {@code '...'}); each character of a string is one terminal, and an
+ *     empty string or 'ε' stands for the empty word</li>
+ *     <li>alternatives with '|', concatenation by juxtaposition or ',', grouping with
+ *     {@code ( )}, optional parts with {@code [ ]} or a '?' suffix, repetition with
+ *     {@code { }} or a '*' suffix, and one-or-more with a '+' suffix</li>
+ *     <li>comments {@code (* ... *)}, and {@code //} or {@code #} up to the end of the line</li>
+ * </ul>
+ * The left side of the first rule becomes the start symbol.
+ * </p>
+ * <p>
+ * The input is tokenized from the reader as it is parsed, and every production is added to
+ * the {@link Grammar} as soon as its rule has been read, so only the current rule is held in
+ * memory. EBNF constructs are expanded into plain rules over fresh variables: an optional part
+ * X becomes {@code N -> X | ε}, a repetition {@code N -> X N | ε}, one-or-more
+ * {@code N -> X N | X} and a group {@code N -> X | Y}; identical constructs share a variable.
+ * Nonterminal names are mapped to single-character variables with {@link FreshVariables}.
+ * If a terminal later turns out to use the character of an already named variable, that
+ * variable is renamed in the rules added so far.
+ * </p>
+ */
+public class BnfImporter {
+    private static final char EPSILON = 'ε';
+    private static final int VARIABLE = Integer.MIN_VALUE;
+
+    private enum Kind {
+        NAME, TERMINAL, EPSILON, DEFINE, BAR, END, LPAREN, RPAREN, LBRACKET, RBRACKET, LBRACE, RBRACE,
+        QUESTION, STAR, PLUS, EOF
+    }
+
+    private static final class Token {
+        final Kind kind;
+        final String text;
+        final long line;
+        final int column;
+
+        Token(Kind kind, String text, long line, int column) {
+            this.kind = kind;
+            this.text = text;
+            this.line = line;
+            this.column = column;
+        }
+    }
+
+    /**
+     * A sequence of symbols: terminals are stored as their character, variables as
+     * {@code VARIABLE + index}, which keeps them apart from any character.
+     */
+    private static final class Symbols {
+        int[] data = new int[8];
+        int size;
+
+        void add(int symbol) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = symbol;
+        }
+
+        void addAll(Symbols other) {
+            for (int i = 0; i < other.size; i++) add(other.data[i]);
+        }
+    }
+
+    private final Reader reader;
+    private final String source;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long line = 1;
+    private int column = 1;
+    private final Deque<Token> lookahead = new ArrayDeque<>();
+
+    private final Grammar grammar;
+    private final FreshVariables fresh;
+    private final Map<String, Integer> variablesByName = new LinkedHashMap<>();
+    private final List<Character> variableChars = new ArrayList<>();
+    private final Map<Character, Integer> variablesByChar = new HashMap<>();
+    private final Map<String, Integer> constructs = new HashMap<>();
+    private int ruleCount;
+    private boolean hasStart;
+
+    private BnfImporter(Reader reader, String source, String grammarId) {
+        this.reader = reader;
+        this.source = source;
+        this.grammar = new Grammar(grammarId, 'S');
+        this.grammar.removeVariable('S');
+        this.fresh = new FreshVariables(grammar);
+    }
+
+    /**
+     * Reads a BNF/EBNF grammar.
+     *
+     * @param reader    the grammar text
+     * @param source    the name of the file used in error messages, or {@code null}
+     * @param grammarId the ID of the created grammar
+     * @return the importer holding the created grammar and the names of its variables
+     * @throws IOException if reading fails
+     * @throws GrammarParseException if the text is not valid BNF/EBNF
+     */
+    public static BnfImporter read(Reader reader, String source, String grammarId) throws IOException {
+        BnfImporter importer = new BnfImporter(reader, source, grammarId);
+        importer.parse();
+        return importer;
+    }
+
+    public Grammar getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * @return the variable chosen for every nonterminal name of the source, in order of first use
+     */
+    public Map<String, Character> getVariableNames() {
+        Map<String, Character> names = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : variablesByName.entrySet()) {
+            names.put(entry.getKey(), variableChars.get(entry.getValue()));
+        }
+        return names;
+    }
+
+    // ---- parser ----
+
+    private void parse() throws IOException {
+        while (peek(0).kind != Kind.EOF) {
+            Token name = next();
+            if (name.kind != Kind.NAME) {
+                throw error(name, "Expected the name of a rule");
+            }
+            Token define = next();
+            if (define.kind != Kind.DEFINE) {
+                throw error(define, "Expected '::=' or '='");
+            }
+            int left = nameVariable(name.text);
+            if (!hasStart) {
+                grammar.setStartSymbol(variableChars.get(left));
+                hasStart = true;
+            }
+            List<Symbols> alternatives = alternatives();
+            Token end = peek(0);
+            if (end.kind == Kind.END) {
+                next();
+            } else if (end.kind != Kind.EOF && !startsRule()) {
+                throw error(end, "Unexpected " + describe(end));
+            }
+            Set<String> emitted = new HashSet<>();
+            for (Symbols alternative : alternatives) {
+                if (emitted.add(key(alternative))) {
+                    emit(left, alternative);
+                }
+            }
+        }
+        if (!hasStart) {
+            throw new GrammarParseException(source, line, column, "No rules found");
+        }
+    }
+
+    private List<Symbols> alternatives() throws IOException {
+        List<Symbols> alternatives = new ArrayList<>();
+        alternatives.add(sequence());
+        while (peek(0).kind == Kind.BAR) {
+            next();
+            alternatives.add(sequence());
+        }
+        return alternatives;
+    }
+
+    private Symbols sequence() throws IOException {
+        Symbols sequence = new Symbols();
+        while (true) {
+            Token token = peek(0);
+            switch (token.kind) {
+                case NAME:
+                    if (startsRule()) return sequence;
+                    sequence.addAll(factor());
+                    break;
+                case TERMINAL:
+                case EPSILON:
+                case LPAREN:
+                case LBRACKET:
+                case LBRACE:
+                    sequence.addAll(factor());
+                    break;
+                default:
+                    return sequence;
+            }
+        }
+    }
+
+    private Symbols factor() throws IOException {
+        Symbols symbols = primary();
+        while (true) {
+            Kind kind = peek(0).kind;
+            if (kind == Kind.QUESTION) {
+                symbols = construct("?", Collections.singletonList(symbols));
+            } else if (kind == Kind.STAR) {
+                symbols = construct("*", Collections.singletonList(symbols));
+            } else if (kind == Kind.PLUS) {
+                symbols = construct("+", Collections.singletonList(symbols));
+            } else {
+                return symbols;
+            }
+            next();
+        }
+    }
+
+    private Symbols primary() throws IOException {
+        Token token = next();
+        Symbols symbols = new Symbols();
+        switch (token.kind) {
+            case NAME:
+                symbols.add(VARIABLE + nameVariable(token.text));
+                return symbols;
+            case TERMINAL:
+                for (int i = 0; i < token.text.length(); i++) {
+                    symbols.add(terminal(token.text.charAt(i)));
+                }
+                return symbols;
+            case EPSILON:
+                return symbols;
+            case LPAREN:
+                return closeGroup("()", Kind.RPAREN, "')'");
+            case LBRACKET:
+                return closeGroup("?", Kind.RBRACKET, "']'");
+            case LBRACE:
+                return closeGroup("*", Kind.RBRACE, "'}'");
+            default:
+                throw error(token, "Unexpected " + describe(token));
+        }
+    }
+
+    private Symbols closeGroup(String kind, Kind close, String expected) throws IOException {
+        List<Symbols> alternatives = alternatives();
+        Token token = next();
+        if (token.kind != close) {
+            throw error(token, "Expected " + expected + " but found " + describe(token));
+        }
+        return construct(kind, alternatives);
+    }
+
+    /**
+     * Returns a fresh variable that derives the given EBNF construct over the alternatives,
+     * reusing the variable of an identical construct.
+     */
+    private Symbols construct(String kind, List<Symbols> alternatives) {
+        Symbols result = new Symbols();
+        if (kind.equals("()") && alternatives.size() == 1) {
+            return alternatives.get(0);
+        }
+        StringBuilder key = new StringBuilder(kind);
+        for (Symbols alternative : alternatives) {
+            key.append('|').append(key(alternative));
+        }
+        Integer existing = constructs.get(key.toString());
+        if (existing != null) {
+            result.add(VARIABLE + existing);
+            return result;
+        }
+
+        int variable = newVariable();
+        constructs.put(key.toString(), variable);
+        Symbols self = new Symbols();
+        self.add(VARIABLE + variable);
+        for (Symbols alternative : alternatives) {
+            switch (kind) {
+                case "()":
+                    emit(variable, alternative);
+                    break;
+                case "?":
+                    emit(variable, alternative);
+                    break;
+                default: {
+                    Symbols repeated = new Symbols();
+                    repeated.addAll(alternative);
+                    repeated.addAll(self);
+                    emit(variable, repeated);
+                    if (kind.equals("+")) emit(variable, alternative);
+                }
+            }
+        }
+        if (!kind.equals("()") && !kind.equals("+")) {
+            emit(variable, new Symbols());
+        }
+        result.add(VARIABLE + variable);
+        return result;
+    }
+
+    private static String key(Symbols symbols) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < symbols.size; i++) key.append(symbols.data[i]).append(',');
+        return key.toString();
+    }
+
+    private boolean startsRule() throws IOException {
+        return peek(0).kind == Kind.NAME && peek(1).kind == Kind.DEFINE;
+    }
+
+    // ---- symbols ----
+
+    private int nameVariable(String name) {
+        Integer variable = variablesByName.get(name);
+        if (variable == null) {
+            variable = newVariable();
+            variablesByName.put(name, variable);
+        }
+        return variable;
+    }
+
+    private int newVariable() {
+        char c = fresh.next();
+        grammar.addVariable(c);
+        variablesByChar.put(c, variableChars.size());
+        variableChars.add(c);
+        return variableChars.size() - 1;
+    }
+
+    private int terminal(char c) {
+        if (!grammar.getTerminals().contains(c)) {
+            Integer clash = variablesByChar.get(c);
+            if (clash != null) {
+                rename(clash);
+            }
+            fresh.reserve(c);
+            grammar.addTerminal(c);
+        }
+        return c;
+    }
+
+    /**
+     * Gives a variable a new character, rewriting the rules that were already added.
+     */
+    private void rename(int variable) {
+        char old = variableChars.get(variable);
+        char renamed = fresh.next();
+        grammar.addVariable(renamed);
+        List<Rule> affected = new ArrayList<>();
+        for (Rule rule : grammar.getAllRules()) {
+            if (rule.getLeftSide() == old || rule.getRightSide().indexOf(old) >= 0) affected.add(rule);
+        }
+        for (Rule rule : affected) {
+            grammar.removeRule(rule.getId());
+            char left = rule.getLeftSide() == old ? renamed : rule.getLeftSide();
+            grammar.addRule(rule.getId(), left, rule.getRightSide().replace(old, renamed));
+        }
+        if (grammar.getStartSymbol() == old) {
+            grammar.setStartSymbol(renamed);
+        }
+        grammar.removeVariable(old);
+        variablesByChar.remove(old);
+        variablesByChar.put(renamed, variable);
+        variableChars.set(variable, renamed);
+    }
+
+    private void emit(int left, Symbols right) {
+        StringBuilder body = new StringBuilder(Math.max(1, right.size));
+        for (int i = 0; i < right.size; i++) {
+            int symbol = right.data[i];
+            body.append(symbol < 0 ? variableChars.get(symbol - VARIABLE) : (char) symbol);
+        }
+        if (body.length() == 0) {
+            grammar.addTerminal(EPSILON);
+            body.append(EPSILON);
+        }
+        grammar.addRule("r" + (++ruleCount), variableChars.get(left), body.toString());
+    }
+
+    // ---- tokenizer ----
+
+    private Token peek(int index) throws IOException {
+        while (lookahead.size() <= index) {
+            lookahead.addLast(readToken());
+        }
+        Iterator<Token> tokens = lookahead.iterator();
+        for (int i = 0; i < index; i++) tokens.next();
+        return tokens.next();
+    }
+
+    private Token next() throws IOException {
+        peek(0);
+        return lookahead.removeFirst();
+    }
+
+    private Token readToken() throws IOException {
+        skipSpaceAndComments();
+        long tokenLine = line;
+        int tokenColumn = column;
+        int c = read();
+        switch (c) {
+            case -1: return new Token(Kind.EOF, "", tokenLine, tokenColumn);
+            case '|': return new Token(Kind.BAR, "|", tokenLine, tokenColumn);
+            case ';': case '.': return new Token(Kind.END, String.valueOf((char) c), tokenLine, tokenColumn);
+            case '(': return new Token(Kind.LPAREN, "(", tokenLine, tokenColumn);
+            case ')': return new Token(Kind.RPAREN, ")", tokenLine, tokenColumn);
+            case '[': return new Token(Kind.LBRACKET, "[", tokenLine, tokenColumn);
+            case ']': return new Token(Kind.RBRACKET, "]", tokenLine, tokenColumn);
+            case '{': return new Token(Kind.LBRACE, "{", tokenLine, tokenColumn);
+            case '}': return new Token(Kind.RBRACE, "}", tokenLine, tokenColumn);
+            case '?': return new Token(Kind.QUESTION, "?", tokenLine, tokenColumn);
+            case '*': return new Token(Kind.STAR, "*", tokenLine, tokenColumn);
+            case '+': return new Token(Kind.PLUS, "+", tokenLine, tokenColumn);
+            case '=': return new Token(Kind.DEFINE, "=", tokenLine, tokenColumn);
+            case EPSILON: return new Token(Kind.EPSILON, "ε", tokenLine, tokenColumn);
+            case ':':
+                if (peekChar(0) == ':' && peekChar(1) == '=') {
+                    read();
+                    read();
+                    return new Token(Kind.DEFINE, "::=", tokenLine, tokenColumn);
+                }
+                if (peekChar(0) == '=') {
+                    read();
+                    return new Token(Kind.DEFINE, ":=", tokenLine, tokenColumn);
+                }
+                break;
+            case '<': {
+                StringBuilder name = new StringBuilder();
+                for (int d = read(); d != '>'; d = read()) {
+                    if (d == -1 || d == '\n') {
+                        throw new GrammarParseException(source, tokenLine, tokenColumn, "Unterminated '<'");
+                    }
+                    name.append((char) d);
+                }
+                return new Token(Kind.NAME, name.toString().trim(), tokenLine, tokenColumn);
+            }
+            case '"':
+            case '\'': {
+                StringBuilder text = new StringBuilder();
+                for (int d = read(); d != c; d = read()) {
+                    if (d == -1 || d == '\n') {
+                        throw new GrammarParseException(source, tokenLine, tokenColumn, "Unterminated string");
+                    }
+                    if (d == '\\') {
+                        int e = read();
+                        d = e == 'n' ? '\n' : e == 't' ? '\t' : e == 'r' ? '\r' : e;
+                        if (d == -1) {
+                            throw new GrammarParseException(source, tokenLine, tokenColumn, "Unterminated string");
+                        }
+                    }
+                    text.append((char) d);
+                }
+                Kind kind = text.length() == 0 ? Kind.EPSILON : Kind.TERMINAL;
+                return new Token(kind, text.toString(), tokenLine, tokenColumn);
+            }
+            default:
+                if (Character.isLetter(c) || c == '_') {
+                    StringBuilder name = new StringBuilder().append((char) c);
+                    while (Character.isLetterOrDigit(peekChar(0)) || peekChar(0) == '_' || peekChar(0) == '-') {
+                        name.append((char) read());
+                    }
+                    return new Token(Kind.NAME, name.toString(), tokenLine, tokenColumn);
+                }
+        }
+        throw new GrammarParseException(source, tokenLine, tokenColumn, "Unexpected character '" + (char) c + "'");
+    }
+
+    private void skipSpaceAndComments() throws IOException {
+        while (true) {
+            int c = peekChar(0);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == ',') {
+                read();
+            } else if (c == '#' || (c == '/' && peekChar(1) == '/')) {
+                while (peekChar(0) != -1 && peekChar(0) != '\n') read();
+            } else if (c == '(' && peekChar(1) == '*') {
+                long startLine = line;
+                int startColumn = column;
+                read();
+                read();
+                while (!(peekChar(0) == '*' && peekChar(1) == ')')) {
+                    if (read() == -1) {
+                        throw new GrammarParseException(source, startLine, startColumn, "Unterminated comment");
+                    }
+                }
+                read();
+                read();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int peekChar(int offset) throws IOException {
+        if (position + offset >= limit) {
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            while (limit <= offset) {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) return -1;
+                limit += read;
+            }
+        }
+        return buffer[position + offset];
+    }
+
+    private int read() throws IOException {
+        int c = peekChar(0);
+        if (c == -1) return -1;
+        position++;
+        if (c == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+        return c;
+    }
+
+    private GrammarParseException error(Token token, String message) {
+        return new GrammarParseException(source, token.line, token.column, message);
+    }
+
+    private static String describe(Token token) {
+        return token.kind == Kind.EOF ? "end of input" : "'" + token.text + "'";
+    }
+}
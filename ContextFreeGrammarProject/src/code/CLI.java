@@ -2,22 +2,51 @@ package code;
 
 import code.commands.*;
 import code.enums.CommandName;
+import code.extensions.Budget;
+import code.extensions.Progress;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 /**
  * Command line interface for interacting with the {@link GrammarManager}.
- * Initializes available commands and processes user input in a loop until the user exits the program.
+ * Initializes available commands and processes user input in a loop until the user exits the
+ * program or the input ends.
  */
 public class CLI {
     private GrammarManager manager;
+    private GrammarSnapshots snapshots;
+    private JobManager jobs;
+    private CommandStats stats;
     private Map<String, Command> commandMap;
-    private Scanner scanner =  new Scanner(System.in);
+    private BufferedReader input;
+    private boolean interactive;
 
+    /**
+     * Creates an interactive command line that reads commands from {@code System.in}.
+     */
     public CLI() {
+        this(new BufferedReader(new InputStreamReader(System.in)), true);
+    }
+
+    /**
+     * @param input       the commands, one per line
+     * @param interactive whether to print a prompt before every command; when {@code false},
+     *                    lines starting with '#' are skipped as comments
+     */
+    public CLI(BufferedReader input, boolean interactive) {
         this.manager = new GrammarManager();
+        this.snapshots = new GrammarSnapshots(manager);
+        this.jobs = new JobManager(snapshots);
+        this.stats = new CommandStats();
         this.commandMap = new HashMap<>();
+        this.input = input;
+        this.interactive = interactive;
         initializeCommands();
     }
 
@@ -41,6 +70,21 @@ public class CLI {
         commandMap.put(CommandName.ITER.getCommand(), new IterCommand(manager));
         commandMap.put(CommandName.EMPTY.getCommand(), new EmptyCommand(manager));
         commandMap.put(CommandName.CHOMSKIFY.getCommand(), new ChomskifyCommand(manager));
+        commandMap.put(CommandName.ANALYZE.getCommand(), new AnalyzeCommand(manager));
+        commandMap.put(CommandName.EXPLAIN.getCommand(), new ExplainCommand(manager));
+        commandMap.put(CommandName.SHORTEST.getCommand(), new ShortestCommand(manager));
+        commandMap.put(CommandName.GREIBACH.getCommand(), new GreibachCommand(manager));
+        commandMap.put(CommandName.NO_LEFT_REC.getCommand(), new NoLeftRecCommand(manager));
+        commandMap.put(CommandName.COMPACT.getCommand(), new CompactCommand(manager));
+        commandMap.put(CommandName.IMPORT.getCommand(), new ImportCommand(manager));
+        commandMap.put(CommandName.WATCH.getCommand(), new WatchCommand(manager));
+        commandMap.put(CommandName.SERVE.getCommand(), new ServeCommand(snapshots, commandMap));
+        commandMap.put(CommandName.JOB.getCommand(), new JobCommand(jobs));
+        commandMap.put(CommandName.JOBS.getCommand(), new JobsCommand(jobs));
+        commandMap.put(CommandName.PIPE.getCommand(), new PipelineCommand(manager));
+        commandMap.put(CommandName.BUDGET.getCommand(), new BudgetCommand());
+        commandMap.put(CommandName.STATS.getCommand(), new StatsCommand(stats));
+        commandMap.put(CommandName.MEMORY.getCommand(), new MemoryCommand(manager));
         commandMap.put(CommandName.HELP.getCommand(), new HelpCommand());
         commandMap.put(CommandName.EXIT.getCommand(), new ExitCommand());
     }
@@ -48,23 +92,54 @@ public class CLI {
     /**
      * Starts the command loop.
      * Displays a prompt, reads user input, and executes the appropriate command.
-     * Continues until the {@code exit} command is executed.
+     * Continues until the {@code exit} command is executed or the input ends.
      */
     public void start() {
-        System.out.println("Type 'help' to view all commands.");
+        if (interactive) {
+            System.out.println("Type 'help' to view all commands.");
+        }
         while (true) {
-            System.out.print("-> ");
-            String line = scanner.nextLine().trim();
-            if (line.isEmpty()) continue;
+            if (interactive) {
+                System.out.print("-> ");
+            }
+            String line;
+            try {
+                line = input.readLine();
+            } catch (IOException e) {
+                System.out.println("Error reading commands: " + e.getMessage());
+                break;
+            }
+            if (line == null) break;
+            line = line.trim();
+            if (line.isEmpty() || (!interactive && line.startsWith("#"))) continue;
 
             String[] tokens = line.split("\\s+");
-            String cmd = tokens[0];
+            String cmd = PipelineCommand.isPipeline(tokens) ? CommandName.PIPE.getCommand() : tokens[0];
 
             if (commandMap.containsKey(cmd)) {
-                commandMap.get(cmd).execute(tokens);
+                // a GrammarFileWatcher swaps reloaded grammars in between commands
+                synchronized (manager) {
+                    long start = System.nanoTime();
+                    boolean failed = false;
+                    // "memory pin" and "memory unpin" manage the pins themselves
+                    List<String> pinned = cmd.equals(CommandName.MEMORY.getCommand())
+                            ? Collections.emptyList() : manager.pinArguments(tokens);
+                    Progress.Guard guard = Progress.guard(cmd, Budget.of(cmd));
+                    try {
+                        commandMap.get(cmd).execute(tokens);
+                    } catch (RuntimeException e) {
+                        failed = true;
+                        System.out.println("Error: " + e.getMessage());
+                    } finally {
+                        guard.close();
+                        manager.unpinAll(pinned);
+                    }
+                    stats.record(cmd, System.nanoTime() - start, failed);
+                }
             } else {
                 System.out.println("Invalid command. Type 'help' to view all commands.");
             }
         }
+        System.out.flush();
     }
 }
@@ -0,0 +1,178 @@
+package code;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation counts, exception counts and {@link LatencyHistogram latency histograms} of the
+ * commands run by the {@link CLI}, per command name.
+ * <p>
+ * Commands report most problems, such as a wrong usage or an unknown grammar ID, by printing
+ * a message and returning normally; only invocations that ended with an exception, which the
+ * {@link CLI} prints as "Error: ...", are counted as exceptions.
+ * </p>
+ * <p>
+ * Recording takes no lock and, once a command has run for the first time, allocates
+ * nothing, so it can wrap every command. The statistics can be exported as a JSON file that
+ * is rewritten periodically; each export is written to a temporary file and renamed over the
+ * target, so readers never see a partial file.
+ * </p>
+ */
+public class CommandStats {
+    /**
+     * The statistics of one command.
+     */
+    public static class Entry {
+        private final LongAdder exceptions = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        public long getInvocations() {
+            return latency.getCount();
+        }
+
+        /**
+         * @return the number of invocations that ended with an exception
+         */
+        public long getExceptions() {
+            return exceptions.sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long startTime = System.currentTimeMillis();
+    private ScheduledExecutorService exporter;
+    private ScheduledFuture<?> export;
+    private Path exportPath;
+
+    /**
+     * Records an invocation of a command.
+     *
+     * @param command the name of the command
+     * @param nanos   how long it ran
+     * @param failed  whether it ended with an exception
+     */
+    public void record(String command, long nanos, boolean failed) {
+        Entry entry = entries.get(command);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(command, name -> new Entry());
+        }
+        entry.latency.record(nanos);
+        if (failed) {
+            entry.exceptions.increment();
+        }
+    }
+
+    /**
+     * @return the statistics of every command that has run, by command name
+     */
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Forgets all recorded invocations.
+     */
+    public void reset() {
+        entries.clear();
+    }
+
+    /**
+     * @return the statistics as a JSON object with the time of the export in milliseconds
+     *         since the epoch and, per command, its invocations, exceptions and latency in
+     *         microseconds
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"since\":").append(startTime)
+                .append(",\"time\":").append(System.currentTimeMillis())
+                .append(",\"commands\":{");
+        String separator = "";
+        for (String name : new TreeSet<>(entries.keySet())) {
+            Entry entry = entries.get(name);
+            json.append(separator);
+            Json.quote(json, name);
+            json.append(":{\"invocations\":").append(entry.getInvocations())
+                    .append(",\"exceptions\":").append(entry.getExceptions())
+                    .append(",\"latencyMicros\":");
+            entry.latency.appendJson(json);
+            json.append('}');
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Writes the statistics to a file now and then every {@code periodSeconds} seconds,
+     * replacing an export that is already running.
+     *
+     * @param path          the file to write
+     * @param periodSeconds the seconds between two writes
+     * @throws IOException if the first write fails
+     */
+    public synchronized void startExport(Path path, long periodSeconds) throws IOException {
+        write(path);
+        stopExport();
+        if (exporter == null) {
+            exporter = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "grammar-stats-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        exportPath = path;
+        export = exporter.scheduleAtFixedRate(() -> {
+            try {
+                write(path);
+            } catch (IOException e) {
+                System.err.println("Error exporting statistics to " + path + ": " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic export after writing the file one last time.
+     *
+     * @return the file that was exported to, or {@code null} if no export was running
+     * @throws IOException if the last write fails
+     */
+    public synchronized Path stopExport() throws IOException {
+        if (export == null) {
+            return null;
+        }
+        export.cancel(false);
+        export = null;
+        Path path = exportPath;
+        exportPath = null;
+        write(path);
+        return path;
+    }
+
+    private void write(Path path) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, Charset.defaultCharset())) {
+                writer.write(toJson());
+                writer.newLine();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
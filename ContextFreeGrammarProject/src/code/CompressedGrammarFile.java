@@ -0,0 +1,170 @@
+package code;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Grammar files in the text format, compressed as a gzip stream (".gz") or packed in a zip
+ * archive (".zip").
+ * <p>
+ * Compressed files cannot be indexed without decompressing them, so opening one streams it
+ * through the decompressor straight into {@link GrammarTextParser} and keeps the parsed
+ * grammars in memory. In a zip archive every entry is parsed on its own and holds one grammar
+ * block; when writing, every grammar gets its own entry named {@code <id>.txt}.
+ * </p>
+ */
+public class CompressedGrammarFile implements GrammarSource {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Supported kinds of compression, selected by file extension.
+     */
+    public enum Compression {
+        GZIP(".gz"),
+        ZIP(".zip");
+
+        private final String extension;
+
+        Compression(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @param filePath the path to a grammar file
+         * @return the compression of the file judged by its extension, or {@code null} if the
+         *         file is not compressed
+         */
+        public static Compression of(String filePath) {
+            String name = filePath.toLowerCase();
+            for (Compression compression : values()) {
+                if (name.endsWith(compression.extension)) return compression;
+            }
+            return null;
+        }
+    }
+
+    private final String filePath;
+    private final Set<String> ids;
+    private final Map<String, Grammar> grammars;
+
+    private CompressedGrammarFile(String filePath, Set<String> ids, Map<String, Grammar> grammars) {
+        this.filePath = filePath;
+        this.ids = Collections.unmodifiableSet(new LinkedHashSet<>(ids));
+        this.grammars = grammars;
+    }
+
+    /**
+     * Decompresses and parses a compressed grammar file. If the file does not exist, an empty
+     * one is created.
+     *
+     * @param filePath the path to the file
+     * @return the grammars of the file
+     * @throws IOException if the file cannot be read or contains invalid grammar text
+     */
+    public static CompressedGrammarFile open(String filePath) throws IOException {
+        Compression compression = Compression.of(filePath);
+        File file = new File(filePath);
+        if (!file.exists()) {
+            try (OutputStream out = new FileOutputStream(file)) {
+                write(out, compression, Collections.emptyMap());
+            }
+        }
+
+        Map<String, Grammar> grammars = new LinkedHashMap<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            if (compression == Compression.GZIP) {
+                Reader reader = new InputStreamReader(new GZIPInputStream(in, BUFFER_SIZE), Charset.defaultCharset());
+                FileHandler.readGrammars(reader, grammars, filePath, 1);
+            } else {
+                ZipInputStream zip = new ZipInputStream(in);
+                for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                    if (entry.isDirectory()) continue;
+                    Reader reader = new InputStreamReader(zip, Charset.defaultCharset());
+                    FileHandler.readGrammars(reader, grammars, filePath + "!" + entry.getName(), 1);
+                }
+            }
+        }
+        return new CompressedGrammarFile(filePath, grammars.keySet(), grammars);
+    }
+
+    /**
+     * Wraps grammars that have just been written to a compressed file. Grammars that the
+     * caller keeps in memory anyway can be left out; the source then lists them but cannot
+     * return them.
+     *
+     * @param filePath the path to the file
+     * @param ids      the IDs of all grammars in the file
+     * @param grammars the grammars in the file that the source returns
+     * @return a source returning those grammars
+     */
+    static CompressedGrammarFile of(String filePath, Set<String> ids, Map<String, Grammar> grammars) {
+        return new CompressedGrammarFile(filePath, ids, new LinkedHashMap<>(grammars));
+    }
+
+    /**
+     * Writes grammars in the text format with the given compression.
+     *
+     * @param out         the stream to write to; it is finished but not closed
+     * @param compression the compression to apply
+     * @param grammars    the grammars to write
+     * @throws IOException if an I/O error occurs writing to the stream
+     */
+    public static void write(OutputStream out, Compression compression, Map<String, Grammar> grammars)
+            throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+        if (compression == Compression.GZIP) {
+            GZIPOutputStream gzip = new GZIPOutputStream(buffered, BUFFER_SIZE);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, Charset.defaultCharset()));
+            for (Grammar grammar : grammars.values()) {
+                writer.write("====\n");
+                FileHandler.writeGrammar(writer, grammar);
+            }
+            writer.flush();
+            gzip.finish();
+        } else {
+            ZipOutputStream zip = new ZipOutputStream(buffered);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(zip, Charset.defaultCharset()));
+            for (Grammar grammar : grammars.values()) {
+                zip.putNextEntry(new ZipEntry(grammar.getId() + ".txt"));
+                FileHandler.writeGrammar(writer, grammar);
+                writer.flush();
+                zip.closeEntry();
+            }
+            zip.finish();
+        }
+        buffered.flush();
+    }
+
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    @Override
+    public Set<String> getGrammarIds() {
+        return ids;
+    }
+
+    /**
+     * Returns a grammar of the file. Each grammar is handed out once; afterwards it belongs to
+     * the caller and the source no longer holds on to it.
+     */
+    @Override
+    public Grammar load(String id) {
+        return grammars.remove(id);
+    }
+
+    /**
+     * @return {@code false}, as every grammar is handed out only once
+     */
+    @Override
+    public boolean isReloadable() {
+        return false;
+    }
+}
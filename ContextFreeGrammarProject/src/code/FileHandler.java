@@ -1,12 +1,22 @@
 package code;
 
+import code.events.GrammarFileEvent;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
 import java.util.*;
 
 /**
  * Class for loading and saving {@link Grammar} instances to and from a text file.
  * Grammars are separated by a delimiter line ("====") and include definitions for
- * ID, start symbol, variables, terminals, and rules.
+ * ID, start symbol, variables, terminals, and rules. Files ending in
+ * {@link BinaryGrammarFile#EXTENSION} are read and written in the binary format instead, and
+ * files ending in ".gz" or ".zip" hold the text format compressed (see {@link CompressedGrammarFile}).
+ * Parsing and writing text blocks is recorded as {@link GrammarFileEvent}s when Flight
+ * Recorder is on.
  */
 
 public class FileHandler {
@@ -17,118 +27,328 @@ public class FileHandler {
      * and an empty map is returned. Each grammar block in the file must begin with the
      * separator line ("===="), followed by lines for Grammar ID, Start Symbol, Variables,
      * Terminals, and production rules in the format "ruleId: A -> BC".
+     * <p>
+     * The block boundaries are found with {@link GrammarFileIndex} and the blocks are then
+     * parsed in parallel; invalid lines are reported with their line number in the file.
+     * </p>
      *
      * @param filePath the path to the file containing serialized grammars
      * @return a Map from grammar IDs to loaded {@link Grammar} instances
      * @throws IOException if an I/O error occurs reading or creating the file
      */
     public static Map<String, Grammar> loadGrammarsFromFile(String filePath) throws IOException {
-        Map<String, Grammar> grammars = new HashMap<>();
-        File file = new File(filePath);
-
-        if (!file.exists()) {
-            file.createNewFile();
-            return grammars;
+        try (GrammarSource source = openGrammarSource(filePath)) {
+            return new HashMap<>(source.loadAll(source.getGrammarIds()));
         }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            Grammar currentGrammar = null;
+    /**
+     * Opens a grammar file without parsing its grammars, choosing the format by the file
+     * extension. If the file does not exist, an empty one is created.
+     *
+     * @param filePath the path to the file containing serialized grammars
+     * @return a source from which the grammars in the file can be loaded one by one
+     * @throws IOException if an I/O error occurs reading or creating the file
+     */
+    public static GrammarSource openGrammarSource(String filePath) throws IOException {
+        if (isBinary(filePath)) {
+            return BinaryGrammarFile.open(filePath);
+        }
+        if (CompressedGrammarFile.Compression.of(filePath) != null) {
+            return CompressedGrammarFile.open(filePath);
+        }
+        return GrammarFileIndex.build(filePath);
+    }
 
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
+    /**
+     * @param filePath the path to a grammar file
+     * @return whether the file is in the binary format, judged by its extension
+     */
+    public static boolean isBinary(String filePath) {
+        return filePath.toLowerCase().endsWith(BinaryGrammarFile.EXTENSION);
+    }
 
-                if (line.startsWith(GRAMMAR_SEPARATOR)) {
-                    if (currentGrammar != null) {
-                        grammars.put(currentGrammar.getId(), currentGrammar);
-                    }
-                    currentGrammar = null;
-                }
-                else if (line.startsWith("Grammar ID:")) {
-                    String id = line.substring("Grammar ID:".length()).trim();
-                    currentGrammar = new Grammar(id, 'S');
-                }
-                else if (currentGrammar != null) {
-                    if (line.startsWith("Start Symbol:")) {
-                        char startSymbol = line.substring("Start Symbol:".length()).trim().charAt(0);
-                        currentGrammar.setStartSymbol(startSymbol);
-                    }
-                    else if (line.startsWith("Variables:")) {
-                        String[] vars = line.substring("Variables:".length()).trim().split("\\s*,\\s*");
-                        for (String var : vars) {
-                            if (!var.isEmpty()) {
-                                currentGrammar.addVariable(var.charAt(0));
-                            }
-                        }
-                    }
-                    else if (line.startsWith("Terminals:")) {
-                        String[] terms = line.substring("Terminals:".length()).trim().split("\\s*,\\s*");
-                        for (String term : terms) {
-                            if (!term.isEmpty()) {
-                                currentGrammar.addTerminal(term.charAt(0));
-                            }
-                        }
-                    }
-                    else if (line.contains(":")) {
-                        // format: "ruleId: A -> BC"
-                        String[] idAndRule = line.split(":", 2);
-                        if (idAndRule.length == 2) {
-                            String ruleId = idAndRule[0].trim();
-                            String[] ruleParts = idAndRule[1].split("->");
-                            if (ruleParts.length == 2) {
-                                char leftSide = ruleParts[0].trim().charAt(0);
-                                String rightSide = ruleParts[1].trim();
-                                currentGrammar.addRule(ruleId, leftSide, rightSide);
-                            }
-                        }
-                    }
-                }
-            }
+    /**
+     * Parses grammar blocks from the given reader into the provided map. The format is the
+     * one described in {@link #loadGrammarsFromFile(String)}; the reader may also contain
+     * just a part of a file, such as a single block starting at its "Grammar ID:" line.
+     *
+     * @param reader   the source of grammar text
+     * @param grammars the map to which every parsed grammar is added by its ID
+     * @throws IOException if an I/O error occurs reading from the reader, or if a line is invalid
+     */
+    public static void readGrammars(Reader reader, Map<String, Grammar> grammars) throws IOException {
+        readGrammars(reader, grammars, null, 1);
+    }
 
-            if (currentGrammar != null) {
-                grammars.put(currentGrammar.getId(), currentGrammar);
+    /**
+     * Parses grammar blocks like {@link #readGrammars(Reader, Map)}, reporting invalid lines
+     * by their position in the original file. The text is scanned with
+     * {@link GrammarTextParser}, which does not create intermediate strings per line.
+     *
+     * @param reader    the source of grammar text
+     * @param grammars  the map to which every parsed grammar is added by its ID
+     * @param source    the name of the file used in error messages, or {@code null}
+     * @param firstLine the line number in that file of the first line of the reader
+     * @throws IOException if an I/O error occurs reading from the reader
+     * @throws GrammarParseException if a line is invalid; it carries the line and column
+     */
+    public static void readGrammars(Reader reader, Map<String, Grammar> grammars,
+                                    String source, long firstLine) throws IOException {
+        GrammarFileEvent event = new GrammarFileEvent();
+        if (!event.isEnabled()) {
+            new GrammarTextParser(reader, source, firstLine).parse(grammars);
+            return;
+        }
+        event.begin();
+        Map<String, Grammar> parsed = new LinkedHashMap<>();
+        new GrammarTextParser(reader, source, firstLine).parse(parsed);
+        grammars.putAll(parsed);
+        if (event.shouldCommit()) {
+            event.operation = GrammarFileEvent.PARSE;
+            event.file = source;
+            event.firstLine = firstLine;
+            event.grammars = parsed.size();
+            for (Grammar grammar : parsed.values()) {
+                if (event.grammarId == null) event.grammarId = grammar.getId();
+                event.rules += grammar.getAllRules().size();
             }
+            event.commit();
         }
-        return grammars;
     }
 
-
     /**
      * Writes all grammars in the provided map to the specified file. Each grammar is
      * serialized in a block prefixed by the separator ("===="), then lines for ID, start
      * symbol, variables, terminals, and each production rule’s {@code toString()} output.
-     * Existing file contents will be overwritten.
+     * Existing file contents will be overwritten: the grammars are written to a temporary file
+     * that is then renamed over the target.
      *
      * @param filePath the path to the output file
      * @param grammars a Map of grammar IDs to {@link Grammar} instances to save
      * @throws IOException if an I/O error occurs writing to the file
      */
     public static void saveGrammarsToFile(String filePath, Map<String, Grammar> grammars) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (Grammar grammar : grammars.values()) {
-                writer.write(GRAMMAR_SEPARATOR + "\n");
-                writer.write("Grammar ID: " + grammar.getId() + "\n");
-                writer.write("Start Symbol: " + grammar.getStartSymbol() + "\n");
-
-                writer.write("Variables: ");
-                StringJoiner varsJoiner = new StringJoiner(", ");
-                for (char var : grammar.getVariables()) {
-                    varsJoiner.add(String.valueOf(var));
+        Path target = Paths.get(filePath).toAbsolutePath().normalize();
+        Path temp = temporaryFile(target);
+        try {
+            CompressedGrammarFile.Compression compression = CompressedGrammarFile.Compression.of(filePath);
+            if (isBinary(filePath)) {
+                BinaryGrammarFile.write(temp.toString(), grammars);
+            } else if (compression != null) {
+                try (OutputStream out = new FileOutputStream(temp.toFile())) {
+                    CompressedGrammarFile.write(out, compression, grammars);
                 }
-                writer.write(varsJoiner.toString() + "\n");
-
-                writer.write("Terminals: ");
-                StringJoiner termsJoiner = new StringJoiner(", ");
-                for (char term : grammar.getTerminals()) {
-                    termsJoiner.add(String.valueOf(term));
+            } else {
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp.toFile()))) {
+                    for (Grammar grammar : grammars.values()) {
+                        writer.write(GRAMMAR_SEPARATOR + "\n");
+                        writeGrammar(writer, grammar);
+                    }
                 }
-                writer.write(termsJoiner.toString() + "\n");
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return the file a save writes to before it is renamed over {@code target}; it lies in
+     *         the same directory, so that the rename is atomic
+     */
+    private static Path temporaryFile(Path target) {
+        return target.resolveSibling(".save-" + target.getFileName());
+    }
 
-                for (Rule rule : grammar.getAllRules()) {
-                    writer.write(rule + "\n");
+    /**
+     * Writes the block of a single grammar, starting with its "Grammar ID:" line.
+     */
+    static void writeGrammar(Writer writer, Grammar grammar) throws IOException {
+        writer.write("Grammar ID: " + grammar.getId() + "\n");
+        writer.write("Start Symbol: " + grammar.getStartSymbol() + "\n");
+
+        writer.write("Variables: ");
+        StringJoiner varsJoiner = new StringJoiner(", ");
+        for (char var : grammar.getVariables()) {
+            varsJoiner.add(String.valueOf(var));
+        }
+        writer.write(varsJoiner.toString() + "\n");
+
+        writer.write("Terminals: ");
+        StringJoiner termsJoiner = new StringJoiner(", ");
+        for (char term : grammar.getTerminals()) {
+            termsJoiner.add(String.valueOf(term));
+        }
+        writer.write(termsJoiner.toString() + "\n");
+
+        for (Rule rule : grammar.getAllRules()) {
+            writer.write(rule + "\n");
+        }
+    }
+
+    /**
+     * Saves all grammars of the manager to the specified file, rewriting only what changed.
+     * <p>
+     * For a text file, consecutive grammars that are unchanged since they were read from a
+     * text file are copied as one byte range straight from that file with
+     * {@link java.nio.channels.FileChannel#transferTo}; only added or edited grammars are
+     * serialized. Binary and compressed files are always written completely. The output goes to a temporary
+     * file in the same directory, which is then renamed over the target, so the target is
+     * never left half-written. If the target is the manager's current file, the manager is
+     * told that all its grammars are now saved there.
+     * </p>
+     *
+     * @param manager  the manager holding the grammars
+     * @param filePath the path to the output file
+     * @throws IOException if an I/O error occurs reading a source file or writing the output
+     */
+    public static void saveGrammars(GrammarManager manager, String filePath) throws IOException {
+        Path target = Paths.get(filePath).toAbsolutePath().normalize();
+        Path temp = temporaryFile(target);
+        GrammarSource written;
+        try {
+            if (isBinary(filePath)) {
+                BinaryGrammarFile.write(temp.toString(), manager.getGrammars());
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written = BinaryGrammarFile.open(filePath);
+            } else if (CompressedGrammarFile.Compression.of(filePath) != null) {
+                Map<String, Grammar> grammars = manager.getGrammars();
+                saveGrammarsToFile(filePath, grammars);
+                Set<String> ids = new LinkedHashSet<>(grammars.keySet());
+                // the loaded grammars stay with the manager, the file only holds the others
+                grammars.keySet().removeIf(manager::isLoaded);
+                written = CompressedGrammarFile.of(filePath, ids, grammars);
+            } else {
+                Map<String, GrammarFileIndex.Block> blocks = writeTextBlocks(manager, temp, target.toString());
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written = GrammarFileIndex.of(filePath, blocks);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        String currentFilePath = manager.getCurrentFilePath();
+        if (currentFilePath != null && Paths.get(currentFilePath).toAbsolutePath().normalize().equals(target)) {
+            manager.markSaved(written);
+        } else {
+            written.close();
+        }
+    }
+
+    /**
+     * Writes the text file for {@link #saveGrammars(GrammarManager, String)} and returns the
+     * locations of the written blocks.
+     */
+    private static Map<String, GrammarFileIndex.Block> writeTextBlocks(GrammarManager manager, Path path, String file)
+            throws IOException {
+        Map<String, GrammarFileIndex.Block> blocks = new LinkedHashMap<>();
+        byte[] separator = (GRAMMAR_SEPARATOR + "\n").getBytes();
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        List<String> run = new ArrayList<>();
+        GrammarFileIndex runSource = null;
+        long[] position = {0, 1};
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String id : manager.getGrammarIds()) {
+                GrammarSource source = manager.getCleanSource(id);
+                if (source instanceof GrammarFileIndex) {
+                    GrammarFileIndex index = (GrammarFileIndex) source;
+                    if (index != runSource
+                            || index.block(id).ordinal != index.block(run.get(run.size() - 1)).ordinal + 1) {
+                        copyRun(runSource, run, out, separator, position, blocks, file);
+                        runSource = index;
+                    }
+                    run.add(id);
+                    continue;
                 }
+                copyRun(runSource, run, out, separator, position, blocks, file);
+                runSource = null;
+
+                Grammar grammar = manager.getGrammar(id);
+                if (grammar == null) continue;
+                GrammarFileEvent event = new GrammarFileEvent();
+                event.begin();
+                serialized.reset();
+                Writer writer = new OutputStreamWriter(serialized, Charset.defaultCharset());
+                writeGrammar(writer, grammar);
+                writer.flush();
+                byte[] bytes = serialized.toByteArray();
+                write(out, separator, position);
+                blocks.put(id, new GrammarFileIndex.Block(position[0], position[0] + bytes.length, position[1],
+                        position[1] + countLines(bytes), blocks.size()));
+                write(out, bytes, position);
+                commit(event, GrammarFileEvent.WRITE, file, id, blocks.get(id).firstLine, 1,
+                        grammar.getAllRules().size(), bytes.length);
             }
+            copyRun(runSource, run, out, separator, position, blocks, file);
+            out.force(true);
+        }
+        return blocks;
+    }
+
+    /**
+     * Copies a run of consecutive blocks of one source file and records their new locations.
+     * {@code position} holds the current byte offset and line number of the output.
+     */
+    private static void copyRun(GrammarFileIndex source, List<String> run, FileChannel out, byte[] separator,
+                                long[] position, Map<String, GrammarFileIndex.Block> blocks, String file)
+            throws IOException {
+        if (run.isEmpty()) {
+            return;
+        }
+        GrammarFileEvent event = new GrammarFileEvent();
+        event.begin();
+        write(out, separator, position);
+        GrammarFileIndex.Block first = source.block(run.get(0));
+        GrammarFileIndex.Block last = source.block(run.get(run.size() - 1));
+        for (String id : run) {
+            GrammarFileIndex.Block block = source.block(id);
+            blocks.put(id, new GrammarFileIndex.Block(
+                    position[0] + block.start - first.start, position[0] + block.end - first.start,
+                    position[1] + block.firstLine - first.firstLine, position[1] + block.endLine - first.firstLine,
+                    blocks.size()));
+        }
+        source.transfer(first, last, out);
+        position[0] += last.end - first.start;
+        position[1] += last.endLine - first.firstLine;
+        if (!source.endsLine(last.end)) {
+            write(out, new byte[]{'\n'}, position);
+        }
+        commit(event, GrammarFileEvent.COPY, file, run.get(0), blocks.get(run.get(0)).firstLine, run.size(), 0, last.end - first.start);
+        run.clear();
+    }
+
+    private static void commit(GrammarFileEvent event, String operation, String file, String grammarId,
+                               long firstLine, int grammars, int rules, long bytes) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.file = file;
+            event.grammarId = grammarId;
+            event.firstLine = firstLine;
+            event.grammars = grammars;
+            event.rules = rules;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    private static void write(FileChannel out, byte[] bytes, long[] position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        position[0] += bytes.length;
+        position[1] += countLines(bytes);
+    }
+
+    private static int countLines(byte[] bytes) {
+        int lines = 0;
+        for (byte b : bytes) {
+            if (b == '\n') lines++;
         }
+        return lines;
     }
 
     /**
@@ -11,6 +11,7 @@ public class Grammar {
     private Set<Character> terminals;
     private Map<String, Rule> rules;
     private char startSymbol;
+    private int version;
 
     /**
      * Creates a new Grammar.
@@ -44,10 +45,21 @@ public class Grammar {
         return startSymbol;
     }
 
+    /**
+     * Returns a counter that is incremented on every modification of this grammar.
+     * Derived structures can store it to detect that they are out of date.
+     *
+     * @return the current modification counter
+     */
+    public int getVersion() {
+        return version;
+    }
+
 
     public void setStartSymbol(char startSymbol) {
         this.startSymbol = startSymbol;
         this.variables.add(startSymbol);
+        version++;
     }
 
     /**
@@ -56,7 +68,20 @@ public class Grammar {
      * @param variable the variable character to add
      */
     public void addVariable(char variable) {
-        variables.add(variable);
+        if (variables.add(variable)) {
+            version++;
+        }
+    }
+
+    /**
+     * Removes a variable from this grammar. Rules that still use it are not checked.
+     *
+     * @param variable the variable character to remove
+     */
+    public void removeVariable(char variable) {
+        if (variables.remove(variable)) {
+            version++;
+        }
     }
 
     /**
@@ -65,7 +90,9 @@ public class Grammar {
      * @param terminal the terminal character to add
      */
     public void addTerminal(char terminal) {
-        terminals.add(terminal);
+        if (terminals.add(terminal)) {
+            version++;
+        }
     }
 
     /**
@@ -102,6 +129,15 @@ public class Grammar {
             }
         }
         rules.put(ruleId, new Rule(ruleId, leftSide, rightSide));
+        version++;
+    }
+
+    /**
+     * @param ruleId the identifier of a rule
+     * @return whether this grammar has a rule with the given ID
+     */
+    public boolean hasRule(String ruleId) {
+        return rules.containsKey(ruleId);
     }
 
     /**
@@ -115,5 +151,6 @@ public class Grammar {
             throw new IllegalArgumentException("Rule with ID " + ruleId + " not found");
         }
         rules.remove(ruleId);
+        version++;
     }
 }
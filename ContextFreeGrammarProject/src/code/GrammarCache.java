@@ -0,0 +1,443 @@
+package code;
+
+import code.extensions.GrammarProfile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk cache of the compiled form of the grammars of a text file: the decoded
+ * {@link Grammar} together with its {@link GrammarProfile} (index analysis, CNF and linearity
+ * checks, LL(1) table and, for regular grammars, the minimal automaton).
+ * <p>
+ * Entries are keyed by checksums of the bytes of a grammar block, so an entry stays valid as long
+ * as its block is unchanged, wherever the block moves in the file. Every grammar file has its
+ * own pack file in the cache directory, which is memory-mapped when the file is opened; a block
+ * whose hash is found there is decoded from the mapping instead of being parsed, and its
+ * profile, if one was stored, is read from the mapping instead of being computed when it is
+ * first needed. Grammars that are not found are appended to the pack after parsing, without a
+ * profile: profiling, and above all compiling the automaton of a regular grammar, can cost far
+ * more than parsing. The entry is appended again with the profile once a command computes it,
+ * and once more when the automaton is compiled. Only blocks of at least
+ * {@value #MIN_BLOCK_SIZE} bytes are cached.
+ * </p>
+ * <p>
+ * Pack layout, numbers in big-endian order:
+ * <pre>
+ * "CFGC" version(1 byte)
+ * records, each: key (16 bytes), payload length (4 bytes), payload
+ * payload:       grammar ID, start symbol, variables, terminals, rules in
+ *                {@link Grammar#getAllRules()} order, then a flag byte and, if it is 1,
+ *                the profile
+ * </pre>
+ * Records are only ever appended; of several records with the same key, the last one counts. An incomplete last record, left by an interrupted write, is
+ * cut off when the pack is opened. A pack that has grown far beyond the size of its grammar
+ * file, because it mostly holds entries of blocks that have since changed, is started afresh.
+ * </p>
+ * <p>
+ * The cache directory is {@code .grammar-cache} beside the grammar file, or the directory
+ * named by the system property {@value #DIRECTORY_PROPERTY}; setting the property to
+ * {@code off} disables the cache. The cache only ever speeds up loading: an entry that cannot
+ * be read is treated as missing, and a pack that cannot be written is ignored.
+ * </p>
+ */
+public class GrammarCache {
+    /**
+     * System property naming the cache directory, or {@code off} to disable the cache.
+     */
+    public static final String DIRECTORY_PROPERTY = "grammar.cache.dir";
+
+    /**
+     * Blocks shorter than this are not cached: small grammars parse and profile as fast as
+     * they decode.
+     */
+    static final int MIN_BLOCK_SIZE = 4096;
+
+    private static final String DEFAULT_DIRECTORY = ".grammar-cache";
+    private static final byte[] MAGIC = {'C', 'F', 'G', 'C'};
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    private static final int KEY_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = KEY_SIZE + 4;
+    private static final long MIN_RESET_SIZE = 8L << 20;
+    private static final int RESET_FACTOR = 4;
+
+
+    private final File packFile;
+    private final MappedFile pack;
+    private final Map<Key, Long> entries = new HashMap<>();
+    private OutputStream appender;
+    private boolean failed;
+
+    private GrammarCache(File packFile, MappedFile pack) {
+        this.packFile = packFile;
+        this.pack = pack;
+    }
+
+    /**
+     * Opens the cache of a grammar file.
+     *
+     * @param filePath the path to the grammar file
+     * @return the cache, or {@code null} if caching is disabled or the cache cannot be opened
+     */
+    public static GrammarCache open(String filePath) {
+        File packFile = packFile(filePath);
+        if (packFile == null) {
+            return null;
+        }
+        try {
+            File grammarFile = new File(filePath);
+            long limit = Math.max(MIN_RESET_SIZE, RESET_FACTOR * grammarFile.length());
+            if (packFile.length() > limit || (packFile.exists() && !hasHeader(packFile))) {
+                Files.deleteIfExists(packFile.toPath());
+            }
+            if (!packFile.exists()) {
+                return new GrammarCache(packFile, null);
+            }
+            GrammarCache cache = new GrammarCache(packFile, new MappedFile(packFile.getPath()));
+            cache.scan();
+            return cache;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param filePath the path to a grammar file
+     * @return the pack file holding the cache of that grammar file, or {@code null} if caching
+     *         is disabled
+     */
+    public static File packFile(String filePath) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if ("off".equalsIgnoreCase(directory)) {
+            return null;
+        }
+        File grammarFile = new File(filePath).getAbsoluteFile();
+        File cacheDirectory = directory != null ? new File(directory) : new File(grammarFile.getParentFile(), DEFAULT_DIRECTORY);
+        String name = grammarFile.getName() + "-" + Integer.toHexString(grammarFile.getPath().hashCode()) + ".pack";
+        return new File(cacheDirectory, name);
+    }
+
+    private static boolean hasHeader(File packFile) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = new FileInputStream(packFile)) {
+            if (in.readNBytes(header, 0, HEADER_SIZE) < HEADER_SIZE) {
+                return false;
+            }
+        }
+        return Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) && header[MAGIC.length] == VERSION;
+    }
+
+    /**
+     * Reads the key and the position of every complete record and cuts off an incomplete
+     * last record.
+     */
+    private void scan() throws IOException {
+        long position = HEADER_SIZE;
+        long size = pack.size();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            byte[] header = pack.readBytes(position, position + RECORD_HEADER_SIZE);
+            long length = ((header[KEY_SIZE] & 0xFFL) << 24) | ((header[KEY_SIZE + 1] & 0xFF) << 16)
+                    | ((header[KEY_SIZE + 2] & 0xFF) << 8) | (header[KEY_SIZE + 3] & 0xFF);
+            if (position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            entries.put(new Key(Arrays.copyOf(header, KEY_SIZE)), position + RECORD_HEADER_SIZE);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < size) {
+            try (RandomAccessFile file = new RandomAccessFile(packFile, "rw")) {
+                file.setLength(position);
+            }
+        }
+    }
+
+    /**
+     * Computes the key of a grammar block: its CRC-32C and CRC-32 checksums and its length.
+     * The two checksums use different polynomials, so together they are as unlikely to
+     * collide by chance as a 64-bit hash, and both are computed by intrinsics at memory speed.
+     *
+     * @param file  the mapped grammar file
+     * @param start the position of the first byte of the block
+     * @param end   the position just past the block
+     * @return the key
+     */
+    static byte[] key(MappedFile file, long start, long end) {
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+        for (long position = start; position < end; ) {
+            MappedByteBuffer segment = file.segments()[(int) (position / MappedFile.segmentSize())];
+            int offset = (int) (position % MappedFile.segmentSize());
+            int length = (int) Math.min(end - position, segment.limit() - offset);
+            crc32c.update(segment.slice(offset, length));
+            crc32.update(segment.slice(offset, length));
+            position += length;
+        }
+        return ByteBuffer.allocate(KEY_SIZE)
+                .putInt((int) crc32c.getValue())
+                .putInt((int) crc32.getValue())
+                .putLong(end - start)
+                .array();
+    }
+
+    /**
+     * Looks up the compiled form of a grammar block.
+     *
+     * @param key the key of the block
+     * @param id  the ID of the grammar in the block
+     * @return the grammar, whose profile is restored from the cache when it is first needed,
+     *         or {@code null} if the cache has no readable entry for the block
+     */
+    Grammar get(byte[] key, String id) {
+        Long position = entries.get(new Key(key));
+        if (position == null) {
+            return null;
+        }
+        try {
+            long length = ((pack.get(position - 4) & 0xFFL) << 24) | ((pack.get(position - 3) & 0xFF) << 16)
+                    | ((pack.get(position - 2) & 0xFF) << 8) | (pack.get(position - 1) & 0xFF);
+            byte[] data = pack.readBytes(position, position + length);
+            Payload payload = new Payload(data);
+            Grammar grammar = readGrammar(payload);
+            if (!grammar.getId().equals(id)) {
+                throw new IOException("Cached grammar " + grammar.getId() + " is not " + id);
+            }
+            byte[] encoded = Arrays.copyOf(data, payload.position);
+            GrammarProfile.Stored stored = null;
+            if (data[payload.position] != 0) {
+                long profile = position + payload.position + 1;
+                long end = position + length;
+                stored = () -> new DataInputStream(new ByteArrayInputStream(pack.readBytes(profile, end)));
+            }
+            GrammarProfile.defer(grammar, stored, sink(key, encoded));
+            return grammar;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Queues a freshly parsed grammar for the pack, without its profile, and arranges for the
+     * profile to be added once it is computed. May be called from several threads.
+     *
+     * @param key     the key of the block the grammar was parsed from
+     * @param grammar the parsed grammar
+     */
+    void put(byte[] key, Grammar grammar) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeGrammar(out, grammar);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // a grammar that cannot be encoded is simply not cached
+            return;
+        }
+        byte[] encoded = bytes.toByteArray();
+        bytes.write(0);
+        append(key, bytes);
+        GrammarProfile.defer(grammar, null, sink(key, encoded));
+    }
+
+    /**
+     * @return a sink that appends the encoded grammar with the profile it is handed and writes
+     *         the pack file right away, as profiles are computed between loads
+     */
+    private GrammarProfile.Sink sink(byte[] key, byte[] encoded) {
+        return profile -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoded.length + 256);
+            try {
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.write(encoded);
+                out.writeBoolean(true);
+                profile.write(out);
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                // a profile that cannot be written is simply not cached
+                return;
+            }
+            append(key, bytes);
+            flush();
+        };
+    }
+
+    private void append(byte[] key, ByteArrayOutputStream bytes) {
+        byte[] header = Arrays.copyOf(key, RECORD_HEADER_SIZE);
+        int length = bytes.size();
+        for (int i = 0; i < 4; i++) {
+            header[KEY_SIZE + i] = (byte) (length >>> (24 - 8 * i));
+        }
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (appender == null) {
+                    appender = openAppender();
+                }
+                appender.write(header);
+                bytes.writeTo(appender);
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+    }
+
+    private OutputStream openAppender() throws IOException {
+        File directory = packFile.getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        boolean fresh = packFile.length() == 0;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(packFile, true), 1 << 16);
+        if (fresh) {
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+        return out;
+    }
+
+    /**
+     * Writes the queued entries to the pack file.
+     */
+    synchronized void flush() {
+        if (appender == null) {
+            return;
+        }
+        try {
+            appender.close();
+        } catch (IOException e) {
+            failed = true;
+        }
+        appender = null;
+    }
+
+    /**
+     * Writes the queued entries and closes the pack file. Grammars parsed afterwards are not
+     * cached any more.
+     */
+    synchronized void close() throws IOException {
+        flush();
+        failed = true;
+        if (pack != null) {
+            pack.close();
+        }
+    }
+
+    /**
+     * Writes the grammar part of a payload. Strings are written as their length followed by
+     * their chars.
+     */
+    static void writeGrammar(DataOutputStream out, Grammar grammar) throws IOException {
+        writeString(out, grammar.getId());
+        out.writeChar(grammar.getStartSymbol());
+        writeSymbols(out, grammar.getVariables());
+        writeSymbols(out, grammar.getTerminals());
+        out.writeInt(grammar.getAllRules().size());
+        for (Rule rule : grammar.getAllRules()) {
+            writeString(out, rule.getId());
+            out.writeChar(rule.getLeftSide());
+            writeString(out, rule.getRightSide());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private static void writeSymbols(DataOutputStream out, Set<Character> symbols) throws IOException {
+        out.writeInt(symbols.size());
+        for (char c : symbols) out.writeChar(c);
+    }
+
+    /**
+     * Reads a grammar written by {@link #writeGrammar(DataOutputStream, Grammar)}.
+     *
+     * @param data the bytes of the grammar
+     * @return the grammar
+     */
+    static Grammar readGrammar(byte[] data) {
+        return readGrammar(new Payload(data));
+    }
+
+    private static Grammar readGrammar(Payload in) {
+        Grammar grammar = new Grammar(in.readString(), in.readChar());
+        int variables = in.readInt();
+        for (int i = 0; i < variables; i++) grammar.addVariable(in.readChar());
+        int terminals = in.readInt();
+        for (int i = 0; i < terminals; i++) grammar.addTerminal(in.readChar());
+        int rules = in.readInt();
+        for (int i = 0; i < rules; i++) {
+            String id = in.readString();
+            char left = in.readChar();
+            grammar.addRule(id, left, in.readString());
+        }
+        return grammar;
+    }
+
+    /**
+     * Reader over the bytes of a payload, in the encoding of {@link DataOutputStream}.
+     */
+    private static final class Payload {
+        private final byte[] data;
+        private char[] chars = new char[64];
+        private int position;
+
+        Payload(byte[] data) {
+            this.data = data;
+        }
+
+        int readInt() {
+            int value = ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+                    | ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+            position += 4;
+            return value;
+        }
+
+        char readChar() {
+            char value = (char) (((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF));
+            position += 2;
+            return value;
+        }
+
+        String readString() {
+            int length = readInt();
+            if (length > chars.length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                chars[i] = readChar();
+            }
+            return new String(chars, 0, length);
+        }
+    }
+
+    /**
+     * Key bytes with value semantics, for use in hash maps.
+     */
+    private static final class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
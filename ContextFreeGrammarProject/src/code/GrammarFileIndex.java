@@ -0,0 +1,360 @@
+package code;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Index of the grammar blocks in a grammar text file.
+ * <p>
+ * The file is memory-mapped and scanned once for separator ("====") and "Grammar ID:" lines;
+ * for every grammar only the byte range of its block is remembered. A grammar is parsed with
+ * {@link FileHandler#readGrammars(Reader, Map)} only when it is requested through
+ * {@link #load(String)}, so opening a file costs one sequential scan and memory is spent only
+ * on the grammars that are actually used.
+ * </p>
+ * <p>
+ * Blocks are independent of each other, so {@link #loadAll(Collection)} parses many of them in
+ * parallel. Every block remembers the line it starts on, so parse errors name the line in the
+ * original file.
+ * </p>
+ * <p>
+ * Loading goes through the file's {@link GrammarCache}, if there is one: unchanged blocks are
+ * decoded from the cache together with their compiled profile, and parsed blocks are compiled
+ * and added to it.
+ * </p>
+ */
+public class GrammarFileIndex implements GrammarSource {
+    private static final byte[] SEPARATOR = "====".getBytes();
+    private static final byte[] ID_PREFIX = "Grammar ID:".getBytes();
+    private static final int MIN_PARALLEL_BLOCKS = 64;
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final String filePath;
+    private final MappedFile file;
+    private final Map<String, Block> blocks = new LinkedHashMap<>();
+    private final GrammarCache cache;
+    private int blockCount;
+
+    /**
+     * Location of one grammar block: its byte range, the line it starts on, the line just past
+     * it, and its position among all blocks of the file.
+     */
+    static final class Block {
+        final long start;
+        final long end;
+        final long firstLine;
+        final long endLine;
+        final int ordinal;
+
+        Block(long start, long end, long firstLine, long endLine, int ordinal) {
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+            this.endLine = endLine;
+            this.ordinal = ordinal;
+        }
+    }
+
+    private GrammarFileIndex(String filePath, MappedFile file) {
+        this.filePath = filePath;
+        this.file = file;
+        this.cache = GrammarCache.open(filePath);
+    }
+
+    /**
+     * Creates the index of a file whose block locations are already known, for example
+     * because the file has just been written, without scanning it.
+     *
+     * @param filePath the path to the file
+     * @param blocks   the blocks of the file by grammar ID, in file order
+     * @return the index of the file
+     * @throws IOException if the file cannot be mapped
+     */
+    static GrammarFileIndex of(String filePath, Map<String, Block> blocks) throws IOException {
+        GrammarFileIndex index = new GrammarFileIndex(filePath, new MappedFile(filePath));
+        index.blocks.putAll(blocks);
+        index.blockCount = blocks.size();
+        return index;
+    }
+
+    /**
+     * Maps and scans the given file. If the file does not exist, it is created and an empty
+     * index is returned.
+     *
+     * @param filePath the path to the file containing serialized grammars
+     * @return the index of the grammars in the file
+     * @throws IOException if an I/O error occurs reading or creating the file
+     */
+    public static GrammarFileIndex build(String filePath) throws IOException {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            file.createNewFile();
+        }
+        GrammarFileIndex index = new GrammarFileIndex(filePath, new MappedFile(filePath));
+        index.scan();
+        return index;
+    }
+
+    /**
+     * Walks over all lines once. Leading characters up to and including spaces are skipped,
+     * like {@link String#trim()} does in the text parser, and the first bytes of every line
+     * are compared with the separator and the "Grammar ID:" prefix.
+     */
+    private void scan() {
+        byte[] prefix = new byte[ID_PREFIX.length];
+        int prefixLength = 0;
+        boolean leading = true;
+        long lineStart = 0;
+        long contentStart = 0;
+        long position = 0;
+        long line = 1;
+        String[] currentId = new String[1];
+        long[] blockStart = new long[2];
+
+        for (MappedByteBuffer segment : file.segments()) {
+            int limit = segment.limit();
+            for (int i = 0; i < limit; i++, position++) {
+                byte b = segment.get(i);
+                if (b == '\n') {
+                    endOfLine(prefix, prefixLength, lineStart, contentStart, position, line, currentId, blockStart);
+                    line++;
+                    prefixLength = 0;
+                    leading = true;
+                    lineStart = position + 1;
+                    continue;
+                }
+                if (leading) {
+                    if ((b & 0xFF) <= ' ') continue;
+                    leading = false;
+                    contentStart = position;
+                }
+                if (prefixLength < prefix.length) {
+                    prefix[prefixLength++] = b;
+                }
+            }
+        }
+        endOfLine(prefix, prefixLength, lineStart, contentStart, position, line, currentId, blockStart);
+        if (currentId[0] != null) {
+            addBlock(currentId[0], blockStart, position, line);
+        }
+    }
+
+    /**
+     * Closes the open block at a separator or a new "Grammar ID:" line, and opens a new
+     * block at the latter. {@code blockStart} holds the position and the line number of the
+     * open block.
+     */
+    private void endOfLine(byte[] prefix, int prefixLength, long lineStart, long contentStart, long lineEnd,
+                           long line, String[] currentId, long[] blockStart) {
+        boolean separator = startsWith(prefix, prefixLength, SEPARATOR);
+        boolean header = startsWith(prefix, prefixLength, ID_PREFIX);
+        if (!separator && !header) {
+            return;
+        }
+        if (currentId[0] != null) {
+            addBlock(currentId[0], blockStart, lineStart, line);
+            currentId[0] = null;
+        }
+        if (header) {
+            currentId[0] = readString(contentStart + ID_PREFIX.length, lineEnd).trim();
+            blockStart[0] = lineStart;
+            blockStart[1] = line;
+        }
+    }
+
+    private void addBlock(String id, long[] blockStart, long end, long endLine) {
+        blocks.remove(id);
+        blocks.put(id, new Block(blockStart[0], end, blockStart[1], endLine, blockCount++));
+    }
+
+    /**
+     * @param id the ID of a grammar
+     * @return the location of its block, or {@code null} if the file has no grammar with that ID
+     */
+    Block block(String id) {
+        return blocks.get(id);
+    }
+
+    /**
+     * @param id the ID of a grammar
+     * @return the checksum key of its block as computed by {@link GrammarCache#key}, or
+     *         {@code null} if the file has no grammar with that ID
+     */
+    byte[] blockKey(String id) {
+        Block block = blocks.get(id);
+        return block == null ? null : GrammarCache.key(file, block.start, block.end);
+    }
+
+    /**
+     * @return whether the byte just before {@code position} is a line break
+     */
+    boolean endsLine(long position) {
+        return position > 0 && file.get(position - 1) == '\n';
+    }
+
+    /**
+     * Copies the bytes from the start of one block to the end of another, including whatever
+     * lies between them, to the given channel.
+     */
+    void transfer(Block first, Block last, WritableByteChannel target) throws IOException {
+        file.transferTo(first.start, last.end, target);
+    }
+
+    private static boolean startsWith(byte[] prefix, int prefixLength, byte[] expected) {
+        if (prefixLength < expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (prefix[i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private String readString(long start, long end) {
+        return new String(file.readBytes(start, end), Charset.defaultCharset());
+    }
+
+    @Override
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return the IDs of all grammars in the file, in file order
+     */
+    @Override
+    public Set<String> getGrammarIds() {
+        return Collections.unmodifiableSet(blocks.keySet());
+    }
+
+    /**
+     * Parses a single grammar from its block in the mapped file.
+     *
+     * @param id the ID of the grammar
+     * @return the parsed grammar, or {@code null} if the file has no grammar with that ID
+     * @throws IOException if the block cannot be read
+     */
+    @Override
+    public Grammar load(String id) throws IOException {
+        try {
+            return loadBlock(id);
+        } finally {
+            if (cache != null) cache.flush();
+        }
+    }
+
+    /**
+     * Takes a grammar from the cache, or parses it and adds it to the cache.
+     */
+    private Grammar loadBlock(String id) throws IOException {
+        Block block = blocks.get(id);
+        if (block == null) {
+            return null;
+        }
+        byte[] key = null;
+        if (cache != null && block.end - block.start >= GrammarCache.MIN_BLOCK_SIZE) {
+            key = GrammarCache.key(file, block.start, block.end);
+            Grammar cached = cache.get(key, id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Map<String, Grammar> parsed = new HashMap<>();
+        String text = readString(block.start, block.end);
+        FileHandler.readGrammars(new StringReader(text), parsed, filePath, block.firstLine);
+        Grammar grammar = parsed.get(id);
+        if (key != null && grammar != null) {
+            cache.put(key, grammar);
+        }
+        return grammar;
+    }
+
+    /**
+     * Parses the given grammars, splitting them into batches that are parsed on a pool with
+     * one thread per available processor. Small requests are parsed on the calling thread.
+     * If several blocks are invalid, the error of the first one in the order of {@code ids}
+     * is reported.
+     *
+     * @param ids the IDs of the grammars
+     * @return the parsed grammars by ID, in the order of {@code ids}
+     * @throws IOException if a block cannot be parsed
+     */
+    @Override
+    public Map<String, Grammar> loadAll(Collection<String> ids) throws IOException {
+        List<String> present = new ArrayList<>();
+        for (String id : ids) {
+            if (blocks.containsKey(id)) present.add(id);
+        }
+        try {
+            return loadBlocks(present);
+        } finally {
+            if (cache != null) cache.flush();
+        }
+    }
+
+    private Map<String, Grammar> loadBlocks(List<String> present) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (threads == 1 || present.size() < MIN_PARALLEL_BLOCKS) {
+            Map<String, Grammar> loaded = new LinkedHashMap<>();
+            for (String id : present) {
+                Grammar grammar = loadBlock(id);
+                if (grammar != null) loaded.put(id, grammar);
+            }
+            return loaded;
+        }
+
+        int tasks = Math.min(present.size(), threads * TASKS_PER_THREAD);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "grammar-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Grammar[]>> batches = new ArrayList<>(tasks);
+            for (int t = 0; t < tasks; t++) {
+                List<String> batch = present.subList(t * present.size() / tasks, (t + 1) * present.size() / tasks);
+                batches.add(pool.submit(() -> {
+                    Grammar[] parsed = new Grammar[batch.size()];
+                    for (int i = 0; i < parsed.length; i++) {
+                        parsed[i] = loadBlock(batch.get(i));
+                    }
+                    return parsed;
+                }));
+            }
+
+            Map<String, Grammar> loaded = new LinkedHashMap<>();
+            for (Future<Grammar[]> batch : batches) {
+                try {
+                    for (Grammar grammar : batch.get()) {
+                        if (grammar != null) loaded.put(grammar.getId(), grammar);
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+            return loaded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing " + filePath);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Closes the mapped file and the cache.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (cache != null) cache.close();
+        } finally {
+            file.close();
+        }
+    }
+}
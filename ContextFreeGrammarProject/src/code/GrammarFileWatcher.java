@@ -0,0 +1,239 @@
+package code;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the grammars of the open text file when another program changes the file.
+ * <p>
+ * A {@link WatchService} on the directory of the file reports changes to it to a daemon
+ * thread. Changes are debounced: after the first event the thread waits until no event has
+ * arrived for {@value #DEBOUNCE_MILLIS} ms, so a burst of writes causes a single reload.
+ * </p>
+ * <p>
+ * A reload indexes the file again and compares the checksum of every grammar block (see
+ * {@link GrammarCache#key}) with the one seen at the previous reload, or when watching
+ * started. Only the changed blocks are parsed. If all of them parse, the manager is switched
+ * to the new version with {@link GrammarManager#reload(GrammarSource, Map, Set)} while holding
+ * the manager's monitor, which the {@link CLI} also holds while it runs a command, so commands
+ * see either the old or the new grammars. A file that cannot be parsed is reported and leaves
+ * the grammars unchanged. A changed grammar whose rules equal the loaded ones, as after saving
+ * the file from this program, is not replaced.
+ * </p>
+ */
+public class GrammarFileWatcher implements Closeable {
+    /**
+     * Time without further changes after which a changed file is reloaded.
+     */
+    public static final long DEBOUNCE_MILLIS = 250;
+
+    private final GrammarManager manager;
+    private final String filePath;
+    private final Path file;
+    private final WatchService service;
+    private final Thread thread;
+    private Map<String, byte[]> known;
+    private volatile boolean closed;
+
+    private GrammarFileWatcher(GrammarManager manager, String filePath, Map<String, byte[]> known) throws IOException {
+        this.manager = manager;
+        this.filePath = filePath;
+        this.file = Paths.get(filePath).toAbsolutePath();
+        this.known = known;
+        this.service = file.getFileSystem().newWatchService();
+        try {
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "grammar-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the current file of the manager. Changes made before this call are not
+     * picked up.
+     *
+     * @param manager the manager holding the grammars of the file
+     * @return the running watcher
+     * @throws IOException if the file cannot be indexed or watched
+     * @throws IllegalStateException if no file is open or the file is not a text grammar file
+     */
+    public static GrammarFileWatcher start(GrammarManager manager) throws IOException {
+        String filePath = manager.getCurrentFilePath();
+        if (filePath == null) {
+            throw new IllegalStateException("No file is currently open.");
+        }
+        if (FileHandler.isBinary(filePath) || CompressedGrammarFile.Compression.of(filePath) != null) {
+            throw new IllegalStateException("Only text grammar files can be watched.");
+        }
+        Map<String, byte[]> keys;
+        try (GrammarFileIndex index = GrammarFileIndex.build(filePath)) {
+            keys = keys(index);
+        }
+        GrammarFileWatcher watcher = new GrammarFileWatcher(manager, filePath, keys);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Stops watching.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        service.close();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                if (!relevant(service.take())) continue;
+                // wait for the writes to settle
+                WatchKey next;
+                while ((next = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    relevant(next);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Consumes the events of a key.
+     *
+     * @return whether any of them concerns the watched file
+     */
+    private boolean relevant(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && file.getFileName().equals(context))) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void reload() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        GrammarFileIndex index = null;
+        Map<String, byte[]> keys;
+        Map<String, Grammar> changed;
+        try {
+            index = GrammarFileIndex.build(filePath);
+            keys = keys(index);
+            List<String> ids = new ArrayList<>();
+            for (Map.Entry<String, byte[]> entry : keys.entrySet()) {
+                if (!Arrays.equals(entry.getValue(), known.get(entry.getKey()))) ids.add(entry.getKey());
+            }
+            changed = index.loadAll(ids);
+        } catch (IOException | RuntimeException e) {
+            close(index);
+            synchronized (manager) {
+                report("Could not reload " + filePath + ": " + e.getMessage());
+            }
+            return;
+        }
+        Set<String> removed = new LinkedHashSet<>(known.keySet());
+        removed.removeAll(keys.keySet());
+
+        synchronized (manager) {
+            if (closed || !filePath.equals(manager.getCurrentFilePath())) {
+                close(index);
+                return;
+            }
+            known = keys;
+            changed.values().removeIf(grammar -> sameAsLoaded(grammar));
+            if (changed.isEmpty() && removed.isEmpty()) {
+                close(index);
+                return;
+            }
+            // the manager closes the new index once no grammar is read from it any more
+            Set<String> kept = manager.reload(index, changed, removed);
+            List<String> reloaded = new ArrayList<>(changed.keySet());
+            reloaded.removeAll(kept);
+            removed.removeAll(kept);
+
+            StringBuilder message = new StringBuilder(filePath).append(" changed.");
+            if (!reloaded.isEmpty()) message.append(" Reloaded: ").append(String.join(", ", reloaded)).append('.');
+            if (!removed.isEmpty()) message.append(" Removed: ").append(String.join(", ", removed)).append('.');
+            if (!kept.isEmpty()) message.append(" Kept with unsaved edits: ").append(String.join(", ", kept)).append('.');
+            report(message.toString());
+        }
+    }
+
+    /**
+     * @return whether the manager holds a loaded, unedited grammar with the same contents
+     */
+    private boolean sameAsLoaded(Grammar grammar) {
+        String id = grammar.getId();
+        if (manager.isDirty(id) || !manager.isLoaded(id)) {
+            return false;
+        }
+        Grammar loaded = manager.getGrammar(id);
+        if (loaded.getStartSymbol() != grammar.getStartSymbol()
+                || !loaded.getVariables().equals(grammar.getVariables())
+                || !loaded.getTerminals().equals(grammar.getTerminals())
+                || loaded.getAllRules().size() != grammar.getAllRules().size()) {
+            return false;
+        }
+        Map<String, Rule> rules = new HashMap<>();
+        for (Rule rule : loaded.getAllRules()) rules.put(rule.getId(), rule);
+        for (Rule rule : grammar.getAllRules()) {
+            Rule other = rules.get(rule.getId());
+            if (other == null || other.getLeftSide() != rule.getLeftSide()
+                    || !other.getRightSide().equals(rule.getRightSide())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes an index that is not handed to the manager.
+     */
+    private static void close(GrammarFileIndex index) {
+        if (index == null) {
+            return;
+        }
+        try {
+            index.close();
+        } catch (IOException ignored) {
+            // nothing was read from it
+        }
+    }
+
+    private static Map<String, byte[]> keys(GrammarFileIndex index) {
+        Map<String, byte[]> keys = new LinkedHashMap<>();
+        for (String id : index.getGrammarIds()) {
+            keys.put(id, index.blockKey(id));
+        }
+        return keys;
+    }
+
+    /**
+     * Prints a message between the prompts of the command loop.
+     */
+    private static void report(String message) {
+        System.out.println();
+        System.out.println(message);
+        System.out.print("-> ");
+        System.out.flush();
+    }
+}
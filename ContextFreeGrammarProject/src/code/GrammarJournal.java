@@ -0,0 +1,406 @@
+package code;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the edits made to the grammars of an opened file.
+ * <p>
+ * The journal lives beside the grammar file ({@code <file>.journal}). Edits are collected in
+ * memory as they happen and appended to the journal on {@link #flush()}, so saving costs time
+ * proportional to the number of edits instead of the size of the file. When the file is opened
+ * again, {@link #replay(GrammarSource)} applies the journal on top of it. Compaction folds
+ * everything into the grammar file with {@link FileHandler#saveGrammars(GrammarManager, String)},
+ * after which the journal is deleted.
+ * </p>
+ * <p>
+ * Every entry is one line of tab-separated fields:
+ * <pre>
+ * base     &lt;size&gt; &lt;crc&gt;                               (first line: the grammar file the edits apply to)
+ * grammar  &lt;id&gt; &lt;start&gt; &lt;variables&gt; &lt;terminals&gt;   (new or replaced grammar, without rules)
+ * add      &lt;id&gt; &lt;ruleId&gt; &lt;left&gt; &lt;right&gt;
+ * remove   &lt;id&gt; &lt;ruleId&gt;
+ * drop     &lt;id&gt;
+ * </pre>
+ * Replaying treats every entry as an assignment (an added rule replaces a rule with the same ID,
+ * adding to a missing grammar or removing a missing rule or grammar does nothing), so replaying a journal over a file that
+ * already contains its edits gives the same grammars. This keeps the file consistent if the
+ * program stops between writing a compacted file and deleting the journal. An incomplete last
+ * line, left by an interrupted append, is ignored and cut off.
+ * </p>
+ * <p>
+ * The first line fingerprints the grammar file with its size and CRC-32 at the time the journal
+ * was started. If the file was changed by another program since, the journal is stale (see
+ * {@link #isStale()}) and must be discarded instead of replayed.
+ * </p>
+ */
+public class GrammarJournal {
+    /**
+     * Suffix appended to the grammar file path to get the journal path.
+     */
+    public static final String SUFFIX = ".journal";
+
+    private static final long MIN_COMPACT_SIZE = 64 * 1024;
+
+    private final String filePath;
+    private final File journalFile;
+    private final List<String> pending = new ArrayList<>();
+    private boolean rewriteRequired;
+
+    private GrammarJournal(String filePath) {
+        this.filePath = filePath;
+        this.journalFile = new File(filePath + SUFFIX);
+    }
+
+    /**
+     * Returns the journal of the given grammar file. The journal file itself is created on the
+     * first {@link #flush()} that has edits to write.
+     *
+     * @param filePath the path to the grammar file
+     * @return the journal of that file
+     */
+    public static GrammarJournal of(String filePath) {
+        return new GrammarJournal(filePath);
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return the number of edits that have not been written to the journal yet
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Marks the grammars in memory as no longer described by the grammar file plus this
+     * journal, for example after grammars of another file were merged in. The next save must
+     * then rewrite the file instead of appending to the journal.
+     */
+    public void requireRewrite() {
+        rewriteRequired = true;
+    }
+
+    public boolean isRewriteRequired() {
+        return rewriteRequired;
+    }
+
+    /**
+     * Returns whether the journal file was started for a different version of the grammar
+     * file, for example because the file was edited by another program afterwards. A journal
+     * without a fingerprint is assumed to match.
+     *
+     * @return whether the journal exists and does not belong to the current grammar file
+     * @throws IOException if the journal or the grammar file cannot be read
+     */
+    public boolean isStale() throws IOException {
+        if (!journalFile.exists()) {
+            return false;
+        }
+        String first;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            first = reader.readLine();
+        }
+        if (first == null || !first.startsWith("base\t")) {
+            return false;
+        }
+        return !first.equals(fingerprint());
+    }
+
+    /**
+     * Applies all complete entries of the journal file to the grammars of the file. Only the
+     * grammars that the journal mentions are loaded, and the result is kept apart from any
+     * manager until {@link Replay#applyTo(GrammarManager)}, so an invalid journal leaves the
+     * manager untouched.
+     *
+     * @param source the grammar file the journal belongs to
+     * @return the grammars changed by the journal
+     * @throws IOException if the journal or the file cannot be read, or the journal contains
+     *                     an invalid entry
+     */
+    public Replay replay(GrammarSource source) throws IOException {
+        Map<String, Grammar> edited = new LinkedHashMap<>();
+        if (!journalFile.exists()) {
+            return new Replay(edited, 0);
+        }
+        byte[] data = Files.readAllBytes(journalFile.toPath());
+        int end = data.length;
+        while (end > 0 && data[end - 1] != '\n') {
+            end--;
+        }
+        if (end < data.length) {
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(end);
+            }
+        }
+
+        int lineNumber = 0;
+        int entries = 0;
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+            if (data[i] != '\n') continue;
+            lineNumber++;
+            String line = new String(data, start, i - start, StandardCharsets.UTF_8);
+            start = i + 1;
+            if (line.isEmpty() || line.startsWith("base\t")) continue;
+            try {
+                apply(edited, source, split(line));
+                entries++;
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid journal entry at " + journalFile.getPath() + ":" + lineNumber
+                        + ": " + e.getMessage(), e);
+            }
+        }
+        return new Replay(edited, entries);
+    }
+
+    /**
+     * @param edited the grammars changed so far by ID, {@code null} for dropped ones
+     */
+    private static void apply(Map<String, Grammar> edited, GrammarSource source, String[] fields)
+            throws IOException {
+        switch (fields[0]) {
+            case "grammar": {
+                Grammar grammar = new Grammar(fields[1], symbol(fields[2]));
+                for (char v : fields[3].toCharArray()) grammar.addVariable(v);
+                for (char t : fields[4].toCharArray()) grammar.addTerminal(t);
+                edited.put(fields[1], grammar);
+                break;
+            }
+            case "add": {
+                Grammar grammar = edited(edited, source, fields[1]);
+                if (grammar == null) {
+                    // the grammar is gone, so is the rule
+                    break;
+                }
+                if (grammar.hasRule(fields[2])) {
+                    grammar.removeRule(fields[2]);
+                }
+                grammar.addRule(fields[2], symbol(fields[3]), fields[4]);
+                break;
+            }
+            case "remove": {
+                Grammar grammar = edited(edited, source, fields[1]);
+                if (grammar != null && grammar.hasRule(fields[2])) {
+                    grammar.removeRule(fields[2]);
+                }
+                break;
+            }
+            case "drop":
+                edited.put(fields[1], null);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown entry " + fields[0]);
+        }
+    }
+
+    /**
+     * @return the current version of a grammar, loaded from the file on first use, or
+     *         {@code null} if there is no such grammar
+     */
+    private static Grammar edited(Map<String, Grammar> edited, GrammarSource source, String id)
+            throws IOException {
+        if (edited.containsKey(id)) {
+            return edited.get(id);
+        }
+        Grammar grammar = source.load(id);
+        if (grammar != null) {
+            edited.put(id, grammar);
+        }
+        return grammar;
+    }
+
+    /**
+     * The grammars changed by replaying a journal, not yet handed to a manager.
+     */
+    public static final class Replay {
+        private final Map<String, Grammar> edited;
+        private final int entries;
+
+        private Replay(Map<String, Grammar> edited, int entries) {
+            this.edited = edited;
+            this.entries = entries;
+        }
+
+        /**
+         * @return the number of replayed entries
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Replaces the changed grammars in the manager and removes the dropped ones.
+         *
+         * @param manager the manager holding the grammars of the file
+         */
+        public void applyTo(GrammarManager manager) {
+            for (Map.Entry<String, Grammar> entry : edited.entrySet()) {
+                if (entry.getValue() == null) {
+                    manager.removeGrammar(entry.getKey());
+                } else {
+                    manager.addGrammar(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static char symbol(String field) {
+        if (field.length() != 1) {
+            throw new IllegalArgumentException("Expected a single symbol, found '" + field + "'");
+        }
+        return field.charAt(0);
+    }
+
+    /**
+     * Records a new grammar, or one that replaces a grammar with the same ID, together with
+     * all of its rules.
+     */
+    void recordGrammar(Grammar grammar) {
+        StringBuilder variables = new StringBuilder();
+        for (char v : grammar.getVariables()) variables.append(v);
+        StringBuilder terminals = new StringBuilder();
+        for (char t : grammar.getTerminals()) terminals.append(t);
+        record("grammar", grammar.getId(), String.valueOf(grammar.getStartSymbol()),
+                variables.toString(), terminals.toString());
+        for (Rule rule : grammar.getAllRules()) {
+            recordAddRule(grammar.getId(), rule.getId(), rule.getLeftSide(), rule.getRightSide());
+        }
+    }
+
+    void recordAddRule(String grammarId, String ruleId, char leftSide, String rightSide) {
+        record("add", grammarId, ruleId, String.valueOf(leftSide), rightSide);
+    }
+
+    void recordRemoveRule(String grammarId, String ruleId) {
+        record("remove", grammarId, ruleId);
+    }
+
+    void recordRemoveGrammar(String grammarId) {
+        record("drop", grammarId);
+    }
+
+    private void record(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) line.append('\t');
+            escape(fields[i], line);
+        }
+        pending.add(line.append('\n').toString());
+    }
+
+    /**
+     * Appends the pending edits to the journal file and forces them to disk. A new journal
+     * file starts with the fingerprint of the grammar file.
+     *
+     * @return the number of written edits
+     * @throws IOException if an I/O error occurs writing the journal
+     */
+    public int flush() throws IOException {
+        int count = pending.size();
+        if (count == 0) {
+            return 0;
+        }
+        String header = journalFile.length() == 0 ? fingerprint() + "\n" : null;
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (header != null) {
+                writer.write(header);
+            }
+            for (String line : pending) {
+                writer.write(line);
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        pending.clear();
+        return count;
+    }
+
+    /**
+     * @return whether the journal has grown large enough, compared to the grammar file, that
+     *         it should be folded into the file
+     */
+    public boolean shouldCompact() {
+        long journalSize = journalFile.length();
+        return journalSize > Math.max(MIN_COMPACT_SIZE, new File(filePath).length() / 2);
+    }
+
+    /**
+     * Deletes the journal file and drops all pending edits.
+     *
+     * @throws IOException if the journal file cannot be deleted
+     */
+    public void discard() throws IOException {
+        Files.deleteIfExists(journalFile.toPath());
+        pending.clear();
+        rewriteRequired = false;
+    }
+
+    /**
+     * @return the header line (without line break) that identifies the current grammar file
+     */
+    private String fingerprint() throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = new FileInputStream(filePath)) {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+                size += n;
+            }
+        }
+        return "base\t" + size + "\t" + Long.toHexString(crc.getValue());
+    }
+
+    private static void escape(String field, StringBuilder out) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char e = line.charAt(++i);
+                field.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        int expected;
+        switch (fields.get(0)) {
+            case "grammar": case "add": expected = 5; break;
+            case "remove": expected = 3; break;
+            case "drop": expected = 2; break;
+            default: expected = fields.size();
+        }
+        if (fields.size() != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " fields, found " + fields.size());
+        }
+        return fields.toArray(new String[0]);
+    }
+}
@@ -1,21 +1,89 @@
 package code;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Manages a collection of {@link Grammar} instances, allowing grammars to be added,
  * retrieved, and manipulated, and tracks the currently opened file.
+ * <p>
+ * Grammars registered through {@link #addGrammars(GrammarSource)} are not parsed
+ * until they are first requested; {@link #getGrammar(String)} loads them on demand.
+ * </p>
+ * <p>
+ * While a {@link GrammarJournal} is attached, every added or removed grammar and rule is
+ * recorded in it, so that saving only has to append the edits.
+ * </p>
+ * <p>
+ * The manager also remembers the file every grammar was read from and which grammars have
+ * changed since, so that a file can be saved by copying the blocks of unchanged grammars
+ * (see {@link FileHandler#saveGrammars(GrammarManager, String)}).
+ * </p>
+ * <p>
+ * With a heap budget, the manager keeps only the recently used grammars in memory. When
+ * the estimated size of the loaded grammars exceeds the budget, the least recently used
+ * ones that are not {@link #pin(String) pinned} are evicted: unchanged grammars are read
+ * from their file again when they are next requested, and grammars with unsaved changes, or
+ * from a file that cannot be read again (see {@link GrammarSource#isReloadable()}), are
+ * first written to a {@link GrammarSpillFile}. The budget starts out from the system
+ * property {@value #HEAP_BUDGET_PROPERTY}, in bytes; without it, all grammars stay loaded.
+ * </p>
  */
 public class GrammarManager {
+    /**
+     * System property holding the default heap budget in bytes.
+     */
+    public static final String HEAP_BUDGET_PROPERTY = "grammar.heap.budget";
+    /**
+     * Estimated bytes of a grammar without symbols and rules.
+     */
+    private static final long GRAMMAR_BYTES = 400;
+    /**
+     * Estimated bytes of a variable or terminal.
+     */
+    private static final long SYMBOL_BYTES = 48;
+    /**
+     * Estimated bytes of a rule with its ID and a short right side.
+     */
+    private static final long RULE_BYTES = 200;
+
     private Map<String, Grammar> grammars;
+    private Map<String, GrammarSource> unloaded;
+    private Map<String, GrammarSource> origins;
+    private Set<String> order;
+    private Set<String> dirty;
     private String currentFilePath;
+    private GrammarJournal journal;
+    private LinkedHashMap<String, Long> resident;
+    private long residentBytes;
+    private long heapBudget;
+    private Map<String, Integer> pins;
+    private GrammarSpillFile spill;
+    private long evictions;
 
     /**
      * Constructs a new GrammarManager with an empty set of grammars.
      */
     public GrammarManager() {
         this.grammars = new HashMap<>();
+        this.unloaded = new LinkedHashMap<>();
+        this.origins = new HashMap<>();
+        this.order = new LinkedHashSet<>();
+        this.dirty = new HashSet<>();
+        this.resident = new LinkedHashMap<>(16, 0.75f, true);
+        this.pins = new HashMap<>();
+        this.heapBudget = Long.getLong(HEAP_BUDGET_PROPERTY, 0);
     }
 
     public String getCurrentFilePath() {
@@ -26,6 +94,19 @@ public class GrammarManager {
         this.currentFilePath = currentFilePath;
     }
 
+    public GrammarJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Attaches the journal that records the edits made from now on.
+     *
+     * @param journal the journal of the current file, or {@code null} to stop recording
+     */
+    public void setJournal(GrammarJournal journal) {
+        this.journal = journal;
+    }
+
     /**
      * Adds a new {@link Grammar} to this manager.
      * If a grammar with the same ID already exists, it will be replaced.
@@ -33,7 +114,62 @@ public class GrammarManager {
      * @param grammar the Grammar instance to add
      */
     public void addGrammar(Grammar grammar) {
+        unloaded.remove(grammar.getId());
+        GrammarSource origin = origins.remove(grammar.getId());
+        unspill(grammar.getId());
         grammars.put(grammar.getId(), grammar);
+        order.add(grammar.getId());
+        dirty.add(grammar.getId());
+        if (journal != null) {
+            journal.recordGrammar(grammar);
+        }
+        track(grammar);
+        evict(grammar.getId());
+        closeUnused(Collections.singleton(origin));
+    }
+
+    /**
+     * Removes a grammar from this manager. Does nothing if no grammar with the ID exists.
+     * Until the next save, the removal counts as an unsaved edit of the grammar.
+     *
+     * @param id the ID of the grammar to remove
+     */
+    public void removeGrammar(String id) {
+        boolean removed = grammars.remove(id) != null;
+        removed |= unloaded.remove(id) != null;
+        untrack(id);
+        unspill(id);
+        GrammarSource origin = origins.remove(id);
+        order.remove(id);
+        if (removed) {
+            dirty.add(id);
+            if (journal != null) {
+                journal.recordRemoveGrammar(id);
+            }
+        }
+        closeUnused(Collections.singleton(origin));
+    }
+
+    /**
+     * Registers all grammars of an opened file without loading them.
+     * Grammars with the same IDs as already present ones replace them. The manager closes the
+     * file once none of its grammars is read from it any more.
+     *
+     * @param source the opened file
+     */
+    public void addGrammars(GrammarSource source) {
+        Set<GrammarSource> replaced = new HashSet<>();
+        replaced.add(source);
+        for (String id : source.getGrammarIds()) {
+            grammars.remove(id);
+            untrack(id);
+            unspill(id);
+            unloaded.put(id, source);
+            replaced.add(origins.put(id, source));
+            order.add(id);
+            dirty.remove(id);
+        }
+        closeUnused(replaced);
     }
 
     /**
@@ -46,11 +182,16 @@ public class GrammarManager {
      * @throws IllegalArgumentException if no grammar with the given ID exists, or if the rule parameters are invalid
      */
     public void addRule(String grammarId, String ruleId, char leftSide, String rightSide) {
-        Grammar grammar = grammars.get(grammarId);
+        Grammar grammar = getGrammar(grammarId);
         if (grammar == null) {
             throw new IllegalArgumentException("Grammar with ID " + grammarId + " not found");
         }
         grammar.addRule(ruleId, leftSide, rightSide);
+        dirty.add(grammarId);
+        track(grammar);
+        if (journal != null) {
+            journal.recordAddRule(grammarId, ruleId, leftSide, rightSide);
+        }
     }
 
     /**
@@ -61,11 +202,16 @@ public class GrammarManager {
      * @throws IllegalArgumentException if no grammar with the given ID exists, or if the rule ID is not found in that grammar
      */
     public void removeRule(String grammarId, String ruleId) {
-        Grammar grammar = grammars.get(grammarId);
+        Grammar grammar = getGrammar(grammarId);
         if (grammar == null) {
             throw new IllegalArgumentException("Grammar with ID " + grammarId + " not found");
         }
         grammar.removeRule(ruleId);
+        dirty.add(grammarId);
+        track(grammar);
+        if (journal != null) {
+            journal.recordRemoveRule(grammarId, ruleId);
+        }
     }
 
     /**
@@ -74,32 +220,454 @@ public class GrammarManager {
      * @return {@code true} if no grammars have been added, {@code false} otherwise
      */
     public boolean isEmpty() {
-        return grammars.isEmpty();
+        return grammars.isEmpty() && unloaded.isEmpty();
     }
 
     /**
-     * Removes all grammars from this manager.
+     * Removes all grammars from this manager and detaches the journal, dropping unsaved edits.
+     * The files the grammars were read from are closed.
      */
     public void clearGrammars() {
+        Set<GrammarSource> sources = new HashSet<>(origins.values());
         grammars.clear();
+        unloaded.clear();
+        origins.clear();
+        order.clear();
+        dirty.clear();
+        journal = null;
+        resident.clear();
+        residentBytes = 0;
+        pins.clear();
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+                // the file is deleted on exit
+            }
+            spill = null;
+        }
+        closeUnused(sources);
+    }
+
+    /**
+     * @param id the ID of a grammar
+     * @return whether the grammar was added, changed or removed since it was read from its file
+     */
+    public boolean isDirty(String id) {
+        return dirty.contains(id);
+    }
+
+    /**
+     * @param id the ID of a grammar
+     * @return whether the manager has a grammar with that ID, loaded or not
+     */
+    public boolean hasGrammar(String id) {
+        return order.contains(id);
     }
 
     /**
-     * Returns the map of all grammars.
+     * @param id the ID of a grammar
+     * @return whether the grammar is held in memory, that is, it was created in memory or has
+     *         already been read from its file
+     */
+    public boolean isLoaded(String id) {
+        return grammars.containsKey(id);
+    }
+
+    /**
+     * Returns the file from which a grammar can be copied unchanged.
+     *
+     * @param id the ID of a grammar
+     * @return the file the grammar was read from, or {@code null} if the grammar was created
+     *         in memory or has changed since it was read
+     */
+    public GrammarSource getCleanSource(String id) {
+        return dirty.contains(id) ? null : origins.get(id);
+    }
+
+    /**
+     * Records that all grammars have just been written to the given file: they are read from
+     * it from now on and none of them is dirty any more. A journal attached to the manager
+     * becomes obsolete and is discarded. The files the grammars were read from before are
+     * closed. A file that hands out each grammar only once (see
+     * {@link GrammarSource#isReloadable()}) only has to provide the grammars that are not
+     * loaded; they are moved to the spill file right away.
+     *
+     * @param source the written file, containing every grammar of this manager
+     * @throws IOException if the journal cannot be deleted
+     */
+    public void markSaved(GrammarSource source) throws IOException {
+        Set<GrammarSource> replaced = new HashSet<>(origins.values());
+        replaced.add(source);
+        for (String id : order) {
+            origins.put(id, source);
+            if (!source.isReloadable() && unloaded.containsKey(id)) {
+                spillSaved(source, id);
+            } else {
+                unloaded.replace(id, source);
+                unspill(id);
+            }
+        }
+        dirty.clear();
+        closeUnused(replaced);
+        if (journal != null) {
+            journal.discard();
+        }
+    }
+
+    /**
+     * Switches the grammars read from the current file over to a new version of that file,
+     * for example after it was changed by another program. Grammars whose blocks changed are
+     * replaced by their new versions, grammars no longer in the file are removed, and all
+     * other grammars of the file are read from the new version from now on, keeping the
+     * already loaded ones. Grammars with unsaved edits, including removed ones, are left as
+     * they are. Versions of the file that no grammar is read from any more are closed. The
+     * journal no longer applies to the new version, so the next save rewrites the file.
+     *
+     * @param source  the new version of the file
+     * @param changed the parsed grammars whose blocks changed or are new, by ID
+     * @param removed the IDs of grammars that are no longer in the file
+     * @return the IDs of changed or removed grammars that were kept because of unsaved edits
+     */
+    public Set<String> reload(GrammarSource source, Map<String, Grammar> changed, Set<String> removed) {
+        Set<String> kept = new LinkedHashSet<>();
+        Set<GrammarSource> replaced = new HashSet<>();
+        replaced.add(source);
+        for (String id : source.getGrammarIds()) {
+            if (dirty.contains(id)) {
+                // edited, or removed from the manager, but not saved yet
+                if (changed.containsKey(id)) kept.add(id);
+                continue;
+            }
+            Grammar grammar = changed.get(id);
+            if (grammar != null) {
+                grammars.put(id, grammar);
+                unloaded.remove(id);
+                order.add(id);
+                track(grammar);
+            } else if (!order.contains(id)) {
+                continue;
+            } else if (!grammars.containsKey(id)) {
+                unloaded.put(id, source);
+            }
+            replaced.add(origins.put(id, source));
+        }
+        for (String id : removed) {
+            if (dirty.contains(id)) {
+                kept.add(id);
+            } else {
+                grammars.remove(id);
+                unloaded.remove(id);
+                untrack(id);
+                replaced.add(origins.remove(id));
+                order.remove(id);
+            }
+        }
+        evict(null);
+        closeUnused(replaced);
+        if (journal != null) {
+            journal.requireRewrite();
+        }
+        return kept;
+    }
+
+    /**
+     * Returns the map of all grammars, loading every grammar that has not been loaded yet.
+     * The grammars of each file are loaded together, which lets text files parse them in parallel.
+     * With a heap budget, grammars that do not fit are evicted again afterwards; only the
+     * returned map keeps them in memory.
      *
-     * @return a Map from all grammars
+     * @return a new Map from the IDs of all grammars to the grammars, in the order of
+     *         {@link #getGrammarIds()}
      */
     public Map<String, Grammar> getGrammars() {
-        return grammars;
+        Map<GrammarSource, List<String>> bySource = new LinkedHashMap<>();
+        for (Map.Entry<String, GrammarSource> entry : unloaded.entrySet()) {
+            bySource.computeIfAbsent(entry.getValue(), s -> new ArrayList<>()).add(entry.getKey());
+        }
+        for (Map.Entry<GrammarSource, List<String>> entry : bySource.entrySet()) {
+            GrammarSource source = entry.getKey();
+            try {
+                Map<String, Grammar> loaded = source.loadAll(entry.getValue());
+                grammars.putAll(loaded);
+                for (Grammar grammar : loaded.values()) {
+                    track(grammar);
+                    unspill(grammar.getId());
+                }
+                for (String id : entry.getValue()) {
+                    if (!loaded.containsKey(id)) order.remove(id);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load grammars from " + source.getFilePath() + ": " + e.getMessage(), e);
+            }
+            unloaded.keySet().removeAll(entry.getValue());
+        }
+        Map<String, Grammar> all = new LinkedHashMap<>();
+        for (String id : order) {
+            all.put(id, grammars.get(id));
+        }
+        evict(null);
+        return all;
+    }
+
+    /**
+     * Returns the IDs of all grammars, loaded or not, without loading any of them. Grammars
+     * read from a file come in file order, followed by grammars added later.
+     *
+     * @return a Set of all grammar IDs
+     */
+    public Set<String> getGrammarIds() {
+        return new LinkedHashSet<>(order);
     }
 
     /**
-     * Retrieves a grammar by its ID.
+     * Retrieves a grammar by its ID, parsing it from its file on first access.
      *
      * @param id the ID of the grammar to retrieve
      * @return the Grammar instance, or {@code null} if no grammar with that ID exists
+     * @throws UncheckedIOException if the grammar could not be read from its file
      */
     public Grammar getGrammar(String id) {
-        return grammars.get(id);
+        Grammar grammar = grammars.get(id);
+        if (grammar != null) {
+            resident.get(id);
+        } else if (unloaded.containsKey(id)) {
+            grammar = load(id);
+        }
+        return grammar;
+    }
+
+    private Grammar load(String id) {
+        GrammarSource source = unloaded.get(id);
+        try {
+            Grammar grammar = source.load(id);
+            unloaded.remove(id);
+            unspill(id);
+            if (grammar != null) {
+                grammars.put(id, grammar);
+                track(grammar);
+                evict(id);
+            } else {
+                order.remove(id);
+            }
+            return grammar;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load grammar " + id + " from " + source.getFilePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the heap budget in bytes, or 0 if all grammars stay loaded
+     */
+    public long getHeapBudget() {
+        return heapBudget;
+    }
+
+    /**
+     * Sets the heap budget and evicts grammars until the loaded ones fit into it.
+     *
+     * @param heapBudget the budget in bytes, or 0 to keep all grammars loaded
+     */
+    public void setHeapBudget(long heapBudget) {
+        this.heapBudget = heapBudget;
+        evict(null);
+    }
+
+    /**
+     * @return the estimated bytes of the loaded grammars
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return the number of grammars evicted so far
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the file holding evicted grammars that cannot be read from their file, or
+     *         {@code null} if no such grammar was evicted yet
+     */
+    public GrammarSpillFile getSpillFile() {
+        return spill;
+    }
+
+    /**
+     * Keeps a grammar in memory until it is {@link #unpin(String) unpinned} as often as it
+     * was pinned.
+     *
+     * @param id the ID of the grammar
+     */
+    public void pin(String id) {
+        pins.merge(id, 1, Integer::sum);
+    }
+
+    /**
+     * Releases a {@link #pin(String) pin} of a grammar.
+     *
+     * @param id the ID of the grammar
+     */
+    public void unpin(String id) {
+        unpinAll(Collections.singletonList(id));
+    }
+
+    /**
+     * Pins every grammar named by an argument of a command, so that the grammars a command
+     * works on are not evicted while it runs. Without a heap budget nothing is pinned.
+     *
+     * @param args the command tokens, where args[0] is the command name
+     * @return the pinned IDs, to be released with {@link #unpinAll(List)} when the command ends
+     */
+    public List<String> pinArguments(String[] args) {
+        List<String> pinned = new ArrayList<>();
+        if (heapBudget <= 0) {
+            return pinned;
+        }
+        for (int i = 1; i < args.length; i++) {
+            if (hasGrammar(args[i])) {
+                pin(args[i]);
+                pinned.add(args[i]);
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Releases one {@link #pin(String) pin} of each of the given grammars.
+     *
+     * @param ids the IDs of the grammars
+     */
+    public void unpinAll(List<String> ids) {
+        for (String id : ids) {
+            pins.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1);
+        }
+        evict(null);
+    }
+
+    /**
+     * @param id the ID of a grammar
+     * @return whether the grammar is pinned
+     */
+    public boolean isPinned(String id) {
+        return pins.containsKey(id);
+    }
+
+    /**
+     * @return the estimated heap size of a grammar, from its numbers of symbols and rules
+     */
+    private static long estimateSize(Grammar grammar) {
+        return GRAMMAR_BYTES + SYMBOL_BYTES * (grammar.getVariables().size() + grammar.getTerminals().size())
+                + RULE_BYTES * grammar.getAllRules().size();
+    }
+
+    /**
+     * Records a loaded grammar as the most recently used one, with its current size.
+     */
+    private void track(Grammar grammar) {
+        long size = estimateSize(grammar);
+        Long previous = resident.put(grammar.getId(), size);
+        residentBytes += size - (previous == null ? 0 : previous);
+    }
+
+    private void untrack(String id) {
+        Long size = resident.remove(id);
+        if (size != null) {
+            residentBytes -= size;
+        }
+    }
+
+    /**
+     * Takes an unloaded grammar out of a file that cannot hand it out again and keeps it in the
+     * spill file. If spilling fails, the grammar is loaded instead.
+     */
+    private void spillSaved(GrammarSource source, String id) {
+        Grammar grammar;
+        try {
+            grammar = source.load(id);
+        } catch (IOException e) {
+            return;
+        }
+        if (grammar == null || unloaded.get(id) == spill) {
+            return;
+        }
+        try {
+            if (spill == null) {
+                spill = GrammarSpillFile.create();
+            }
+            spill.write(grammar);
+            unloaded.put(id, spill);
+        } catch (IOException e) {
+            unloaded.remove(id);
+            grammars.put(id, grammar);
+            track(grammar);
+        }
+    }
+
+    /**
+     * Drops the spilled copy of a grammar, which is out of date once the grammar is loaded,
+     * replaced or removed.
+     */
+    private void unspill(String id) {
+        if (spill != null) {
+            spill.remove(id);
+        }
+    }
+
+    /**
+     * Evicts the least recently used grammars until the loaded ones fit into the heap budget.
+     * Pinned grammars and {@code keep} stay loaded. If spilling a grammar fails, it stays
+     * loaded as well and eviction stops.
+     *
+     * @param keep the ID of a grammar that was just used, or {@code null}
+     */
+    private void evict(String keep) {
+        if (heapBudget <= 0 || residentBytes <= heapBudget) {
+            return;
+        }
+        Iterator<Map.Entry<String, Long>> it = resident.entrySet().iterator();
+        while (residentBytes > heapBudget && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            String id = entry.getKey();
+            if (id.equals(keep) || pins.containsKey(id)) {
+                continue;
+            }
+            GrammarSource source = dirty.contains(id) ? null : origins.get(id);
+            if (source == null || !source.isReloadable()) {
+                try {
+                    if (spill == null) {
+                        spill = GrammarSpillFile.create();
+                    }
+                    spill.write(grammars.get(id));
+                } catch (IOException e) {
+                    return;
+                }
+                source = spill;
+            }
+            grammars.remove(id);
+            unloaded.put(id, source);
+            residentBytes -= entry.getValue();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Closes the given sources that no grammar is read from any more. {@code null} entries are
+     * skipped, and the spill file is closed only by {@link #clearGrammars()}.
+     */
+    private void closeUnused(Collection<GrammarSource> sources) {
+        for (GrammarSource source : sources) {
+            if (source == null || source == spill || origins.containsValue(source)) {
+                continue;
+            }
+            try {
+                source.close();
+            } catch (IOException ignored) {
+                // the grammars read from it are already loaded
+            }
+        }
     }
 }
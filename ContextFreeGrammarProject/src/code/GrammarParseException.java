@@ -0,0 +1,40 @@
+package code;
+
+import java.io.IOException;
+
+/**
+ * Signals malformed input in a grammar text file. The message starts with the position of
+ * the problem in the form "file:line:column:".
+ */
+public class GrammarParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String source;
+    private final long line;
+    private final int column;
+
+    /**
+     * @param source  the name of the file, or {@code null} if unknown
+     * @param line    the line number, starting at 1
+     * @param column  the column within the line, starting at 1
+     * @param message the description of the problem
+     */
+    public GrammarParseException(String source, long line, int column, String message) {
+        super((source == null ? "" : source + ":") + line + ":" + column + ": " + message);
+        this.source = source;
+        this.line = line;
+        this.column = column;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
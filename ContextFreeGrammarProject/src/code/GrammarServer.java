@@ -0,0 +1,263 @@
+package code;
+
+import code.commands.*;
+import code.enums.CommandName;
+import code.extensions.Budget;
+import code.extensions.Progress;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Small HTTP/JSON server that runs the commands of the {@link CLI} for other programs.
+ * <p>
+ * {@code POST /command} with a body like {@code {"command": "cyk G1 aabb"}} (or just the
+ * command line as plain text) runs the command and answers with
+ * {@code {"command": ..., "output": ..., "micros": ...}}, where the output is what the command
+ * would have printed on the console. {@code GET /stats} answers with the number of requests
+ * and percentiles of their latency, in total and per command. The server only listens on the
+ * loopback address, because the commands can read and write files.
+ * </p>
+ * <p>
+ * Requests are handled by a fixed pool of worker threads; further requests wait in its queue.
+ * Commands that only read grammars ({@link #SNAPSHOT_COMMANDS}) run in parallel on a private
+ * {@link GrammarManager} holding {@link GrammarSnapshots} of the grammars named in the
+ * command. All other commands modify the shared manager and run one at a time under its
+ * monitor, like the commands typed into the {@link CLI} and the reloads of a
+ * {@link GrammarFileWatcher}.
+ * </p>
+ */
+public class GrammarServer implements Closeable {
+    /**
+     * Maximum number of connections waiting to be accepted.
+     */
+    public static final int BACKLOG = 4096;
+    /**
+     * Maximum size of a request body in bytes.
+     */
+    public static final int MAX_REQUEST_SIZE = 1 << 20;
+
+    /**
+     * Commands that do not modify grammars or the manager, by name, with a factory that binds
+     * them to a manager.
+     */
+    private static final Map<String, Function<GrammarManager, Command>> SNAPSHOT_COMMANDS = Map.of(
+            CommandName.PRINT.getCommand(), PrintCommand::new,
+            CommandName.CHOMSKY.getCommand(), ChomskyCommand::new,
+            CommandName.CYK.getCommand(), CykCommand::new,
+            CommandName.EMPTY.getCommand(), EmptyCommand::new,
+            CommandName.ANALYZE.getCommand(), AnalyzeCommand::new,
+            CommandName.EXPLAIN.getCommand(), ExplainCommand::new,
+            CommandName.SHORTEST.getCommand(), ShortestCommand::new);
+
+    /**
+     * Commands that make no sense over HTTP.
+     */
+    private static final Set<String> REJECTED = Set.of(
+            CommandName.EXIT.getCommand(), CommandName.SERVE.getCommand());
+
+    private final GrammarSnapshots snapshots;
+    private final Map<String, Command> commands;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> commandLatency = new ConcurrentHashMap<>();
+    private final OutputCapture output = OutputCapture.install();
+    private final long startTime = System.nanoTime();
+
+    private GrammarServer(GrammarSnapshots snapshots, Map<String, Command> commands, HttpServer server, int threads) {
+        this.snapshots = snapshots;
+        this.commands = commands;
+        this.server = server;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "grammar-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(workers);
+        server.createContext("/command", this::handleCommand);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Starts a server on the loopback address. {@code System.out} is replaced by an
+     * {@link OutputCapture} that collects the output of each request separately.
+     *
+     * @param snapshots the snapshots of the manager the commands work on
+     * @param commands  the commands of the command line by name
+     * @param port      the port to listen on, or 0 for any free port
+     * @return the running server
+     * @throws IOException if the port cannot be bound
+     */
+    public static GrammarServer start(GrammarSnapshots snapshots, Map<String, Command> commands, int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        GrammarServer server = new GrammarServer(snapshots, commands, http, threads);
+        http.start();
+        return server;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the latency of all requests handled so far
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Stops accepting requests and waits up to a second for running ones.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleCommand(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, error("Use POST."));
+                return;
+            }
+            String line;
+            try {
+                line = commandLine(exchange);
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, error(e.getMessage()));
+                return;
+            }
+            String[] tokens = line.split("\\s+");
+            String name = PipelineCommand.isPipeline(tokens) ? CommandName.PIPE.getCommand() : tokens[0];
+            if (line.isEmpty() || REJECTED.contains(name)
+                    || (!commands.containsKey(name) && !SNAPSHOT_COMMANDS.containsKey(name))) {
+                respond(exchange, 400, error("Invalid command: " + line));
+                return;
+            }
+
+            String printed = run(name, tokens);
+            long nanos = System.nanoTime() - start;
+            StringBuilder body = new StringBuilder("{\"command\":");
+            Json.quote(body, line);
+            body.append(",\"output\":");
+            Json.quote(body, printed);
+            body.append(",\"micros\":").append(nanos / 1000).append('}');
+            respond(exchange, 200, body.toString());
+            nanos = System.nanoTime() - start;
+            latency.record(nanos);
+            commandLatency.computeIfAbsent(name, n -> new LatencyHistogram()).record(nanos);
+        }
+    }
+
+    /**
+     * Reads the command line from the body of a request.
+     *
+     * @throws IllegalArgumentException if the body is too large or not a valid command object
+     */
+    private static String commandLine(HttpExchange exchange) throws IOException {
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_REQUEST_SIZE + 1);
+        if (bytes.length > MAX_REQUEST_SIZE) {
+            throw new IllegalArgumentException("Request larger than " + MAX_REQUEST_SIZE + " bytes.");
+        }
+        String body = new String(bytes, StandardCharsets.UTF_8).trim();
+        if (!body.startsWith("{")) {
+            return body;
+        }
+        String line = Json.parseObject(body).get("command");
+        if (line == null) {
+            throw new IllegalArgumentException("Member \"command\" missing.");
+        }
+        return line.trim();
+    }
+
+    /**
+     * Runs a command and returns what it printed.
+     */
+    private String run(String name, String[] tokens) {
+        String printed;
+        output.begin();
+        Progress.Guard guard = Progress.guard(name, Budget.of(name));
+        try {
+            Function<GrammarManager, Command> factory = SNAPSHOT_COMMANDS.get(name);
+            if (factory != null) {
+                factory.apply(snapshots.of(tokens)).execute(tokens);
+            } else {
+                GrammarManager manager = snapshots.getManager();
+                synchronized (manager) {
+                    // "memory pin" and "memory unpin" manage the pins themselves
+                    List<String> pinned = name.equals(CommandName.MEMORY.getCommand())
+                            ? Collections.emptyList() : manager.pinArguments(tokens);
+                    try {
+                        commands.get(name).execute(tokens);
+                    } finally {
+                        manager.unpinAll(pinned);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Error: " + e.getMessage());
+        } finally {
+            guard.close();
+            printed = output.end();
+        }
+        return printed;
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                respond(exchange, 405, error("Use GET."));
+                return;
+            }
+            StringBuilder body = new StringBuilder("{\"requests\":").append(latency.getCount())
+                    .append(",\"uptimeSeconds\":").append((System.nanoTime() - startTime) / 1_000_000_000L)
+                    .append(",\"latencyMicros\":");
+            latency.appendJson(body);
+            body.append(",\"commands\":{");
+            String separator = "";
+            for (String name : new TreeSet<>(commandLatency.keySet())) {
+                body.append(separator);
+                Json.quote(body, name);
+                body.append(':');
+                commandLatency.get(name).appendJson(body);
+                separator = ",";
+            }
+            body.append("}}");
+            respond(exchange, 200, body.toString());
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message) + "}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,127 @@
+package code;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Unmodified copies of the grammars of a shared {@link GrammarManager}, for commands that run
+ * on other threads than the command line.
+ * <p>
+ * A snapshot is taken under the monitor of the shared manager, which the {@link CLI} holds
+ * while it runs a command, and reused until {@link Grammar#getVersion()} of the original
+ * changes, so the profile and compiled automaton of a snapshot are built once and shared by
+ * all commands reading it. Commands get the snapshots through a private manager; they may add
+ * grammars to it but must not modify the snapshots.
+ * </p>
+ */
+public class GrammarSnapshots {
+    private final GrammarManager manager;
+    private final Map<Grammar, Snapshot> snapshots = new WeakHashMap<>();
+
+    private static final class Snapshot {
+        final int version;
+        final Grammar grammar;
+
+        Snapshot(int version, Grammar grammar) {
+            this.version = version;
+            this.grammar = grammar;
+        }
+    }
+
+    /**
+     * @param manager the shared manager
+     */
+    public GrammarSnapshots(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    public GrammarManager getManager() {
+        return manager;
+    }
+
+    /**
+     * @param id the ID of a grammar
+     * @return a snapshot of the current version of the grammar, or {@code null} if the shared
+     *         manager has no grammar with that ID
+     */
+    public Grammar get(String id) {
+        synchronized (manager) {
+            Grammar grammar = manager.getGrammar(id);
+            if (grammar == null) {
+                return null;
+            }
+            Snapshot snapshot = snapshots.get(grammar);
+            if (snapshot == null || snapshot.version != grammar.getVersion()) {
+                snapshot = new Snapshot(grammar.getVersion(), copy(grammar, id));
+                snapshots.put(grammar, snapshot);
+            }
+            return snapshot.grammar;
+        }
+    }
+
+    /**
+     * Creates a manager holding snapshots of the grammars named in a command line.
+     *
+     * @param tokens the command tokens; those after the command name that are grammar IDs
+     *               are taken
+     * @return the new manager
+     */
+    public GrammarManager of(String[] tokens) {
+        GrammarManager view = new GrammarManager();
+        for (int i = 1; i < tokens.length; i++) {
+            Grammar snapshot = get(tokens[i]);
+            if (snapshot != null) {
+                view.addGrammar(snapshot);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Creates a manager that lists every grammar of the shared manager and takes the snapshot
+     * of a grammar when it is first used. Grammars added to the new manager are dirty there;
+     * all others are not.
+     *
+     * @return the new manager
+     */
+    public GrammarManager all() {
+        Set<String> ids;
+        synchronized (manager) {
+            ids = manager.getGrammarIds();
+        }
+        GrammarManager view = new GrammarManager();
+        view.addGrammars(new GrammarSource() {
+            @Override
+            public String getFilePath() {
+                return "snapshot";
+            }
+
+            @Override
+            public Set<String> getGrammarIds() {
+                return ids;
+            }
+
+            @Override
+            public Grammar load(String id) {
+                return get(id);
+            }
+        });
+        return view;
+    }
+
+    /**
+     * @param grammar the grammar to copy
+     * @param id      the ID of the copy
+     * @return a copy of the grammar with the given ID
+     */
+    public static Grammar copy(Grammar grammar, String id) {
+        Grammar copy = new Grammar(id, grammar.getStartSymbol());
+        for (char variable : grammar.getVariables()) copy.addVariable(variable);
+        for (char terminal : grammar.getTerminals()) copy.addTerminal(terminal);
+        for (Rule rule : grammar.getAllRules()) {
+            copy.addRule(rule.getId(), rule.getLeftSide(), rule.getRightSide());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,73 @@
+package code;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents a file from which individual grammars can be loaded on demand.
+ * <p>
+ * A source may keep its file open; the {@link GrammarManager} closes it once none of its
+ * grammars is read from it any more.
+ * </p>
+ */
+public interface GrammarSource extends Closeable {
+    /**
+     * @return the path of the underlying file
+     */
+    String getFilePath();
+
+    /**
+     * @return the IDs of all grammars in the file
+     */
+    Set<String> getGrammarIds();
+
+    /**
+     * Loads a single grammar from the file.
+     *
+     * @param id the ID of the grammar
+     * @return the loaded grammar, or {@code null} if the file has no grammar with that ID
+     * @throws IOException if the grammar cannot be read
+     */
+    Grammar load(String id) throws IOException;
+
+    /**
+     * @return whether {@link #load(String)} can return a grammar again after it was loaded
+     *         once; the {@link GrammarManager} spills grammars of other sources before it
+     *         evicts them
+     */
+    default boolean isReloadable() {
+        return true;
+    }
+
+    /**
+     * Loads several grammars from the file. Implementations may load them in parallel.
+     *
+     * @param ids the IDs of the grammars
+     * @return the loaded grammars by ID, in the order of {@code ids}; IDs the file does not
+     *         contain are left out
+     * @throws IOException if a grammar cannot be read
+     */
+    default Map<String, Grammar> loadAll(Collection<String> ids) throws IOException {
+        Map<String, Grammar> loaded = new LinkedHashMap<>();
+        for (String id : ids) {
+            Grammar grammar = load(id);
+            if (grammar != null) {
+                loaded.put(id, grammar);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Releases the file. Grammars that were already loaded stay usable.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,194 @@
+package code;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Temporary file holding grammars that a {@link GrammarManager} evicted from the heap while
+ * they had unsaved changes or came from a file they cannot be read from again, so they can be
+ * loaded back like the grammars of any other {@link GrammarSource}.
+ * <p>
+ * Grammars are appended in the encoding of the {@link GrammarCache}. A grammar that is
+ * loaded back or spilled again leaves its old record behind; once the dead records take up
+ * more than half of a file of at least {@value #MIN_COMPACT_SIZE} bytes, the live ones are
+ * copied to a fresh file. The file lies in the directory named by the system property
+ * {@value #DIRECTORY_PROPERTY}, or the temporary directory, and is deleted when it is
+ * closed or the program exits.
+ * </p>
+ */
+public class GrammarSpillFile implements GrammarSource {
+    /**
+     * System property naming the directory of spill files.
+     */
+    public static final String DIRECTORY_PROPERTY = "grammar.spill.dir";
+    private static final long MIN_COMPACT_SIZE = 1 << 20;
+
+    private Path path;
+    private FileChannel channel;
+    private final Map<String, long[]> records = new LinkedHashMap<>();
+    private long liveBytes;
+
+    private GrammarSpillFile(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an empty spill file.
+     *
+     * @return the spill file
+     * @throws IOException if the file cannot be created
+     */
+    public static GrammarSpillFile create() throws IOException {
+        Path path = newFile();
+        return new GrammarSpillFile(path, open(path));
+    }
+
+    private static Path newFile() throws IOException {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        Path path = directory == null
+                ? Files.createTempFile("grammars-", ".spill")
+                : Files.createTempFile(Paths.get(directory), "grammars-", ".spill");
+        path.toFile().deleteOnExit();
+        return path;
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public String getFilePath() {
+        return path.toString();
+    }
+
+    @Override
+    public Set<String> getGrammarIds() {
+        return new LinkedHashSet<>(records.keySet());
+    }
+
+    /**
+     * @return the bytes taken by the grammars in the file
+     */
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return the size of the file in bytes
+     * @throws IOException if the size cannot be read
+     */
+    public long getSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Appends a grammar, replacing an earlier version with the same ID.
+     *
+     * @param grammar the grammar
+     * @throws IOException if the grammar cannot be written
+     */
+    public void write(Grammar grammar) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            GrammarCache.writeGrammar(out, grammar);
+        }
+        remove(grammar.getId());
+        if (channel.size() >= MIN_COMPACT_SIZE && channel.size() > 2 * (liveBytes + bytes.size())) {
+            compact();
+        }
+        long position = channel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        records.put(grammar.getId(), new long[]{position, bytes.size()});
+        liveBytes += bytes.size();
+    }
+
+    /**
+     * Reads a grammar back. Its record stays in the file until it is removed or replaced.
+     */
+    @Override
+    public Grammar load(String id) throws IOException {
+        long[] record = records.get(id);
+        if (record == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) record[1]);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, record[0] + buffer.position()) < 0) {
+                throw new EOFException("Spill file " + path + " is truncated.");
+            }
+        }
+        return GrammarCache.readGrammar(buffer.array());
+    }
+
+    /**
+     * Marks the record of a grammar as dead.
+     *
+     * @param id the ID of the grammar
+     */
+    public void remove(String id) {
+        long[] record = records.remove(id);
+        if (record != null) {
+            liveBytes -= record[1];
+        }
+    }
+
+    /**
+     * Copies the live records to a new file, which replaces this one.
+     */
+    private void compact() throws IOException {
+        Path target = newFile();
+        FileChannel out = open(target);
+        long[] positions = new long[records.size()];
+        try {
+            int i = 0;
+            long position = 0;
+            for (long[] record : records.values()) {
+                long copied = 0;
+                while (copied < record[1]) {
+                    copied += channel.transferTo(record[0] + copied, record[1] - copied, out);
+                }
+                positions[i++] = position;
+                position += record[1];
+            }
+        } catch (IOException e) {
+            out.close();
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        int i = 0;
+        for (long[] record : records.values()) {
+            record[0] = positions[i++];
+        }
+        channel.close();
+        Files.deleteIfExists(path);
+        path = target;
+        channel = out;
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        records.clear();
+        liveBytes = 0;
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
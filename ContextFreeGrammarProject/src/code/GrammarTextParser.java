@@ -0,0 +1,245 @@
+package code;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scanner for the grammar text format described in {@link FileHandler}.
+ * <p>
+ * Input is read into a char buffer that is reused for all lines (and, per thread, for all
+ * parsers), and every line is matched in place: header keywords are compared character by
+ * character and rules are split at ':' and "->" by index, so the only strings created are
+ * grammar IDs, rule IDs and right sides, which the {@link Grammar} keeps. Lines end at '\n';
+ * a preceding '\r' is removed together with the other surrounding whitespace.
+ * </p>
+ * <p>
+ * Lines are interpreted exactly as before: lines outside a grammar block, lines without ':' and
+ * rules without "->" or with an empty right side are skipped. Malformed lines that cannot be
+ * skipped are reported with a {@link GrammarParseException} giving their line and column.
+ * </p>
+ */
+final class GrammarTextParser {
+    private static final ThreadLocal<char[]> BUFFERS = ThreadLocal.withInitial(() -> new char[8192]);
+
+    private static final char[] SEPARATOR = "====".toCharArray();
+    private static final char[] GRAMMAR_ID = "Grammar ID:".toCharArray();
+    private static final char[] START_SYMBOL = "Start Symbol:".toCharArray();
+    private static final char[] VARIABLES = "Variables:".toCharArray();
+    private static final char[] TERMINALS = "Terminals:".toCharArray();
+
+    private final Reader reader;
+    private final String source;
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private long lineNumber;
+    private int lineStart;
+    private int lineEnd;
+
+    /**
+     * @param reader    the text to parse
+     * @param source    the name of the file used in error messages, or {@code null}
+     * @param firstLine the line number in that file of the first line of the reader
+     */
+    GrammarTextParser(Reader reader, String source, long firstLine) {
+        this.reader = reader;
+        this.source = source;
+        this.buffer = BUFFERS.get();
+        this.lineNumber = firstLine - 1;
+    }
+
+    /**
+     * Parses all grammar blocks into the given map, in which later grammars replace earlier
+     * ones with the same ID.
+     *
+     * @param grammars the map to which every parsed grammar is added by its ID
+     * @throws IOException if reading fails or a line is malformed
+     */
+    void parse(Map<String, Grammar> grammars) throws IOException {
+        Grammar current = null;
+        while (nextLine()) {
+            int start = skipSpace(lineStart, lineEnd);
+            int end = trimEnd(start, lineEnd);
+
+            if (startsWith(start, end, SEPARATOR)) {
+                if (current != null) {
+                    grammars.put(current.getId(), current);
+                }
+                current = null;
+            } else if (startsWith(start, end, GRAMMAR_ID)) {
+                current = new Grammar(string(start + GRAMMAR_ID.length, end), 'S');
+            } else if (current == null) {
+                continue;
+            } else if (startsWith(start, end, START_SYMBOL)) {
+                int symbol = skipSpace(start + START_SYMBOL.length, end);
+                if (symbol == end) {
+                    throw error(symbol, "Missing start symbol");
+                }
+                current.setStartSymbol(buffer[symbol]);
+            } else if (startsWith(start, end, VARIABLES)) {
+                readSymbols(start + VARIABLES.length, end, current.getVariables());
+            } else if (startsWith(start, end, TERMINALS)) {
+                readSymbols(start + TERMINALS.length, end, current.getTerminals());
+            } else {
+                int colon = indexOf(':', start, end);
+                if (colon >= 0) {
+                    readRule(current, start, colon, end);
+                }
+            }
+        }
+        if (current != null) {
+            grammars.put(current.getId(), current);
+        }
+    }
+
+    /**
+     * Reads a comma-separated list, taking the first character of every non-blank entry.
+     */
+    private void readSymbols(int position, int end, Set<Character> symbols) {
+        while (position < end) {
+            position = skipSpace(position, end);
+            if (position < end && buffer[position] != ',') {
+                symbols.add(buffer[position]);
+            }
+            while (position < end && buffer[position] != ',') {
+                position++;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Reads a rule line "ruleId: A -> rhs" whose first ':' is at {@code colon}.
+     */
+    private void readRule(Grammar grammar, int start, int colon, int end) throws IOException {
+        int arrow = indexOfArrow(colon + 1, end);
+        if (arrow < 0) {
+            return;
+        }
+        int secondArrow = indexOfArrow(arrow + 2, end);
+        if (secondArrow >= 0) {
+            throw error(secondArrow, "Unexpected '->'");
+        }
+        int left = skipSpace(colon + 1, arrow);
+        if (left == arrow) {
+            throw error(arrow, "Missing left side");
+        }
+        int right = skipSpace(arrow + 2, end);
+        if (right == end) {
+            return;
+        }
+
+        char leftSide = buffer[left];
+        if (!grammar.getVariables().contains(leftSide)) {
+            throw error(left, "Left side '" + leftSide + "' is not a defined variable");
+        }
+        Set<Character> variables = grammar.getVariables();
+        Set<Character> terminals = grammar.getTerminals();
+        for (int i = right; i < end; i++) {
+            char c = buffer[i];
+            if (!variables.contains(c) && !terminals.contains(c)) {
+                throw error(i, "Symbol '" + c + "' is not defined");
+            }
+        }
+        try {
+            grammar.addRule(string(start, colon), leftSide, new String(buffer, right, end - right));
+        } catch (IllegalArgumentException e) {
+            throw error(start, e.getMessage());
+        }
+    }
+
+    /**
+     * Moves to the next line of the input, refilling the buffer as needed.
+     *
+     * @return {@code false} at the end of the input
+     */
+    private boolean nextLine() throws IOException {
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer[scan] == '\n') {
+                    return takeLine(scan, scan + 1);
+                }
+            }
+            if (endOfInput) {
+                return position < limit && takeLine(limit, limit);
+            }
+            int scanned = scan - position;
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                BUFFERS.set(buffer);
+            }
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+            scan = position + scanned;
+        }
+    }
+
+    private boolean takeLine(int end, int next) {
+        lineStart = position;
+        lineEnd = end;
+        position = next;
+        lineNumber++;
+        return true;
+    }
+
+    private boolean startsWith(int start, int end, char[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private int indexOfArrow(int start, int end) {
+        for (int i = start; i + 1 < end; i++) {
+            if (buffer[i] == '-' && buffer[i + 1] == '>') return i;
+        }
+        return -1;
+    }
+
+    private int skipSpace(int start, int end) {
+        while (start < end && buffer[start] <= ' ') start++;
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && buffer[end - 1] <= ' ') end--;
+        return end;
+    }
+
+    /**
+     * @return the characters between the given positions without surrounding whitespace
+     */
+    private String string(int start, int end) {
+        start = skipSpace(start, end);
+        end = trimEnd(start, end);
+        return new String(buffer, start, end - start);
+    }
+
+    private GrammarParseException error(int index, String message) {
+        return new GrammarParseException(source, lineNumber, index - lineStart + 1, message);
+    }
+}
@@ -0,0 +1,152 @@
+package code;
+
+import code.extensions.Progress;
+
+import java.util.concurrent.Future;
+
+/**
+ * A command submitted to the {@link JobManager} to run in the background.
+ * <p>
+ * The state moves from {@link State#QUEUED} over {@link State#RUNNING} to one of the final
+ * states. A job that is cancelled or passes its deadline is marked as such at once; its
+ * thread is interrupted and stops at the next {@link Progress} checkpoint of the algorithm it
+ * runs.
+ * </p>
+ */
+public class Job implements Progress.Listener {
+    /**
+     * States of a job.
+     */
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED, TIMED_OUT;
+
+        public boolean isFinal() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    private final int id;
+    private final String commandLine;
+    private final long submitted = System.nanoTime();
+    private final long deadline;
+    private State state = State.QUEUED;
+    private long started;
+    private long finished;
+    private String output = "";
+    private Future<?> future;
+    private volatile String phase;
+    private volatile long done;
+    private volatile long total;
+
+    /**
+     * @param id            the number of the job
+     * @param commandLine   the command the job runs
+     * @param timeoutMillis time after submission at which the job is stopped, or 0 for none
+     */
+    Job(int id, String commandLine, long timeoutMillis) {
+        this.id = id;
+        this.commandLine = commandLine;
+        this.deadline = timeoutMillis > 0 ? submitted + timeoutMillis * 1_000_000 : 0;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getCommandLine() {
+        return commandLine;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return what the command printed; for a running job this is empty
+     */
+    public synchronized String getOutput() {
+        return output;
+    }
+
+    /**
+     * @return the time the job has been queued, running, or ran, in nanoseconds
+     */
+    public synchronized long getElapsed() {
+        if (state == State.QUEUED) return System.nanoTime() - submitted;
+        if (started == 0) return finished - submitted;
+        return (state == State.RUNNING ? System.nanoTime() : finished) - started;
+    }
+
+    /**
+     * @return the nanoseconds left until the deadline, or {@code Long.MAX_VALUE} if the job
+     *         has no deadline
+     */
+    public long getRemaining() {
+        return deadline == 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+
+    /**
+     * @return the last progress reported by the command, like "cyk 120/500 (24%)", or
+     *         {@code null} if it reported none
+     */
+    public String getProgress() {
+        String phase = this.phase;
+        if (phase == null) return null;
+        long done = this.done;
+        long total = this.total;
+        return phase + " " + done + "/" + total + (total > 0 ? " (" + (100 * done / total) + "%)" : "");
+    }
+
+    @Override
+    public void update(String phase, long done, long total) {
+        this.done = done;
+        this.total = total;
+        this.phase = phase;
+    }
+
+    /**
+     * Sets the task running the job. If the job was stopped before, the task is cancelled and
+     * its thread interrupted, as {@link #stop(State)} would have done.
+     */
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+        if (state.isFinal()) future.cancel(true);
+    }
+
+    /**
+     * Marks the job as running.
+     *
+     * @return {@code false} if it was stopped before it could start
+     */
+    synchronized boolean start() {
+        if (state != State.QUEUED) return false;
+        state = State.RUNNING;
+        started = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Records the end of the command. A job that was stopped keeps its state.
+     */
+    synchronized void finish(State state, String output) {
+        if (this.state == State.RUNNING) {
+            this.state = state;
+            finished = System.nanoTime();
+        }
+        this.output = output;
+    }
+
+    /**
+     * Stops the job unless it has finished.
+     *
+     * @param reason {@link State#CANCELLED} or {@link State#TIMED_OUT}
+     * @return whether the job was stopped
+     */
+    synchronized boolean stop(State reason) {
+        if (state.isFinal()) return false;
+        state = reason;
+        finished = System.nanoTime();
+        if (future != null) future.cancel(true);
+        return true;
+    }
+}
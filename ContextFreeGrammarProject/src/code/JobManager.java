@@ -0,0 +1,207 @@
+package code;
+
+import code.commands.*;
+import code.enums.CommandName;
+import code.extensions.Budget;
+import code.extensions.Progress;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs commands in the background while the command line stays responsive.
+ * <p>
+ * Jobs run on a small pool of daemon threads against {@link GrammarSnapshots#all()}, so they
+ * see the grammars as they were when each one was first used and never block the command
+ * line. Grammars a job creates, for example with {@code chomskify}, are added to the shared
+ * manager when the job completes, under another ID if the command line has taken the ID
+ * meanwhile. What a job prints is kept with the job instead of going to the console.
+ * </p>
+ * <p>
+ * A job is cancelled, or stopped at its deadline, by interrupting its thread; the membership
+ * engines and transformations check for that through {@link Progress} and give up their
+ * working memory as they unwind.
+ * </p>
+ */
+public class JobManager {
+    /**
+     * Commands that can run as jobs: those that only read grammars or add new ones, with a
+     * factory that binds them to a manager.
+     */
+    private static final Map<String, Function<GrammarManager, Command>> JOB_COMMANDS = Map.ofEntries(
+            Map.entry(CommandName.PRINT.getCommand(), PrintCommand::new),
+            Map.entry(CommandName.UNION.getCommand(), UnionCommand::new),
+            Map.entry(CommandName.CONCAT.getCommand(), ConcatCommand::new),
+            Map.entry(CommandName.CHOMSKY.getCommand(), ChomskyCommand::new),
+            Map.entry(CommandName.CYK.getCommand(), CykCommand::new),
+            Map.entry(CommandName.ITER.getCommand(), IterCommand::new),
+            Map.entry(CommandName.EMPTY.getCommand(), EmptyCommand::new),
+            Map.entry(CommandName.CHOMSKIFY.getCommand(), ChomskifyCommand::new),
+            Map.entry(CommandName.ANALYZE.getCommand(), AnalyzeCommand::new),
+            Map.entry(CommandName.EXPLAIN.getCommand(), ExplainCommand::new),
+            Map.entry(CommandName.SHORTEST.getCommand(), ShortestCommand::new),
+            Map.entry(CommandName.GREIBACH.getCommand(), GreibachCommand::new),
+            Map.entry(CommandName.NO_LEFT_REC.getCommand(), NoLeftRecCommand::new),
+            Map.entry(CommandName.PIPE.getCommand(), PipelineCommand::new));
+
+    private final GrammarSnapshots snapshots;
+    private final Map<Integer, Job> jobs = new LinkedHashMap<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService deadlines;
+    private OutputCapture output;
+
+    /**
+     * @param snapshots the snapshots of the shared manager
+     */
+    public JobManager(GrammarSnapshots snapshots) {
+        this.snapshots = snapshots;
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.workers = Executors.newFixedThreadPool(threads, daemon("grammar-job-"));
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(daemon("grammar-job-deadlines-"));
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @param tokens the tokens of a command line
+     * @return whether the command can run as a job
+     */
+    public static boolean canRun(String[] tokens) {
+        return JOB_COMMANDS.containsKey(name(tokens));
+    }
+
+    private static String name(String[] tokens) {
+        return PipelineCommand.isPipeline(tokens) ? CommandName.PIPE.getCommand() : tokens[0];
+    }
+
+    /**
+     * Queues a command.
+     *
+     * @param tokens        the command tokens
+     * @param timeoutMillis time after which the job is stopped, or 0 for none
+     * @return the new job
+     * @throws IllegalArgumentException if the command cannot run as a job
+     */
+    public synchronized Job submit(String[] tokens, long timeoutMillis) {
+        Function<GrammarManager, Command> factory = JOB_COMMANDS.get(name(tokens));
+        if (factory == null) {
+            throw new IllegalArgumentException("Command " + tokens[0] + " cannot run as a job.");
+        }
+        if (output == null) {
+            output = OutputCapture.install();
+        }
+        Job job = new Job(jobs.size() + 1, String.join(" ", tokens), timeoutMillis);
+        jobs.put(job.getId(), job);
+        job.setFuture(workers.submit(() -> run(job, factory, tokens)));
+        if (timeoutMillis > 0) {
+            deadlines.schedule(() -> {
+                synchronized (snapshots.getManager()) {
+                    job.stop(Job.State.TIMED_OUT);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return job;
+    }
+
+    /**
+     * @param id the number of a job
+     * @return the job, or {@code null} if there is none with that number
+     */
+    public synchronized Job get(int id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * @return all jobs in the order they were submitted
+     */
+    public synchronized List<Job> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Cancels a job unless it has finished. Must be called holding the monitor of the shared
+     * manager, as the {@link CLI} does while it runs a command.
+     *
+     * @param job the job to cancel
+     * @return whether the job was cancelled
+     */
+    public boolean cancel(Job job) {
+        return job.stop(Job.State.CANCELLED);
+    }
+
+    private void run(Job job, Function<GrammarManager, Command> factory, String[] tokens) {
+        if (!job.start()) {
+            return;
+        }
+        Job.State state = Job.State.DONE;
+        Progress.setListener(job);
+        output.begin();
+        String name = name(tokens);
+        GrammarManager view = null;
+        List<String> pinned = Collections.emptyList();
+        Progress.Guard guard = Progress.guard(name, Budget.of(name));
+        try {
+            view = snapshots.all();
+            pinned = view.pinArguments(tokens);
+            factory.apply(view).execute(tokens);
+            store(job, view);
+        } catch (CancellationException e) {
+            state = Job.State.CANCELLED;
+        } catch (RuntimeException e) {
+            System.out.println("Error: " + e.getMessage());
+            state = Job.State.FAILED;
+        } finally {
+            guard.close();
+            if (view != null) {
+                view.unpinAll(pinned);
+            }
+            Progress.setListener(null);
+            job.finish(state, output.end());
+        }
+    }
+
+    /**
+     * Adds the grammars created by a job to the shared manager, unless the job has been
+     * stopped. Stopping a job also takes the monitor of the shared manager, so a job is
+     * either stopped or stores all its grammars.
+     */
+    private void store(Job job, GrammarManager view) {
+        GrammarManager manager = snapshots.getManager();
+        synchronized (manager) {
+            if (job.getState() != Job.State.RUNNING) {
+                throw new CancellationException("Cancelled.");
+            }
+            for (String id : view.getGrammarIds()) {
+                if (!view.isDirty(id)) continue;
+                Grammar grammar = view.getGrammar(id);
+                if (manager.hasGrammar(id)) {
+                    String newId = freeId(manager);
+                    System.out.println("Grammar " + id + " was created meanwhile, stored the result as " + newId + ".");
+                    grammar = GrammarSnapshots.copy(grammar, newId);
+                }
+                manager.addGrammar(grammar);
+            }
+        }
+    }
+
+    private static String freeId(GrammarManager manager) {
+        int maxNum = 0;
+        for (String id : manager.getGrammarIds()) {
+            if (id.startsWith("G")) {
+                try {
+                    maxNum = Math.max(maxNum, Integer.parseInt(id.substring(1)));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return "G" + (maxNum + 1);
+    }
+}
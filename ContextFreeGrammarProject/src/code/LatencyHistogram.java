@@ -0,0 +1,123 @@
+package code;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations from which percentiles can be read while it is being recorded to.
+ * <p>
+ * Durations are counted in buckets whose width grows with the duration: every power of two
+ * is split into {@value #SUB_BUCKETS} equal buckets, so a percentile is reported with a
+ * relative error of at most 1/{@value #SUB_BUCKETS} at a fixed size of a few kilobytes,
+ * however many values are recorded. Recording takes no lock, so any number of threads can
+ * record at the same time.
+ * </p>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    /**
+     * Number of buckets per power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds; negative values count as zero
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / n;
+    }
+
+    /**
+     * @return the longest duration in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the duration below or at which the given share of the recorded durations lie.
+     *
+     * @param percentile the share in percent, between 0 and 100
+     * @return the upper end of the bucket holding that duration in nanoseconds, at most
+     *         {@link #getMax()}, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Appends the count and the mean, percentiles and maximum in microseconds as a JSON
+     * object.
+     *
+     * @param json the JSON being built
+     */
+    public void appendJson(StringBuilder json) {
+        json.append("{\"count\":").append(getCount())
+                .append(",\"mean\":").append(getMean() / 1000)
+                .append(",\"p50\":").append(getPercentile(50) / 1000)
+                .append(",\"p90\":").append(getPercentile(90) / 1000)
+                .append(",\"p95\":").append(getPercentile(95) / 1000)
+                .append(",\"p99\":").append(getPercentile(99) / 1000)
+                .append(",\"p999\":").append(getPercentile(99.9) / 1000)
+                .append(",\"max\":").append(getMax() / 1000).append('}');
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,124 @@
+package code;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory mapping of a whole file. Files larger than what a single
+ * {@link MappedByteBuffer} can address are mapped as several consecutive segments.
+ * <p>
+ * The file stays open until {@link #close()}, so its contents remain readable through
+ * {@link #channel()} even after another file has been renamed over its path.
+ * </p>
+ */
+public class MappedFile implements Closeable {
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    /**
+     * Maps the given file.
+     *
+     * @param filePath the path to the file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public MappedFile(String filePath) throws IOException {
+        channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the open, read-only channel of the mapped file
+     */
+    public FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Copies a range of the file to another channel without passing it through the heap.
+     *
+     * @param start  the first position to copy
+     * @param end    the position just past the last byte to copy
+     * @param target the channel to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void transferTo(long start, long end, WritableByteChannel target) throws IOException {
+        while (start < end) {
+            long transferred = channel.transferTo(start, end - start, target);
+            if (transferred <= 0) {
+                throw new IOException("Could not copy bytes " + start + " to " + end);
+            }
+            start += transferred;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the mapped segments in file order; every segment but the last is
+     *         exactly {@link #segmentSize()} bytes long
+     */
+    public MappedByteBuffer[] segments() {
+        return segments;
+    }
+
+    public static long segmentSize() {
+        return SEGMENT_SIZE;
+    }
+
+    /**
+     * @param position the absolute position in the file
+     * @return the byte at that position
+     */
+    public byte get(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Copies a range of the file into a new array.
+     *
+     * @param start the first position to copy
+     * @param end   the position just past the last byte to copy
+     * @return the copied bytes
+     */
+    public byte[] readBytes(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        int copied = 0;
+        while (copied < bytes.length) {
+            long position = start + copied;
+            MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+            int offset = (int) (position % SEGMENT_SIZE);
+            int length = Math.min(bytes.length - copied, segment.limit() - offset);
+            segment.get(offset, bytes, copied, length);
+            copied += length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Closes the channel. The mapped segments stay readable until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
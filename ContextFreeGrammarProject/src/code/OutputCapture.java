@@ -0,0 +1,87 @@
+package code;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/**
+ * Output stream behind {@code System.out} that lets commands run off the command line thread
+ * print into a buffer of their own.
+ * <p>
+ * Bytes written by a thread between {@link #begin()} and {@link #end()} go to the buffer of
+ * that thread, all others to the console stream that was {@code System.out} when the capture
+ * was installed.
+ * </p>
+ */
+public final class OutputCapture extends OutputStream {
+    private static OutputCapture installed;
+
+    private final PrintStream console;
+    private final PrintStream stream;
+    private final ThreadLocal<ByteArrayOutputStream> buffer = new ThreadLocal<>();
+
+    private OutputCapture(PrintStream console) {
+        this.console = console;
+        this.stream = new PrintStream(this, false, Charset.defaultCharset());
+    }
+
+    /**
+     * Makes {@code System.out} an output capture unless it already is one.
+     *
+     * @return the installed capture
+     */
+    public static synchronized OutputCapture install() {
+        if (installed == null || System.out != installed.stream) {
+            installed = new OutputCapture(System.out);
+            System.setOut(installed.stream);
+        }
+        return installed;
+    }
+
+    /**
+     * Starts collecting what the current thread prints.
+     */
+    public void begin() {
+        buffer.set(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Stops collecting what the current thread prints.
+     *
+     * @return what the thread printed since {@link #begin()}
+     */
+    public String end() {
+        stream.flush();
+        ByteArrayOutputStream printed = buffer.get();
+        buffer.remove();
+        return printed == null ? "" : printed.toString(Charset.defaultCharset());
+    }
+
+    @Override
+    public void write(int b) {
+        ByteArrayOutputStream target = buffer.get();
+        if (target != null) {
+            target.write(b);
+        } else {
+            console.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ByteArrayOutputStream target = buffer.get();
+        if (target != null) {
+            target.write(b, off, len);
+        } else {
+            console.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (buffer.get() == null) {
+            console.flush();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package code.commands;
+
+import code.Command;
+import code.Grammar;
+import code.GrammarManager;
+import code.extensions.GrammarAnalysis;
+import code.extensions.GrammarIndex;
+
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Command that prints a structural report of a grammar computed in a single linear pass.
+ */
+public class AnalyzeCommand implements Command {
+    private GrammarManager manager;
+
+    public AnalyzeCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "analyze" command.
+     * <p>
+     * Builds a {@link GrammarAnalysis} for the grammar and prints:
+     * <ul>
+     *   <li>size metrics (variables, terminals, rules, total right side length),</li>
+     *   <li>reachable, productive and nullable variables,</li>
+     *   <li>cycles of unit rules,</li>
+     *   <li>whether the language is empty, finite or infinite.</li>
+     * </ul>
+     * </p>
+     *
+     * @param args the command tokens, where args[0] is "analyze" and
+     *             args[1] is the ID of the grammar
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args == null || args.length < 2) {
+            System.out.println("Usage: analyze <grammarId>");
+            return;
+        }
+        String grammarId = args[1];
+        Grammar grammar = manager.getGrammar(grammarId);
+        if (grammar == null) {
+            System.out.println("Grammar with ID " + grammarId + " not found.");
+            return;
+        }
+
+        GrammarAnalysis analysis;
+        try {
+            analysis = GrammarAnalysis.analyze(grammar);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        GrammarIndex index = analysis.getIndex();
+
+        System.out.println("Analysis of grammar " + grammarId + ":");
+        System.out.println("Variables: " + index.variableCount()
+                + ", Terminals: " + index.terminalCount()
+                + ", Rules: " + index.ruleCount()
+                + ", Size: " + index.size());
+        System.out.println("Longest right side: " + analysis.getMaxRightSide()
+                + ", Unit rules: " + analysis.getUnitRuleCount()
+                + ", ε-rules: " + analysis.getEpsilonRuleCount());
+        System.out.println("Reachable: " + format(analysis.getReachable()));
+        System.out.println("Unreachable: " + format(analysis.getUnreachable()));
+        System.out.println("Productive: " + format(analysis.getProductive()));
+        System.out.println("Non-productive: " + format(analysis.getNonProductive()));
+        System.out.println("Nullable: " + format(analysis.getNullable()));
+
+        if (analysis.getUnitCycles().isEmpty()) {
+            System.out.println("Unit cycles: none");
+        } else {
+            StringJoiner cycles = new StringJoiner("; ");
+            for (Set<Character> cycle : analysis.getUnitCycles()) {
+                cycles.add(format(cycle));
+            }
+            System.out.println("Unit cycles: " + cycles);
+        }
+
+        if (analysis.isEmpty()) {
+            System.out.println("Language: empty");
+        } else if (analysis.isInfinite()) {
+            System.out.println("Language: infinite");
+        } else {
+            System.out.println("Language: finite");
+        }
+    }
+
+    private static String format(Set<Character> symbols) {
+        if (symbols.isEmpty()) {
+            return "-";
+        }
+        StringJoiner joiner = new StringJoiner(", ");
+        for (char c : symbols) {
+            joiner.add(String.valueOf(c));
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package code.commands;
+
+import code.Command;
+import code.extensions.Budget;
+
+import java.util.Map;
+
+/**
+ * Command that shows and changes the resource {@link Budget budgets} of commands.
+ */
+public class BudgetCommand implements Command {
+    private static final String USAGE =
+            "Usage: budget [[<command>] <cells|bytes|millis> <limit|none> | reset [<command>]]";
+
+    public BudgetCommand() {
+    }
+
+    /**
+     * Executes the "budget" command.
+     * <p>
+     * Without arguments, prints the global limits and those set for single commands.
+     * {@code budget [<command>] <kind> <limit>} sets a global or a per-command limit, where
+     * "none" (or 0) removes it; {@code budget reset [<command>]} restores the limits of one
+     * or all commands from the system properties.
+     * </p>
+     *
+     * @param args the command arguments
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args.length == 1) {
+            System.out.println("Global: " + Budget.getGlobal());
+            for (Map.Entry<String, Budget> entry : Budget.getCommands().entrySet()) {
+                System.out.println(entry.getKey() + ": " + Budget.of(entry.getKey()));
+            }
+            return;
+        }
+        if (args[1].equals("reset")) {
+            if (args.length > 3) {
+                System.out.println(USAGE);
+                return;
+            }
+            String command = args.length == 3 ? args[2] : null;
+            Budget.reset(command);
+            System.out.println("Budget of " + (command == null ? "all commands" : command) + " reset.");
+            return;
+        }
+        if (args.length != 3 && args.length != 4) {
+            System.out.println(USAGE);
+            return;
+        }
+        String command = args.length == 4 ? args[1] : null;
+        Budget.Kind kind = Budget.Kind.of(args[args.length - 2]);
+        if (kind == null) {
+            System.out.println(USAGE);
+            return;
+        }
+        String value = args[args.length - 1];
+        long limit;
+        try {
+            limit = value.equals("none") ? 0 : Long.parseLong(value.replace("_", ""));
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 0) {
+            System.out.println("Invalid limit: " + value);
+            return;
+        }
+        Budget.set(command, kind, limit);
+        System.out.println((command == null ? "Global" : command) + ": " + (command == null ? Budget.getGlobal() : Budget.of(command)));
+    }
+}
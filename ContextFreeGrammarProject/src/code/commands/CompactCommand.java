@@ -0,0 +1,43 @@
+package code.commands;
+
+import code.Command;
+import code.FileHandler;
+import code.GrammarJournal;
+import code.GrammarManager;
+
+import java.io.IOException;
+
+/**
+ * Command that folds the edit journal of the open file into the file itself.
+ */
+public class CompactCommand implements Command {
+    private GrammarManager manager;
+
+    public CompactCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "compact" command.
+     * <p>
+     * Rewrites the currently open file with all grammars, including unsaved edits, and deletes
+     * its {@link GrammarJournal}. Blocks of unchanged grammars are copied as they are. If no file is open, prints "No file is currently open."
+     * </p>
+     *
+     * @param args the command arguments (none)
+     */
+    @Override
+    public void execute(String[] args) {
+        GrammarJournal journal = manager.getJournal();
+        if (journal == null) {
+            System.out.println("No file is currently open.");
+            return;
+        }
+        try {
+            FileHandler.saveGrammars(manager, journal.getFilePath());
+            System.out.println("Compacted journal into " + journal.getFilePath());
+        } catch (IOException e) {
+            System.out.println("Error compacting file: " + e.getMessage());
+        }
+    }
+}
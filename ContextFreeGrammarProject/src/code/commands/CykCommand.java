@@ -4,16 +4,36 @@ import code.Command;
 import code.Grammar;
 import code.GrammarManager;
 import code.Rule;
-import code.extensions.IsCNF;
+import code.extensions.CykEngine;
+import code.extensions.CykProfile;
+import code.extensions.GrammarProfile;
+import code.extensions.MembershipPlanner;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Command that applies the CYK (Cocke–Younger–Kasami) algorithm
- * to determine whether a given word belongs to the language of a grammar
- * in Chomsky Normal Form (CNF).
+ * Command that determines whether a given word belongs to the language of a grammar.
+ * <p>
+ * The recogniser is chosen by the {@link MembershipPlanner}: a minimal DFA for right- and
+ * left-linear grammars, a predictive parser for LL(1) grammars, or the CYK
+ * (Cocke–Younger–Kasami) algorithm for grammars in Chomsky Normal Form (CNF),
+ * whichever has the lowest estimated cost.
+ * </p>
+ * <p>
+ * With {@code --profile}, the CYK algorithm runs whatever the planner would choose, and the
+ * work it did is printed after the result (see {@link CykProfile}).
+ * </p>
  */
 public class CykCommand implements Command {
+    /**
+     * Flag that runs and profiles the CYK algorithm.
+     */
+    public static final String PROFILE = "--profile";
+    private static final int HOTTEST_RULES = 10;
+    private static final int MAX_LENGTH_GROUPS = 16;
+
     private GrammarManager manager;
 
     public CykCommand(GrammarManager manager) {
@@ -21,31 +41,32 @@ public class CykCommand implements Command {
     }
 
     /**
-     * Executes the CYK algorithm.
+     * Executes the membership check.
      * <p>
      * Steps:
      * <ol>
      *   <li>Validate arguments: expects exactly two parameters (grammarId and word).</li>
-     *   <li>Lookup the grammar and verify it is in CNF.</li>
-     *   <li>Build a table for substrings of increasing length:
-     *     <ul>
-     *       <li>Length 1: fill with variables that produce each terminal.</li>
-     *       <li>Length &gt;1: for each span (i…j) and split k, combine T[i][k] and T[k+1][j]
-     *           according to rules A→BC.</li>
-     *     </ul>
-     *   </li>
-     *   <li>Check if the start symbol appears in T[0][n−1]; print acceptance or rejection.</li>
+     *   <li>Lookup the grammar and plan the query; if no engine supports the grammar,
+     *       ask the user to convert it to CNF first.</li>
+     *   <li>Run the chosen engine; print acceptance or rejection.</li>
+     *   <li>With {@code --profile}, print the rule probes and matches, the non-empty cells by
+     *       span length, the estimated chart size and the {@value #HOTTEST_RULES} most probed
+     *       rules.</li>
      * </ol>
      * </p>
      *
      * @param args the command tokens where args[0] is "cyk",
-     *      *                 args[1] is the ID of the grammar and
-     *      *                 args[2] is the word.
+     *                 args[1] is the ID of the grammar and
+     *                 args[2] is the word, optionally with "--profile" anywhere after args[0].
      */
     @Override
     public void execute(String[] args) {
+        boolean profile = args != null && Arrays.asList(args).contains(PROFILE);
+        if (profile) {
+            args = Arrays.stream(args).filter(arg -> !arg.equals(PROFILE)).toArray(String[]::new);
+        }
         if (args == null || args.length < 3) {
-            System.out.println("Usage: cyk <grammarId> <word>");
+            System.out.println("Usage: cyk [--profile] <grammarId> <word>");
             return;
         }
         String grammarId = args[1];
@@ -57,84 +78,76 @@ public class CykCommand implements Command {
             return;
         }
 
-        if (!IsCNF.isCNF(grammar)) {
-            System.out.println("Grammar " + grammarId + " is not in Chomsky Normal Form. Convert it first.");
+        if (profile) {
+            profile(grammar, word);
             return;
         }
 
-        int n = word.length();
-        if (n == 0) {
-            System.out.println("Empty word: CNF grammar cannot generate ε except via explicit S→ε rule.");
+        MembershipPlanner.Plan plan = MembershipPlanner.plan(grammar, word.length());
+        if (plan.getEngine() == null) {
+            System.out.println("Grammar " + grammarId + " is not in Chomsky Normal Form. Convert it first.");
             return;
         }
 
-        List<String> w = new ArrayList<>();
-        for (int i = 0; i < n; i++) {
-            w.add(String.valueOf(word.charAt(i)));
+        if (plan.accepts(word)) {
+            System.out.println("Word \"" + word + "\" IS in the language of grammar " + grammarId);
+        } else {
+            System.out.println("Word \"" + word + "\" is NOT in the language of grammar " + grammarId);
         }
+    }
 
-        Map<Integer, Map<Integer, Set<String>>> table = new HashMap<>();
-
-        // length = 1 cases
-        for (int j = 0; j < n; j++) {
-            String terminal = w.get(j);
-            for (Rule r : grammar.getAllRules()) {
-                String lhs = String.valueOf(r.getLeftSide());
-                String rhs = r.getRightSide();
-                if (rhs.length() == 1 && rhs.equals(terminal)) {
-                    if (!table.containsKey(j)) {
-                        table.put(j, new HashMap<>());
-                    }
-                    Map<Integer, Set<String>> row = table.get(j);
-                    if (!row.containsKey(j)) {
-                        row.put(j, new HashSet<>());
-                    }
-                    row.get(j).add(lhs);
-                }
-            }
+    private void profile(Grammar grammar, String word) {
+        GrammarProfile grammarProfile = GrammarProfile.of(grammar);
+        if (!grammarProfile.isCNF()) {
+            System.out.println("Grammar " + grammar.getId() + " is not in Chomsky Normal Form. Convert it first.");
+            return;
         }
+        CykProfile stats = new CykProfile(grammar);
+        boolean accepted = new CykEngine().accepts(grammarProfile, word, stats);
+        System.out.println("Word \"" + word + "\" " + (accepted ? "IS" : "is NOT")
+                + " in the language of grammar " + grammar.getId());
 
-        // length = 2 cases
-        for (int j = 0; j < n; j++) {
-            for (int i = j; i >= 0; i--) {
-                for (int k = i; k < j; k++) {
-                    for (Rule r : grammar.getAllRules()) {
-                        String lhs = String.valueOf(r.getLeftSide());
-                        String rhs = r.getRightSide();
-                        if (rhs.length() == 2) {
-                            String B = String.valueOf(rhs.charAt(0));
-                            String C = String.valueOf(rhs.charAt(1));
-                            boolean leftOk = table.containsKey(i)
-                                    && table.get(i).get(k) != null
-                                    && table.get(i).get(k).contains(B);
-                            boolean rightOk = table.containsKey(k + 1)
-                                    && table.get(k + 1).get(j) != null
-                                    && table.get(k + 1).get(j).contains(C);
-                            if (leftOk && rightOk) {
-                                if (!table.containsKey(i)) {
-                                    table.put(i, new HashMap<>());
-                                }
-                                Map<Integer, Set<String>> row = table.get(i);
-                                if (!row.containsKey(j)) {
-                                    row.put(j, new HashSet<>());
-                                }
-                                row.get(j).add(lhs);
-                            }
-                        }
-                    }
-                }
-            }
+        String engine = MembershipPlanner.plan(grammar, word.length()).getEngine().getName();
+        System.out.printf("CYK profile: word length %d, %d rules, %.3f ms%s%n", word.length(),
+                stats.getRules().size(), stats.getNanos() / 1e6,
+                engine.equals("cyk") ? "" : " (without --profile the " + engine + " engine would run)");
+        System.out.printf("  Rule probes: %,d, matches: %,d%n", stats.getTotalProbes(), stats.getTotalMatches());
+        System.out.printf("  Chart: %,d non-empty cells, %,d entries, about %,d bytes at its peak%n",
+                stats.getCells(), stats.getEntries(), stats.getChartBytes());
+        System.out.println("  Non-empty cells by span length: " + cellsByLength(stats.getCellsByLength()));
+
+        List<Integer> hottest = stats.getHottestRules(HOTTEST_RULES);
+        if (hottest.isEmpty()) {
+            return;
+        }
+        System.out.println("  Most probed rules:");
+        long total = Math.max(1, stats.getTotalProbes());
+        for (int i : hottest) {
+            Rule rule = stats.getRules().get(i);
+            System.out.printf("    %-16s %,14d probes (%5.1f%%) %,12d matches%n", rule,
+                    stats.getProbes(i), 100.0 * stats.getProbes(i) / total, stats.getMatches(i));
         }
+    }
 
-        boolean accepted = false;
-        if (table.containsKey(0) && table.get(0).get(n - 1) != null
-                && table.get(0).get(n - 1).contains(String.valueOf(grammar.getStartSymbol()))) {
-            accepted = true;
+    /**
+     * Formats the non-empty cells by span length, grouping the lengths of long words into at
+     * most {@value #MAX_LENGTH_GROUPS} ranges.
+     */
+    private static String cellsByLength(long[] cells) {
+        int n = cells.length - 1;
+        if (n < 1) {
+            return "none";
         }
-        if (accepted) {
-            System.out.println("Word \"" + word + "\" IS in the language of grammar " + grammarId);
-        } else {
-            System.out.println("Word \"" + word + "\" is NOT in the language of grammar " + grammarId);
+        int width = (n + MAX_LENGTH_GROUPS - 1) / MAX_LENGTH_GROUPS;
+        List<String> groups = new ArrayList<>();
+        for (int from = 1; from <= n; from += width) {
+            int to = Math.min(n, from + width - 1);
+            long sum = 0;
+            for (int length = from; length <= to; length++) {
+                sum += cells[length];
+            }
+            groups.add((from == to ? "" + from : from + "-" + to) + ":" + sum);
         }
+        return String.join(" ", groups);
     }
 }
@@ -0,0 +1,69 @@
+package code.commands;
+
+import code.Command;
+import code.Grammar;
+import code.GrammarManager;
+import code.extensions.GrammarProfile;
+import code.extensions.MembershipPlanner;
+
+/**
+ * Command that shows how a membership query would be executed without running it.
+ */
+public class ExplainCommand implements Command {
+    private GrammarManager manager;
+
+    public ExplainCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "explain" command.
+     * <p>
+     * Only {@code explain cyk <grammarId> <word>} is supported. Prints the capability profile
+     * of the grammar, the cost estimate of every membership engine and the engine the
+     * {@link MembershipPlanner} would choose.
+     * </p>
+     *
+     * @param args the command tokens where args[0] is "explain", args[1] is "cyk",
+     *             args[2] is the ID of the grammar and args[3] is the word.
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args == null || args.length < 4 || !args[1].equals("cyk")) {
+            System.out.println("Usage: explain cyk <grammarId> <word>");
+            return;
+        }
+        String grammarId = args[2];
+        String word = args[3];
+
+        Grammar grammar = manager.getGrammar(grammarId);
+        if (grammar == null) {
+            System.out.println("Grammar with ID " + grammarId + " not found.");
+            return;
+        }
+
+        MembershipPlanner.Plan plan = MembershipPlanner.plan(grammar, word.length());
+        GrammarProfile profile = plan.getProfile();
+
+        System.out.println("Grammar " + grammarId + ": " + profile.getVariableCount() + " variable(s), "
+                + profile.getRuleCount() + " rule(s), size " + profile.getSize());
+        System.out.println("CNF: " + (profile.isCNF() ? "yes" : "no")
+                + ", Regular: " + (profile.isRegular() ? profile.getLinearity() : "no")
+                + ", LL(1): " + (profile.isLL1() ? "yes" : "no"));
+        System.out.println("Ambiguity: " + profile.getAmbiguityHint());
+        System.out.println("Word length: " + word.length());
+        System.out.println("Engines:");
+        for (MembershipPlanner.Estimate estimate : plan.getEstimates()) {
+            if (estimate.isSupported()) {
+                System.out.printf("- %s: estimated cost %.0f%n", estimate.getEngine().getName(), estimate.getCost());
+            } else {
+                System.out.println("- " + estimate.getEngine().getName() + ": not applicable");
+            }
+        }
+        if (plan.getEngine() == null) {
+            System.out.println("No engine applies. Convert the grammar with chomskify first.");
+        } else {
+            System.out.printf("Chosen engine: %s (estimated cost %.0f)%n", plan.getEngine().getName(), plan.getCost());
+        }
+    }
+}
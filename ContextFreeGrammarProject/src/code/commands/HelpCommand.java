@@ -9,22 +9,37 @@ public class HelpCommand implements Command {
     @Override
     public void execute(String[] args) {
         System.out.println("The following code.commands are supported:");
-        System.out.println("open <file> - Opens a file");
+        System.out.println("open <file> - Opens a file (.cfgb files use the binary format, .gz and .zip are compressed)");
         System.out.println("close - Closes the currently opened file");
-        System.out.println("save - Saves the currently open file");
+        System.out.println("save - Saves the currently open file (edits are appended to <file>.journal)");
         System.out.println("saveas <file> - Saves the currently open file with a new name");
         System.out.println("list - Lists all grammars");
         System.out.println("print <id> - Prints a grammar");
         System.out.println("save <id> <file> - Saves grammar to file");
         System.out.println("addRule <grammarId> <rule> - Adds a rule to a grammar");
         System.out.println("removeRule <grammarId> <ruleNumber> - Removes a rule from a grammar");
-        System.out.println("union <id1> <id2> - Performs union of two grammars and creates a new one");
-        System.out.println("concat <id1> <id2> - Performs concatenation of two grammars and creates a new one");
+        System.out.println("union <id1> <id2> [<id3>...] - Performs union of two or more grammars and creates a new one");
+        System.out.println("concat <id1> <id2> [<id3>...] - Performs concatenation of two or more grammars and creates a new one");
         System.out.println("chomsky <id> - Checks if a grammar is in Chomsky normal form");
-        System.out.println("cyk <id> - Checks if a word is in the language of a grammar (CYK algorithm)");
+        System.out.println("cyk [--profile] <id> <word> - Checks if a word is in the language of a grammar (cheapest engine: DFA, LL(1) or CYK); --profile forces CYK and prints its work counters");
         System.out.println("iter <id> - Performs Kleene star operation on a grammar");
         System.out.println("empty <id> - Checks if a grammar's language is empty");
         System.out.println("chomskify <id> - Converts a grammar to Chomsky normal form");
+        System.out.println("analyze <id> - Reports reachable, productive and nullable variables, unit cycles and finiteness");
+        System.out.println("explain cyk <id> <word> - Shows which membership engine cyk would use and its estimated cost");
+        System.out.println("shortest <id> - Prints the shortest word derived from every variable of a grammar");
+        System.out.println("greibach <id> - Converts a grammar to Greibach normal form");
+        System.out.println("noleftrec <id> - Creates an equivalent grammar without left recursion");
+        System.out.println("compact - Folds the edit journal into the open file");
+        System.out.println("import <file.bnf> - Imports a BNF/EBNF grammar as a new grammar");
+        System.out.println("watch [stop] - Reloads changed grammars of the open file while another program edits it");
+        System.out.println("serve --port <port> | serve stop - Answers commands sent as HTTP/JSON requests to the loopback address");
+        System.out.println("job submit [--timeout <seconds>] <command> | job status <id> | job cancel <id> - Runs a command in the background");
+        System.out.println("jobs - Lists background jobs with their state and progress");
+        System.out.println("[pipe] <command> | <command> ... - Runs each command on the grammar created by the one before (\"-\")");
+        System.out.println("budget [[<command>] <cells|bytes|millis> <limit|none> | reset [<command>]] - Shows or sets resource limits");
+        System.out.println("stats [reset | json | export <file> [<seconds>] | export stop] - Shows command counts, exceptions and latencies");
+        System.out.println("memory [budget <bytes|none> | pin <grammarId> | unpin <grammarId>] - Shows or bounds the memory of loaded grammars");
         System.out.println("help - Prints this information");
         System.out.println("exit - Exits the program");
     }
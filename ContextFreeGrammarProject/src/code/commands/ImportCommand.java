@@ -0,0 +1,89 @@
+package code.commands;
+
+import code.BnfImporter;
+import code.Command;
+import code.Grammar;
+import code.GrammarManager;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Command that imports a grammar written in BNF or EBNF as a new grammar with a unique ID.
+ */
+public class ImportCommand implements Command {
+    private static final int MAX_NAMES_SHOWN = 20;
+
+    private GrammarManager manager;
+
+    public ImportCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "import" command.
+     * <p>
+     * Reads the file with {@link BnfImporter}, adds the resulting grammar to the manager and
+     * prints its ID, its size and the variables chosen for the first nonterminal names.
+     * Errors in the file are printed with their line and column.
+     * </p>
+     *
+     * @param args the command tokens, where args[0] is "import" and
+     *             args[1] is the path of the BNF/EBNF file
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args == null || args.length < 2) {
+            System.out.println("Usage: import <file.bnf>");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < args.length; i++) {
+            sb.append(args[i]).append(" ");
+        }
+        String filePath = sb.toString().trim();
+
+        int maxNum = 0;
+        for (String id : manager.getGrammarIds()) {
+            if (id.startsWith("G")) {
+                try {
+                    maxNum = Math.max(maxNum, Integer.parseInt(id.substring(1)));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        String newId = "G" + (maxNum + 1);
+
+        BnfImporter importer;
+        try (Reader reader = new BufferedReader(new FileReader(filePath))) {
+            importer = BnfImporter.read(reader, filePath, newId);
+        } catch (IOException e) {
+            System.out.println("Error importing file: " + e.getMessage());
+            return;
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + " during import");
+            return;
+        }
+        Grammar grammar = importer.getGrammar();
+        manager.addGrammar(grammar);
+
+        System.out.println("Created grammar " + newId + " from " + filePath);
+        System.out.println("Variables: " + grammar.getVariables().size()
+                + ", Terminals: " + grammar.getTerminals().size()
+                + ", Rules: " + grammar.getAllRules().size());
+        StringJoiner names = new StringJoiner(", ");
+        int shown = 0;
+        Map<String, Character> variableNames = importer.getVariableNames();
+        for (Map.Entry<String, Character> entry : variableNames.entrySet()) {
+            if (shown++ == MAX_NAMES_SHOWN) {
+                names.add("... (" + variableNames.size() + " names)");
+                break;
+            }
+            names.add(entry.getKey() + " -> " + entry.getValue());
+        }
+        System.out.println("Names: " + names);
+    }
+}
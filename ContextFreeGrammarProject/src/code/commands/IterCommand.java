@@ -3,10 +3,7 @@ package code.commands;
 import code.Command;
 import code.Grammar;
 import code.GrammarManager;
-import code.Rule;
-
-import java.util.HashSet;
-import java.util.Set;
+import code.extensions.GrammarOperations;
 
 /**
  * Command that constructs the Kleene star (iteration) of an existing grammar,
@@ -57,7 +54,7 @@ public class IterCommand implements Command {
         }
 
         int maxNum = 0;
-        for (String id : manager.getGrammars().keySet()) {
+        for (String id : manager.getGrammarIds()) {
             if (id.startsWith("G")) {
                 try {
                     maxNum = Math.max(maxNum, Integer.parseInt(id.substring(1)));
@@ -66,33 +63,7 @@ public class IterCommand implements Command {
         }
         String newId = "G" + (maxNum + 1);
 
-        Set<Character> vars  = new HashSet<>(grammar.getVariables());
-        char newStart = 'S';
-        for (char c = 'A'; c <= 'Z'; c++) {
-            if (!vars.contains(c)) {
-                newStart = c;
-                break;
-            }
-        }
-
-        Grammar kleeneStar = new Grammar(newId, newStart);
-        for (char v : grammar.getVariables()) {
-            kleeneStar.addVariable(v);
-        }
-        kleeneStar.addVariable(newStart);
-        for (char t : grammar.getTerminals()) {
-            kleeneStar.addTerminal(t);
-        }
-        kleeneStar.addTerminal('ε');
-
-        int ruleNum = 1;
-        for (Rule r : grammar.getAllRules()) {
-            kleeneStar.addRule("r" + ruleNum++, r.getLeftSide(), r.getRightSide());
-        }
-
-        kleeneStar.addRule("r" + ruleNum++, newStart, "ε");
-        kleeneStar.addRule("r" + ruleNum++, newStart, "" + grammar.getStartSymbol() + newStart);
-
+        Grammar kleeneStar = GrammarOperations.iter(grammar, newId);
         manager.addGrammar(kleeneStar);
         System.out.println("Created grammar " + newId);
     }
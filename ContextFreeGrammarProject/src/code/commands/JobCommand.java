@@ -0,0 +1,100 @@
+package code.commands;
+
+import code.Job;
+import code.JobManager;
+import code.Command;
+
+import java.util.Arrays;
+
+/**
+ * Command that submits, inspects and cancels background jobs.
+ */
+public class JobCommand implements Command {
+    private JobManager jobs;
+
+    public JobCommand(JobManager jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Executes the "job" command.
+     * <p>
+     * {@code job submit [--timeout <seconds>] <command> [<args>...]} runs a command in the
+     * background and prints the number of the job; the job is stopped if it has not finished
+     * within the timeout. {@code job status <id>} prints the state, progress and, once the job
+     * has finished, the output of a job. {@code job cancel <id>} stops a job.
+     * </p>
+     *
+     * @param args the command tokens, where args[0] is "job" and args[1] is "submit",
+     *             "status" or "cancel", followed by its arguments.
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args.length >= 3 && args[1].equals("submit")) {
+            submit(args);
+            return;
+        }
+        if (args.length != 3 || !(args[1].equals("status") || args[1].equals("cancel"))) {
+            System.out.println("Usage: job submit [--timeout <seconds>] <command> [<args>...] | job status <id> | job cancel <id>");
+            return;
+        }
+        Job job;
+        try {
+            job = jobs.get(Integer.parseInt(args[2]));
+        } catch (NumberFormatException e) {
+            job = null;
+        }
+        if (job == null) {
+            System.out.println("Job with ID " + args[2] + " not found.");
+            return;
+        }
+
+        if (args[1].equals("cancel")) {
+            if (jobs.cancel(job)) {
+                System.out.println("Cancelled job " + job.getId() + ".");
+            } else {
+                System.out.println("Job " + job.getId() + " has already finished.");
+            }
+            return;
+        }
+
+        System.out.println("Job " + job.getId() + ": " + job.getCommandLine());
+        System.out.printf("State: %s after %.3f s%n", job.getState(), job.getElapsed() / 1e9);
+        if (job.getProgress() != null) {
+            System.out.println("Progress: " + job.getProgress());
+        }
+        if (!job.getState().isFinal() && job.getRemaining() != Long.MAX_VALUE) {
+            System.out.printf("Deadline: in %.3f s%n", Math.max(0, job.getRemaining()) / 1e9);
+        }
+        if (job.getState().isFinal() && !job.getOutput().isEmpty()) {
+            System.out.println("Output:");
+            System.out.print(job.getOutput());
+        }
+    }
+
+    private void submit(String[] args) {
+        int from = 2;
+        long timeoutMillis = 0;
+        if (args[2].equals("--timeout")) {
+            double seconds;
+            try {
+                seconds = args.length > 3 ? Double.parseDouble(args[3]) : -1;
+            } catch (NumberFormatException e) {
+                seconds = -1;
+            }
+            if (!(seconds > 0) || args.length < 5) {
+                System.out.println("Usage: job submit [--timeout <seconds>] <command> [<args>...]");
+                return;
+            }
+            timeoutMillis = Math.max(1, (long) (seconds * 1000));
+            from = 4;
+        }
+        String[] tokens = Arrays.copyOfRange(args, from, args.length);
+        if (!JobManager.canRun(tokens)) {
+            System.out.println("Command " + tokens[0] + " cannot run as a job.");
+            return;
+        }
+        Job job = jobs.submit(tokens, timeoutMillis);
+        System.out.println("Submitted job " + job.getId() + ": " + job.getCommandLine());
+    }
+}
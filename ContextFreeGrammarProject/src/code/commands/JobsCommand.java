@@ -0,0 +1,49 @@
+package code.commands;
+
+import code.Command;
+import code.Job;
+import code.JobManager;
+
+import java.util.List;
+
+/**
+ * Command that lists the background jobs.
+ */
+public class JobsCommand implements Command {
+    private static final int MAX_COMMAND_LENGTH = 40;
+
+    private JobManager jobs;
+
+    public JobsCommand(JobManager jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Executes the "jobs" command.
+     * <p>
+     * Prints every submitted job with its state, the time it has been queued or running or
+     * ran, its command (shortened to {@value #MAX_COMMAND_LENGTH} characters) and its last
+     * reported progress. If no job was submitted, prints "No jobs submitted."
+     * </p>
+     *
+     * @param args the command arguments (none)
+     */
+    @Override
+    public void execute(String[] args) {
+        List<Job> list = jobs.list();
+        if (list.isEmpty()) {
+            System.out.println("No jobs submitted.");
+            return;
+        }
+        System.out.println("Jobs:");
+        for (Job job : list) {
+            String command = job.getCommandLine();
+            if (command.length() > MAX_COMMAND_LENGTH) {
+                command = command.substring(0, MAX_COMMAND_LENGTH - 3) + "...";
+            }
+            String progress = job.getState() == Job.State.DONE ? null : job.getProgress();
+            System.out.printf("- %d %s %.1fs %s%s%n", job.getId(), job.getState(), job.getElapsed() / 1e9,
+                    command, progress == null ? "" : " [" + progress + "]");
+        }
+    }
+}
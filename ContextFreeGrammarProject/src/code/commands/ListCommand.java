@@ -1,10 +1,9 @@
 package code.commands;
 
 import code.Command;
-import code.Grammar;
 import code.GrammarManager;
 
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Command that lists all grammars currently loaded in the manager.
@@ -19,7 +18,8 @@ public class ListCommand implements Command {
     /**
      * Executes the "list" command.
      * <p>
-     * Retrieves the map of grammars from the manager and prints each grammar ID.
+     * Retrieves the grammar IDs from the manager and prints each of them
+     * without loading grammars that have not been used yet.
      * If no grammars are loaded, prints "No grammars loaded."
      * </p>
      *
@@ -27,13 +27,13 @@ public class ListCommand implements Command {
      */
     @Override
     public void execute(String[] args) {
-        Map<String, Grammar> grammars = manager.getGrammars();
+        Set<String> grammars = manager.getGrammarIds();
         if (grammars.isEmpty()) {
             System.out.println("No grammars loaded.");
             return;
         }
         System.out.println("Loaded grammars:");
-        for (String id : grammars.keySet()) {
+        for (String id : grammars) {
             System.out.println("- " + id);
         }
     }
@@ -0,0 +1,110 @@
+package code.commands;
+
+import code.Command;
+import code.GrammarManager;
+import code.GrammarSpillFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command that shows and bounds the memory taken by the grammars of the manager.
+ */
+public class MemoryCommand implements Command {
+    private static final String USAGE = "Usage: memory [budget <bytes|none> | pin <grammarId> | unpin <grammarId>]";
+
+    private GrammarManager manager;
+
+    public MemoryCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "memory" command.
+     * <p>
+     * Without arguments, prints how many grammars are loaded and their estimated size, how
+     * many are evicted and spilled, the heap budget and the pinned grammars.
+     * {@code memory budget <bytes>} sets the heap budget, evicting the least recently used
+     * grammars that do not fit, and "none" lets all grammars stay loaded.
+     * {@code memory pin <grammarId>} keeps a grammar loaded until {@code memory unpin}.
+     * </p>
+     *
+     * @param args the command arguments
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args.length == 1) {
+            print();
+            return;
+        }
+        if (args.length != 3) {
+            System.out.println(USAGE);
+            return;
+        }
+        switch (args[1]) {
+            case "budget":
+                long budget;
+                try {
+                    budget = args[2].equals("none") ? 0 : Long.parseLong(args[2].replace("_", ""));
+                } catch (NumberFormatException e) {
+                    budget = -1;
+                }
+                if (budget < 0) {
+                    System.out.println("Invalid budget: " + args[2]);
+                    return;
+                }
+                manager.setHeapBudget(budget);
+                print();
+                break;
+            case "pin":
+                if (!manager.hasGrammar(args[2])) {
+                    System.out.println("Grammar with ID " + args[2] + " not found.");
+                    return;
+                }
+                manager.pin(args[2]);
+                System.out.println("Pinned grammar " + args[2] + ".");
+                break;
+            case "unpin":
+                if (!manager.isPinned(args[2])) {
+                    System.out.println("Grammar " + args[2] + " is not pinned.");
+                    return;
+                }
+                manager.unpin(args[2]);
+                System.out.println("Unpinned grammar " + args[2] + ".");
+                break;
+            default:
+                System.out.println(USAGE);
+        }
+    }
+
+    private void print() {
+        int total = 0;
+        int loaded = 0;
+        List<String> pinned = new ArrayList<>();
+        for (String id : manager.getGrammarIds()) {
+            total++;
+            if (manager.isLoaded(id)) loaded++;
+            if (manager.isPinned(id)) pinned.add(id);
+        }
+        System.out.printf("Grammars: %,d, loaded: %,d (about %,d bytes), not loaded: %,d%n",
+                total, loaded, manager.getResidentBytes(), total - loaded);
+        GrammarSpillFile spill = manager.getSpillFile();
+        if (spill != null) {
+            String size;
+            try {
+                size = String.format("%,d", spill.getSize());
+            } catch (IOException e) {
+                size = "?";
+            }
+            System.out.printf("Spilled: %,d grammar(s) in %s (%,d of %s bytes in use)%n",
+                    spill.getGrammarIds().size(), spill.getFilePath(), spill.getLiveBytes(), size);
+        }
+        long budget = manager.getHeapBudget();
+        System.out.println("Heap budget: " + (budget == 0 ? "none" : String.format("%,d bytes", budget))
+                + String.format(", evictions: %,d", manager.getEvictions()));
+        if (!pinned.isEmpty()) {
+            System.out.println("Pinned: " + String.join(", ", pinned));
+        }
+    }
+}
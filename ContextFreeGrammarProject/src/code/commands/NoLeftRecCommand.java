@@ -0,0 +1,70 @@
+package code.commands;
+
+import code.Command;
+import code.Grammar;
+import code.GrammarManager;
+import code.extensions.GrammarIndex;
+import code.extensions.NormalForms;
+
+/**
+ * Command that transforms a grammar into a grammar without left recursion by creating
+ * a new grammar with a unique ID.
+ */
+public class NoLeftRecCommand implements Command {
+    private GrammarManager manager;
+
+    public NoLeftRecCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "noleftrec" command.
+     * <p>
+     * Builds the new grammar with {@link NormalForms#removeLeftRecursion(Grammar, String)},
+     * adds it to the manager and prints its ID together with the number of variables,
+     * rules and right side symbols before and after the transformation.
+     * </p>
+     *
+     * @param args the command tokens, where args[0] is "noleftrec" and
+     *             args[1] is the ID of the grammar to transform
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args == null || args.length < 2) {
+            System.out.println("Usage: noleftrec <grammarId>");
+            return;
+        }
+        String oldId = args[1];
+        Grammar grammar = manager.getGrammar(oldId);
+        if (grammar == null) {
+            System.out.println("Grammar with ID " + oldId + " not found.");
+            return;
+        }
+
+        int maxNum = 0;
+        for (String id : manager.getGrammarIds()) {
+            if (id.startsWith("G")) {
+                try {
+                    maxNum = Math.max(maxNum, Integer.parseInt(id.substring(1)));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        String newId = "G" + (maxNum + 1);
+
+        Grammar result;
+        try {
+            result = NormalForms.removeLeftRecursion(grammar, newId);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + " during noleftrec");
+            return;
+        }
+        manager.addGrammar(result);
+
+        GrammarIndex before = new GrammarIndex(grammar);
+        GrammarIndex after = new GrammarIndex(result);
+        System.out.println("Created grammar " + newId);
+        System.out.println("Variables: " + before.variableCount() + " -> " + after.variableCount()
+                + ", Rules: " + before.ruleCount() + " -> " + after.ruleCount()
+                + ", Size: " + before.size() + " -> " + after.size());
+    }
+}
@@ -1,12 +1,13 @@
 package code.commands;
 
 import code.Command;
-import code.FileHandler;
 import code.Grammar;
+import code.FileHandler;
+import code.GrammarJournal;
 import code.GrammarManager;
+import code.GrammarSource;
 
 import java.io.IOException;
-import java.util.Map;
 
 /**
  * Command that opens (or creates) a grammar file and loads its grammars into the manager.
@@ -22,8 +23,14 @@ public class OpenCommand implements Command {
      * Executes the "open" command.
      * <p>
      * Parses {@code args} to take the file path ({@code args[1]}).
-     * Attempts to load grammars from the specified file via {@link FileHandler}.
-     * On success, adds each loaded {@link Grammar} to the manager and sets the current file path.
+     * Indexes the specified file with {@link FileHandler#openGrammarSource(String)} (text or
+     * binary, by extension) and registers every grammar it contains with the manager; each
+     * {@link Grammar} is decoded only when it is first used. Edits saved in the file's
+     * {@link GrammarJournal} are replayed, and the journal is attached to record new edits;
+     * a journal that was started for an earlier version of the file is discarded with a warning.
+     * The journal is replayed before anything is registered, so a file that cannot be opened
+     * leaves the manager as it was.
+     * On success, sets the current file path.
      * If an {@link IOException} occurs, prints an error message with the exception detail.
      * </p>
      *
@@ -38,18 +45,39 @@ public class OpenCommand implements Command {
         }
         String filePath = args[1];
         try {
-            Map<String, Grammar> loadedGrammars = FileHandler.loadGrammarsFromFile(filePath);
-
-            for (Grammar grammar : loadedGrammars.values()) {
-                manager.addGrammar(grammar);
+            boolean merged = !manager.isEmpty();
+            GrammarSource index = FileHandler.openGrammarSource(filePath);
+            GrammarJournal journal = GrammarJournal.of(filePath);
+            GrammarJournal.Replay replay;
+            try {
+                if (journal.isStale()) {
+                    System.out.println("Warning: " + filePath + " was changed since its journal was written;"
+                            + " discarding the journaled edits.");
+                    journal.discard();
+                }
+                replay = journal.replay(index);
+            } catch (IOException | RuntimeException e) {
+                index.close();
+                throw e;
             }
-
+            manager.setJournal(null);
+            manager.addGrammars(index);
+            replay.applyTo(manager);
+            if (merged) {
+                // grammars from before are not in this file, so the next save has to write them all
+                journal.requireRewrite();
+            }
+            manager.setJournal(journal);
             manager.setCurrentFilePath(filePath);
 
-            if (loadedGrammars.isEmpty()) {
+            if (replay.getEntries() > 0) {
+                System.out.println("Replayed " + replay.getEntries() + " journaled edit(s).");
+            }
+            int count = index.getGrammarIds().size();
+            if (count == 0) {
                 System.out.println("No grammars found in the file. If the file did not exist, a new one has been created.");
             } else {
-                System.out.println("File " + filePath + " opened successfully. Loaded " + loadedGrammars.size() + " grammar(s).");
+                System.out.println("File " + filePath + " opened successfully. Loaded " + count + " grammar(s).");
             }
         } catch (IOException e) {
             System.out.println("Error opening file: " + e.getMessage());
@@ -0,0 +1,213 @@
+package code.commands;
+
+import code.Command;
+import code.Grammar;
+import code.GrammarManager;
+import code.GrammarSnapshots;
+import code.enums.CommandName;
+import code.extensions.GrammarOperations;
+import code.extensions.IsCNF;
+import code.extensions.NormalForms;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Command that runs a pipeline of commands, such as {@code union G1 G2 | chomskify | cyk - aabb},
+ * passing the grammar created by each stage straight to the next one.
+ * <p>
+ * Grammars created in between are never added to the manager and take no ID; only the result
+ * of a pipeline whose last stage creates a grammar is added, under a new ID. Stages are fused
+ * where that saves work: a {@code union} followed by {@code chomskify} copies the rules of the
+ * old start symbols to the new one instead of adding unit rules, so the union of grammars in
+ * Chomsky Normal Form is already in CNF, and {@code chomskify} passes grammars that are in
+ * CNF on without copying them.
+ * </p>
+ */
+public class PipelineCommand implements Command {
+    /**
+     * Token separating the stages.
+     */
+    public static final String SEPARATOR = "|";
+    /**
+     * Argument standing for the grammar created by the previous stage.
+     */
+    public static final String PREVIOUS = "-";
+
+    /**
+     * Commands that only read grammars and can end a pipeline.
+     */
+    private static final Map<String, Function<GrammarManager, Command>> LAST_STAGES = Map.of(
+            CommandName.PRINT.getCommand(), PrintCommand::new,
+            CommandName.CHOMSKY.getCommand(), ChomskyCommand::new,
+            CommandName.CYK.getCommand(), CykCommand::new,
+            CommandName.EMPTY.getCommand(), EmptyCommand::new,
+            CommandName.ANALYZE.getCommand(), AnalyzeCommand::new,
+            CommandName.EXPLAIN.getCommand(), ExplainCommand::new,
+            CommandName.SHORTEST.getCommand(), ShortestCommand::new);
+
+    private GrammarManager manager;
+
+    public PipelineCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * @param tokens the tokens of a command line
+     * @return whether the line is a pipeline; a {@code job} command is not, although it may
+     *         submit one
+     */
+    public static boolean isPipeline(String[] tokens) {
+        return !tokens[0].equals(CommandName.JOB.getCommand()) && Arrays.asList(tokens).contains(SEPARATOR);
+    }
+
+    /**
+     * Executes a pipeline.
+     * <p>
+     * Every stage is {@code union}, {@code concat}, {@code iter}, {@code chomskify},
+     * {@code greibach} or {@code noleftrec}; the last one may also be {@code print},
+     * {@code chomsky}, {@code cyk}, {@code empty}, {@code analyze}, {@code explain} or
+     * {@code shortest}. In every stage after the first, "-" stands for the grammar created by
+     * the previous stage; if it does not appear, that grammar is the first argument. The
+     * pipeline stops at the first stage that fails.
+     * </p>
+     *
+     * @param args the command tokens, optionally starting with "pipe", with the stages
+     *             separated by "|".
+     */
+    @Override
+    public void execute(String[] args) {
+        List<String[]> stages = new ArrayList<>();
+        int from = args.length > 0 && args[0].equals(CommandName.PIPE.getCommand()) ? 1 : 0;
+        for (int i = from; i <= args.length; i++) {
+            if (i == args.length || args[i].equals(SEPARATOR)) {
+                stages.add(Arrays.copyOfRange(args, from, i));
+                from = i + 1;
+            }
+        }
+        for (String[] stage : stages) {
+            if (stage.length == 0) {
+                System.out.println("Usage: [pipe] <command> | <command> [| <command>...]");
+                return;
+            }
+        }
+        if (Arrays.asList(stages.get(0)).contains(PREVIOUS)) {
+            System.out.println("The first stage has no previous grammar for \"-\".");
+            return;
+        }
+
+        Grammar previous = null;
+        for (int k = 0; k < stages.size(); k++) {
+            String[] stage = k == 0 ? stages.get(0) : withPrevious(stages.get(k));
+            boolean last = k == stages.size() - 1;
+            String name = stage[0];
+            if (last && LAST_STAGES.containsKey(name)) {
+                GrammarManager view = new GrammarManager();
+                if (previous != null) {
+                    view.addGrammar(previous);
+                }
+                for (int i = 1; i < stage.length; i++) {
+                    if (stage[i].equals(PREVIOUS)) {
+                        stage[i] = previous.getId();
+                    } else if (!view.hasGrammar(stage[i]) && manager.getGrammar(stage[i]) != null) {
+                        view.addGrammar(manager.getGrammar(stage[i]));
+                    }
+                }
+                LAST_STAGES.get(name).apply(view).execute(stage);
+                return;
+            }
+
+            boolean normalizeNext = !last && stages.get(k + 1)[0].equals(CommandName.CHOMSKIFY.getCommand());
+            Grammar result = apply(stage, previous, last ? newId() : PREVIOUS, last, normalizeNext);
+            if (result == null) {
+                System.out.println("Pipeline stopped at stage " + (k + 1) + ": " + String.join(" ", stage));
+                return;
+            }
+            previous = result;
+        }
+        manager.addGrammar(previous);
+        System.out.println("Created grammar " + previous.getId());
+    }
+
+    /**
+     * Runs a stage that creates a grammar.
+     *
+     * @return the grammar, or {@code null} after printing why there is none
+     */
+    private Grammar apply(String[] stage, Grammar previous, String id, boolean last, boolean normalizeNext) {
+        String name = stage[0];
+        boolean nary = name.equals(CommandName.UNION.getCommand()) || name.equals(CommandName.CONCAT.getCommand());
+        int arity = nary ? Math.max(2, stage.length - 1) : 1;
+        boolean known = nary
+                || name.equals(CommandName.ITER.getCommand()) || name.equals(CommandName.CHOMSKIFY.getCommand())
+                || name.equals(CommandName.GREIBACH.getCommand()) || name.equals(CommandName.NO_LEFT_REC.getCommand());
+        if (!known) {
+            System.out.println(LAST_STAGES.containsKey(name)
+                    ? "Only the last stage of a pipeline can run " + name + "."
+                    : "Command " + name + " cannot be used in a pipeline.");
+            return null;
+        }
+        if (stage.length <= arity) {
+            System.out.println("Usage: " + name + (nary ? " <grammarId1> <grammarId2> [<grammarId3>...]" : " <grammarId>"));
+            return null;
+        }
+        Grammar[] inputs = new Grammar[arity];
+        for (int i = 0; i < arity; i++) {
+            inputs[i] = stage[i + 1].equals(PREVIOUS) ? previous : manager.getGrammar(stage[i + 1]);
+            if (inputs[i] == null) {
+                System.out.println("Grammar with ID " + stage[i + 1] + " not found.");
+                return null;
+            }
+        }
+
+        try {
+            if (name.equals(CommandName.UNION.getCommand())) {
+                return GrammarOperations.union(Arrays.asList(inputs), id, normalizeNext);
+            } else if (name.equals(CommandName.CONCAT.getCommand())) {
+                return GrammarOperations.concat(Arrays.asList(inputs), id);
+            } else if (name.equals(CommandName.ITER.getCommand())) {
+                return GrammarOperations.iter(inputs[0], id);
+            } else if (name.equals(CommandName.CHOMSKIFY.getCommand())) {
+                if (!IsCNF.isCNF(inputs[0])) {
+                    return GrammarOperations.chomskify(inputs[0], id);
+                }
+                // grammars in CNF pass on as they are
+                return last ? GrammarSnapshots.copy(inputs[0], id) : inputs[0];
+            } else if (name.equals(CommandName.GREIBACH.getCommand())) {
+                return NormalForms.toGreibach(inputs[0], id);
+            } else {
+                return NormalForms.removeLeftRecursion(inputs[0], id);
+            }
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + " during " + name);
+            return null;
+        }
+    }
+
+    /**
+     * @return the stage with "-" as first argument unless it already refers to the previous
+     *         grammar
+     */
+    private static String[] withPrevious(String[] stage) {
+        if (Arrays.asList(stage).contains(PREVIOUS)) {
+            return stage;
+        }
+        String[] tokens = new String[stage.length + 1];
+        tokens[0] = stage[0];
+        tokens[1] = PREVIOUS;
+        System.arraycopy(stage, 1, tokens, 2, stage.length - 1);
+        return tokens;
+    }
+
+    private String newId() {
+        int maxNum = 0;
+        for (String id : manager.getGrammarIds()) {
+            if (id.startsWith("G")) {
+                try {
+                    maxNum = Math.max(maxNum, Integer.parseInt(id.substring(1)));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return "G" + (maxNum + 1);
+    }
+}
@@ -22,7 +22,8 @@ public class SaveAsCommand implements Command {
      * Parses {@code args} to build a new file path from {@code args[1]}.
      * If no grammars are loaded, prints "No file is currently open."
      * If the user writes invalid file path, prints usage instructions.
-     * Otherwise, attempts to save all grammars to the new file via {@link FileHandler}.
+     * Otherwise, attempts to save all grammars to the new file via {@link FileHandler}, copying
+     * unchanged grammars straight from the file they were read from.
      * </p>
      *
      * @param args the command tokens, where args[0] is "saveas" and
@@ -32,7 +33,7 @@ public class SaveAsCommand implements Command {
     public void execute(String[] args) {
         String currentFilePath = manager.getCurrentFilePath();
 
-        if (manager.getGrammars().isEmpty()) {
+        if (manager.isEmpty()) {
             System.out.println("No file is currently open.");
             return;
         }
@@ -48,7 +49,7 @@ public class SaveAsCommand implements Command {
         String newFilePath = sb.toString().trim();
 
         try {
-            FileHandler.saveGrammarsToFile(newFilePath, manager.getGrammars());
+            FileHandler.saveGrammars(manager, newFilePath);
             currentFilePath = newFilePath;
             System.out.println("Successfully saved as " + newFilePath);
         } catch (IOException e) {
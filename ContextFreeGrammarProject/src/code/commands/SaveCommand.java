@@ -3,6 +3,7 @@ package code.commands;
 import code.Command;
 import code.FileHandler;
 import code.Grammar;
+import code.GrammarJournal;
 import code.GrammarManager;
 
 import java.io.IOException;
@@ -22,7 +23,11 @@ public class SaveCommand implements Command {
      * <p>
      * Supports two modes of operation:
      * <ul>
-     *      <li>{@code save} – saves all grammars to the current file path stored in the manager.</li>
+     *      <li>{@code save} – saves all grammars to the current file path stored in the manager.
+     *      The edits made since opening are appended to the file's {@link GrammarJournal}; the file
+     *      itself is rewritten only when the journal has grown too large or cannot describe the
+     *      grammars (for example after another file was opened on top of it); only the blocks of
+     *      changed grammars are rewritten then.</li>
      *      <li>{@code save <grammarId> <file>} – saves the specified grammar to the given file path.</li>
      * </ul>
      * If no file is open and no file path is provided, prints an error.
@@ -46,7 +51,15 @@ public class SaveCommand implements Command {
                 return;
             }
             try {
-                FileHandler.saveGrammarsToFile(currentFilePath, manager.getGrammars());
+                GrammarJournal journal = manager.getJournal();
+                if (journal == null || journal.isRewriteRequired()) {
+                    FileHandler.saveGrammars(manager, currentFilePath);
+                } else {
+                    journal.flush();
+                    if (journal.shouldCompact()) {
+                        FileHandler.saveGrammars(manager, currentFilePath);
+                    }
+                }
                 System.out.println("Successfully saved " + currentFilePath);
             } catch (IOException e) {
                 System.out.println("Error saving file: " + e.getMessage());
@@ -69,8 +82,15 @@ public class SaveCommand implements Command {
             }
             String filePath = sb.toString().trim();
 
+            boolean overwritesCurrent = filePath.equals(currentFilePath);
+
             try {
                 FileHandler.saveGrammarToFile(filePath, grammar);
+                if (overwritesCurrent && manager.getJournal() != null) {
+                    // the journal described the old file contents
+                    manager.getJournal().discard();
+                    manager.getJournal().requireRewrite();
+                }
                 System.out.println("Grammar " + grammarId + " saved to " + filePath);
             } catch (IOException e) {
                 System.out.println("Error saving grammar: " + e.getMessage());
@@ -0,0 +1,82 @@
+package code.commands;
+
+import code.Command;
+import code.GrammarServer;
+import code.GrammarSnapshots;
+import code.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Command that starts or stops a {@link GrammarServer}.
+ */
+public class ServeCommand implements Command {
+    private GrammarSnapshots snapshots;
+    private Map<String, Command> commands;
+    private GrammarServer server;
+
+    /**
+     * @param snapshots the snapshots of the manager the served commands work on
+     * @param commands  the commands of the command line by name
+     */
+    public ServeCommand(GrammarSnapshots snapshots, Map<String, Command> commands) {
+        this.snapshots = snapshots;
+        this.commands = commands;
+    }
+
+    /**
+     * Executes the "serve" command.
+     * <p>
+     * {@code serve --port <port>} starts answering commands sent to
+     * {@code http://127.0.0.1:<port>/command} while the command line keeps running; port 0
+     * picks a free port. {@code serve stop} stops the server and prints the latency of the
+     * requests it handled. In a script run with {@code --batch} or {@code --script}, the
+     * program keeps serving after the end of the script until it is stopped.
+     * </p>
+     *
+     * @param args the command tokens, where args[0] is "serve" and either args[1] is "--port"
+     *             and args[2] the port, or args[1] is "stop".
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args.length == 2 && args[1].equals("stop")) {
+            if (server == null) {
+                System.out.println("No server is running.");
+                return;
+            }
+            server.close();
+            LatencyHistogram latency = server.getLatency();
+            System.out.printf("Stopped serving on port %d after %d request(s) (p50 %.3f ms, p99 %.3f ms).%n",
+                    server.getPort(), latency.getCount(),
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6);
+            server = null;
+            return;
+        }
+        if (args.length != 3 || !args[1].equals("--port")) {
+            System.out.println("Usage: serve --port <port> | serve stop");
+            return;
+        }
+        int port;
+        try {
+            port = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        if (port < 0 || port > 65535) {
+            System.out.println("Invalid port: " + args[2]);
+            return;
+        }
+        if (server != null) {
+            System.out.println("Already serving on port " + server.getPort() + ".");
+            return;
+        }
+        try {
+            server = GrammarServer.start(snapshots, commands, port);
+            System.out.println("Serving on http://127.0.0.1:" + server.getPort()
+                    + "/ (POST /command, GET /stats).");
+        } catch (IOException e) {
+            System.out.println("Error starting server: " + e.getMessage());
+        }
+    }
+}
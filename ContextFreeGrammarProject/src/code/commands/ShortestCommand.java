@@ -0,0 +1,73 @@
+package code.commands;
+
+import code.Command;
+import code.Grammar;
+import code.GrammarManager;
+import code.extensions.GrammarIndex;
+import code.extensions.ShortestWords;
+
+/**
+ * Command that prints the shortest word derived from every variable of a grammar.
+ */
+public class ShortestCommand implements Command {
+    private static final int MAX_WITNESS_LENGTH = 200;
+
+    private GrammarManager manager;
+
+    public ShortestCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "shortest" command.
+     * <p>
+     * Runs {@link ShortestWords} on the grammar and prints, for each variable, the minimum
+     * length of a derived word and a witness word. Witnesses longer than
+     * {@value #MAX_WITNESS_LENGTH} symbols are omitted. Finally prints a shortest word of the
+     * whole grammar, or reports that its language is empty.
+     * </p>
+     *
+     * @param args the command tokens, where args[0] is "shortest" and
+     *             args[1] is the ID of the grammar
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args == null || args.length < 2) {
+            System.out.println("Usage: shortest <grammarId>");
+            return;
+        }
+        String grammarId = args[1];
+        Grammar grammar = manager.getGrammar(grammarId);
+        if (grammar == null) {
+            System.out.println("Grammar with ID " + grammarId + " not found.");
+            return;
+        }
+
+        ShortestWords shortest = ShortestWords.compute(grammar);
+        GrammarIndex index = shortest.getIndex();
+
+        System.out.println("Shortest words of grammar " + grammarId + ":");
+        for (int v = 0; v < index.variableCount(); v++) {
+            System.out.println(index.variable(v) + ": " + describe(shortest, v));
+        }
+
+        int start = index.getStart();
+        if (shortest.length(start) < 0) {
+            System.out.println("The language of grammar " + grammarId + " is empty.");
+        } else {
+            System.out.println("Shortest word of grammar " + grammarId + ": " + describe(shortest, start));
+        }
+    }
+
+    private static String describe(ShortestWords shortest, int v) {
+        long length = shortest.length(v);
+        if (length < 0) {
+            return "derives no word";
+        }
+        String witness = shortest.witness(v, MAX_WITNESS_LENGTH);
+        if (witness == null) {
+            return "length " + length + " (witness too long to print)";
+        }
+        return "length " + length + " \"" + (witness.isEmpty() ? "ε" : witness) + "\"";
+    }
+}
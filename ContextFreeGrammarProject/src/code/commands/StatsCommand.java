@@ -0,0 +1,102 @@
+package code.commands;
+
+import code.Command;
+import code.CommandStats;
+import code.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Command that shows the {@link CommandStats} of the command line.
+ */
+public class StatsCommand implements Command {
+    private static final String USAGE = "Usage: stats [reset | json | export <file> [<seconds>] | export stop]";
+    private static final long DEFAULT_EXPORT_SECONDS = 10;
+
+    private CommandStats stats;
+
+    public StatsCommand(CommandStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Executes the "stats" command.
+     * <p>
+     * Without arguments, prints for every command that has run its invocations, how many of
+     * them ended with an exception (not with a printed usage or error message), and the 50th,
+     * 95th and 99th percentile and maximum of its latency. {@code stats json} prints the same
+     * as JSON, {@code stats reset} forgets everything recorded so far.
+     * {@code stats export <file> [<seconds>]} writes the JSON to a file now and then every
+     * given number of seconds ({@value #DEFAULT_EXPORT_SECONDS} by default) until
+     * {@code stats export stop}.
+     * </p>
+     *
+     * @param args the command arguments
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args.length == 1) {
+            print();
+        } else if (args.length == 2 && args[1].equals("reset")) {
+            stats.reset();
+            System.out.println("Statistics reset.");
+        } else if (args.length == 2 && args[1].equals("json")) {
+            System.out.println(stats.toJson());
+        } else if (args.length == 3 && args[1].equals("export") && args[2].equals("stop")) {
+            try {
+                Path path = stats.stopExport();
+                System.out.println(path == null ? "No export is running." : "Stopped exporting to " + path + ".");
+            } catch (IOException e) {
+                System.out.println("Error writing statistics: " + e.getMessage());
+            }
+        } else if ((args.length == 3 || args.length == 4) && args[1].equals("export")) {
+            export(args);
+        } else {
+            System.out.println(USAGE);
+        }
+    }
+
+    private void print() {
+        Map<String, CommandStats.Entry> entries = new TreeMap<>(stats.getEntries());
+        if (entries.isEmpty()) {
+            System.out.println("No commands recorded.");
+            return;
+        }
+        System.out.printf("%-10s %8s %10s %10s %10s %10s %10s%n",
+                "command", "calls", "exceptions", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, CommandStats.Entry> entry : entries.entrySet()) {
+            LatencyHistogram latency = entry.getValue().getLatency();
+            System.out.printf("%-10s %8d %10d %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(),
+                    entry.getValue().getInvocations(), entry.getValue().getExceptions(),
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(95) / 1e6,
+                    latency.getPercentile(99) / 1e6, latency.getMax() / 1e6);
+        }
+    }
+
+    private void export(String[] args) {
+        long seconds = DEFAULT_EXPORT_SECONDS;
+        if (args.length == 4) {
+            try {
+                seconds = Long.parseLong(args[3]);
+            } catch (NumberFormatException e) {
+                seconds = 0;
+            }
+            if (seconds <= 0) {
+                System.out.println("Invalid period: " + args[3]);
+                return;
+            }
+        }
+        try {
+            Path path = Paths.get(args[2]);
+            stats.startExport(path, seconds);
+            System.out.println("Exporting statistics to " + path + " every " + seconds + " s.");
+        } catch (InvalidPathException | IOException e) {
+            System.out.println("Error writing statistics: " + e.getMessage());
+        }
+    }
+}
@@ -3,13 +3,13 @@ package code.commands;
 import code.Command;
 import code.Grammar;
 import code.GrammarManager;
-import code.Rule;
+import code.extensions.GrammarOperations;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Command that creates a new grammar representing the union of two existing grammars.
+ * Command that creates a new grammar representing the union of two or more existing grammars.
  */
 public class UnionCommand implements Command {
     private GrammarManager manager;
@@ -23,80 +23,54 @@ public class UnionCommand implements Command {
      * <p>
      * The command:
      * <ol>
-     *   <li>Validates both grammars exist.</li>
+     *   <li>Validates that all grammars exist.</li>
      *   <li>Generates a new grammar ID.</li>
-     *   <li>Merges the variable and terminal sets of both grammars.</li>
-     *   <li>Selects a new start symbol which is not already used.</li>
-     *   <li>Copies all rules from the first grammar, then the second.</li>
-     *   <li>Adds two rules linking the new start symbol to each original start symbol:
-     *       <code>S' → S₁</code> and <code>S' → S₂</code>.</li>
+     *   <li>Builds the union with {@link GrammarOperations#union(List, String, boolean)}:
+     *       renames variables that the operands share apart, merges the terminal sets,
+     *       copies all rules and links a new start symbol to the original ones with
+     *       <code>S' → S₁ | S₂ | … | Sₙ</code>.</li>
      *   <li>Registers the new grammar with the manager and prints its ID.</li>
      * </ol>
      * </p>
      *
-     * @param args the command tokens where args[0] is "union",
-     *                 args[1] is the ID of the first grammar and
-     *                 args[2] is the ID of the second grammar.
+     * @param args the command tokens where args[0] is "union" and
+     *                 args[1] to args[n] are the IDs of at least two grammars.
      */
     @Override
     public void execute(String[] args) {
         if (args == null || args.length < 3) {
-            System.out.println("Usage: union <grammarId1> <grammarId2>");
+            System.out.println("Usage: union <grammarId1> <grammarId2> [<grammarId3>...]");
             return;
         }
-        String id1 = args[1];
-        String id2 = args[2];
-        Grammar g1 = manager.getGrammar(id1);
-        Grammar g2 = manager.getGrammar(id2);
-        if (g1 == null) {
-            System.out.println("Grammar with ID " + id1 + " not found.");
-            return;
-        }
-        if (g2 == null) {
-            System.out.println("Grammar with ID " + id2 + " not found.");
-            return;
+        List<Grammar> operands = new ArrayList<>(args.length - 1);
+        for (int i = 1; i < args.length; i++) {
+            Grammar grammar = manager.getGrammar(args[i]);
+            if (grammar == null) {
+                System.out.println("Grammar with ID " + args[i] + " not found.");
+                return;
+            }
+            operands.add(grammar);
         }
 
         int maxNum = 0;
-        for (String existingId : manager.getGrammars().keySet()) {
+        for (String existingId : manager.getGrammarIds()) {
             if (existingId.startsWith("G")) {
-                int num = Integer.parseInt(existingId.substring(1));
-                if (num > maxNum) maxNum = num;
+                try {
+                    int num = Integer.parseInt(existingId.substring(1));
+                    maxNum = Math.max(maxNum, num);
+                } catch (NumberFormatException ignored) {}
             }
         }
         String newId = "G" + (maxNum + 1);
 
-        Set<Character> vars = new HashSet<>(g1.getVariables());
-        vars.addAll(g2.getVariables());
-        Set<Character> terms = new HashSet<>(g1.getTerminals());
-        terms.addAll(g2.getTerminals());
-
-        char newStart = 'S';
-        for (char c = 'A'; c <= 'Z'; c++) {
-            if (!vars.contains(c)) {
-                newStart = c;
-                break;
-            }
-        }
-
-        Grammar unionG = new Grammar(newId, newStart);
-        for (char v : vars)   unionG.addVariable(v);
-        for (char t : terms)  unionG.addTerminal(t);
-
-        int ruleNum = 1;
-        for (Rule r : g1.getAllRules()) {
-            String rid = "r" + ruleNum++;
-            unionG.addRule(rid, r.getLeftSide(), r.getRightSide());
-        }
-        for (Rule r : g2.getAllRules()) {
-            String rid = "r" + ruleNum++;
-            unionG.addRule(rid, r.getLeftSide(), r.getRightSide());
+        Grammar result;
+        try {
+            result = GrammarOperations.union(operands, newId, false);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + " during union");
+            return;
         }
-
-        unionG.addRule("r" + ruleNum++, newStart, Character.toString(g1.getStartSymbol()));
-        unionG.addRule("r" + ruleNum++, newStart, Character.toString(g2.getStartSymbol()));
-
-        manager.addGrammar(unionG);
+        manager.addGrammar(result);
         System.out.println("Created grammar " + newId);
     }
 }
@@ -0,0 +1,70 @@
+package code.commands;
+
+import code.Command;
+import code.GrammarFileWatcher;
+import code.GrammarManager;
+
+import java.io.IOException;
+
+/**
+ * Command that starts or stops reloading the open file when another program changes it.
+ */
+public class WatchCommand implements Command {
+    private GrammarManager manager;
+    private GrammarFileWatcher watcher;
+
+    public WatchCommand(GrammarManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Executes the "watch" command.
+     * <p>
+     * {@code watch} starts a {@link GrammarFileWatcher} on the currently open file, replacing
+     * one that watches another file; {@code watch stop} stops it. While watching, grammars
+     * whose blocks in the file change are reloaded between commands.
+     * </p>
+     *
+     * @param args the command tokens, where args[0] is "watch" and the optional
+     *             args[1] is "stop".
+     */
+    @Override
+    public void execute(String[] args) {
+        if (args.length > 2 || (args.length == 2 && !args[1].equals("stop"))) {
+            System.out.println("Usage: watch [stop]");
+            return;
+        }
+        try {
+            if (args.length == 2) {
+                if (watcher == null) {
+                    System.out.println("No file is being watched.");
+                } else {
+                    watcher.close();
+                    System.out.println("Stopped watching " + watcher.getFilePath() + ".");
+                    watcher = null;
+                }
+                return;
+            }
+
+            String filePath = manager.getCurrentFilePath();
+            if (filePath == null) {
+                System.out.println("No file is currently open.");
+                return;
+            }
+            if (watcher != null && watcher.getFilePath().equals(filePath)) {
+                System.out.println("Already watching " + filePath + ".");
+                return;
+            }
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+            watcher = GrammarFileWatcher.start(manager);
+            System.out.println("Watching " + filePath + " for changes.");
+        } catch (IOException e) {
+            System.out.println("Error watching file: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
@@ -20,6 +20,21 @@ public enum CommandName {
     ITER("iter"),
     EMPTY("empty"),
     CHOMSKIFY("chomskify"),
+    ANALYZE("analyze"),
+    EXPLAIN("explain"),
+    SHORTEST("shortest"),
+    GREIBACH("greibach"),
+    NO_LEFT_REC("noleftrec"),
+    COMPACT("compact"),
+    IMPORT("import"),
+    WATCH("watch"),
+    SERVE("serve"),
+    JOB("job"),
+    JOBS("jobs"),
+    PIPE("pipe"),
+    BUDGET("budget"),
+    STATS("stats"),
+    MEMORY("memory"),
     HELP("help"),
     EXIT("exit");
 
@@ -0,0 +1,38 @@
+package code.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a phase of the conversion to Chomsky Normal Form: lifting
+ * terminals into variables of their own, or breaking the rules into binary ones.
+ */
+@Name("code.Chomskify")
+@Label("Chomskify Phase")
+@Category({"Grammar", "Transformation"})
+@Description("A phase of the conversion to Chomsky Normal Form")
+public class ChomskifyEvent extends Event {
+    public static final String LIFT_TERMINALS = "lift terminals";
+    public static final String BINARIZE = "binarize";
+
+    @Label("Grammar ID")
+    @Description("The ID of the grammar being converted")
+    public String grammarId;
+
+    @Label("Phase")
+    @Description("lift terminals or binarize")
+    public String phase;
+
+    @Label("Rules")
+    @Description("Rules of the grammar being converted")
+    public int rules;
+
+    @Label("Rules Created")
+    public int rulesCreated;
+
+    @Label("Variables Created")
+    public int variablesCreated;
+}
@@ -0,0 +1,47 @@
+package code.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a phase of a CYK membership test: filling the cells of single
+ * terminals, filling all spans that end at one position of the word, or checking the start
+ * symbol in the final cell.
+ */
+@Name("code.Cyk")
+@Label("CYK Phase")
+@Category({"Grammar", "Membership"})
+@Description("A phase of a CYK membership test")
+public class CykEvent extends Event {
+    public static final String TERMINALS = "terminals";
+    public static final String SPANS = "spans";
+    public static final String CHECK = "check";
+
+    @Label("Grammar ID")
+    public String grammarId;
+
+    @Label("Phase")
+    @Description("terminals, spans or check")
+    public String phase;
+
+    @Label("Word Length")
+    public int wordLength;
+
+    @Label("End Position")
+    @Description("The position of the word at which the spans of the phase end, or -1")
+    public int position;
+
+    @Label("Rules")
+    public int rules;
+
+    @Label("Cells Filled")
+    @Description("Chart cells that received their first variable during the phase")
+    public long cellsFilled;
+
+    @Label("Splits")
+    @Description("Split points combined during the phase")
+    public long splits;
+}
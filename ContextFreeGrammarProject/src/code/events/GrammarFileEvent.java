@@ -0,0 +1,48 @@
+package code.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for reading or writing grammar blocks of a text file: parsing a
+ * block (or a whole file read in one piece), serializing a grammar, or copying a run of
+ * unchanged blocks from the file they were read from.
+ */
+@Name("code.GrammarFile")
+@Label("Grammar File Block")
+@Category({"Grammar", "File"})
+@Description("Grammar blocks parsed, written or copied")
+public class GrammarFileEvent extends Event {
+    public static final String PARSE = "parse";
+    public static final String WRITE = "write";
+    public static final String COPY = "copy";
+
+    @Label("Operation")
+    @Description("parse, write or copy")
+    public String operation;
+
+    @Label("File")
+    public String file;
+
+    @Label("Grammar ID")
+    @Description("The ID of the first grammar of the blocks")
+    public String grammarId;
+
+    @Label("First Line")
+    public long firstLine;
+
+    @Label("Grammars")
+    public int grammars;
+
+    @Label("Rules")
+    public int rules;
+
+    @Label("Size")
+    @Description("Bytes written or copied; 0 for parsing, which reads characters")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,190 @@
+package code.extensions;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Limits on the resources a single command may use: the number of cells of a CYK chart, the
+ * bytes of working memory an algorithm estimates it needs, and the wall time. A limit of 0
+ * means no limit.
+ * <p>
+ * Limits are set globally and per command name; a limit set for a command replaces the global
+ * one of the same kind. They start out from the system properties
+ * {@code grammar.budget.<kind>} and {@code grammar.budget.<command>.<kind>}, where the kind is
+ * {@code cells}, {@code bytes} or {@code millis}. Without a property, the global byte limit is
+ * half of the maximum heap, so that no single command can exhaust it.
+ * </p>
+ * <p>
+ * The limits of the running command are enforced through {@link Progress}: algorithms
+ * {@link Progress#reserve(long, long) reserve} their large allocations before making them,
+ * and every {@link Progress#check() checkpoint} compares the elapsed time with the limit.
+ * </p>
+ */
+public final class Budget {
+    /**
+     * Prefix of the system properties the limits are read from.
+     */
+    public static final String PROPERTY_PREFIX = "grammar.budget.";
+
+    /**
+     * Kinds of limits.
+     */
+    public enum Kind {
+        CELLS("cells"), BYTES("bytes"), MILLIS("millis");
+
+        private final String name;
+
+        Kind(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param name the name of a kind
+         * @return the kind, or {@code null} if there is none with that name
+         */
+        public static Kind of(String name) {
+            for (Kind kind : values()) {
+                if (kind.name.equals(name)) return kind;
+            }
+            return null;
+        }
+    }
+
+    private static final Budget UNLIMITED = new Budget(0, 0, 0);
+    private static Budget global;
+    private static final Map<String, Budget> COMMANDS = new TreeMap<>();
+
+    static {
+        reset(null);
+    }
+
+    private final long cells;
+    private final long bytes;
+    private final long millis;
+
+    private Budget(long cells, long bytes, long millis) {
+        this.cells = cells;
+        this.bytes = bytes;
+        this.millis = millis;
+    }
+
+    public long get(Kind kind) {
+        switch (kind) {
+            case CELLS: return cells;
+            case BYTES: return bytes;
+            default: return millis;
+        }
+    }
+
+    /**
+     * @return a copy of this budget with one limit changed
+     */
+    public Budget with(Kind kind, long limit) {
+        return new Budget(kind == Kind.CELLS ? limit : cells, kind == Kind.BYTES ? limit : bytes,
+                kind == Kind.MILLIS ? limit : millis);
+    }
+
+    /**
+     * @return whether no limit is set
+     */
+    public boolean isUnlimited() {
+        return cells == 0 && bytes == 0 && millis == 0;
+    }
+
+    /**
+     * @return the limits of this budget, replaced by those of {@code override} that are set
+     */
+    private Budget overriddenBy(Budget override) {
+        return new Budget(override.cells != 0 ? override.cells : cells,
+                override.bytes != 0 ? override.bytes : bytes,
+                override.millis != 0 ? override.millis : millis);
+    }
+
+    /**
+     * @param command the name of a command
+     * @return the limits that apply to the command
+     */
+    public static synchronized Budget of(String command) {
+        Budget budget = COMMANDS.get(command);
+        return budget == null ? global : global.overriddenBy(budget);
+    }
+
+    /**
+     * @return the global limits
+     */
+    public static synchronized Budget getGlobal() {
+        return global;
+    }
+
+    /**
+     * @return the limits set for single commands, by command name
+     */
+    public static synchronized Map<String, Budget> getCommands() {
+        return new TreeMap<>(COMMANDS);
+    }
+
+    /**
+     * Sets a limit.
+     *
+     * @param command the name of the command, or {@code null} for the global limit
+     * @param kind    the kind of limit
+     * @param limit   the limit, or 0 for none; a command without a limit of its own falls
+     *                back to the global one
+     */
+    public static synchronized void set(String command, Kind kind, long limit) {
+        if (command == null) {
+            global = global.with(kind, limit);
+            return;
+        }
+        Budget budget = COMMANDS.getOrDefault(command, UNLIMITED).with(kind, limit);
+        if (budget.isUnlimited()) {
+            COMMANDS.remove(command);
+        } else {
+            COMMANDS.put(command, budget);
+        }
+    }
+
+    /**
+     * Restores the limits read from the system properties.
+     *
+     * @param command the name of the command whose limits to restore, or {@code null} for all
+     */
+    public static synchronized void reset(String command) {
+        if (command == null) {
+            global = UNLIMITED;
+            for (Kind kind : Kind.values()) {
+                long fallback = kind == Kind.BYTES ? Runtime.getRuntime().maxMemory() / 2 : 0;
+                global = global.with(kind, Long.getLong(PROPERTY_PREFIX + kind.getName(), fallback));
+            }
+            COMMANDS.clear();
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (!name.startsWith(PROPERTY_PREFIX)) continue;
+                String rest = name.substring(PROPERTY_PREFIX.length());
+                int dot = rest.lastIndexOf('.');
+                Kind kind = dot < 0 ? null : Kind.of(rest.substring(dot + 1));
+                if (kind != null) {
+                    set(rest.substring(0, dot), kind, Long.getLong(name, 0));
+                }
+            }
+            return;
+        }
+        COMMANDS.remove(command);
+        for (Kind kind : Kind.values()) {
+            long limit = Long.getLong(PROPERTY_PREFIX + command + "." + kind.getName(), 0);
+            if (limit != 0) set(command, kind, limit);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cells " + format(cells) + ", bytes " + format(bytes) + ", millis " + format(millis);
+    }
+
+    private static String format(long limit) {
+        return limit == 0 ? "none" : String.format("%,d", limit);
+    }
+}
@@ -0,0 +1,12 @@
+package code.extensions;
+
+/**
+ * Thrown when a command would exceed, or has exceeded, its {@link Budget}.
+ */
+public class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public BudgetExceededException(String message) {
+        super(message);
+    }
+}
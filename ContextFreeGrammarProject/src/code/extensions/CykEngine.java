@@ -0,0 +1,202 @@
+package code.extensions;
+
+import code.Rule;
+import code.events.CykEvent;
+
+import java.util.*;
+
+/**
+ * Membership engine for grammars in Chomsky Normal Form, using the CYK
+ * (Cocke–Younger–Kasami) algorithm.
+ */
+public class CykEngine implements MembershipEngine {
+    /**
+     * Estimated bytes of a chart cell without its variables: the map entries and the empty set.
+     */
+    private static final long CELL_BYTES = 160;
+    /**
+     * Estimated bytes of one variable in a cell: the set entry and its string.
+     */
+    private static final long ENTRY_BYTES = 80;
+
+    @Override
+    public String getName() {
+        return "cyk";
+    }
+
+    @Override
+    public boolean supports(GrammarProfile profile) {
+        return profile.isCNF();
+    }
+
+    /**
+     * Every span (i…j) and split k probes all rules A→BC, plus one pass over the rules A→a
+     * for every character.
+     */
+    @Override
+    public double estimateCost(GrammarProfile profile, int wordLength) {
+        double n = wordLength;
+        double splits = (n - 1) * n * (n + 1) / 6;
+        return n * profile.getTerminalRuleCount() + splits * profile.getBinaryRuleCount();
+    }
+
+    /**
+     * Builds a table for substrings ending at each position in turn, reporting to
+     * {@link Progress} after each position, for substrings of increasing length:
+     * <ul>
+     *   <li>Length 1: fill with variables that produce each terminal.</li>
+     *   <li>Length &gt;1: for each span (i…j) and split k, combine T[i][k] and T[k+1][j]
+     *       according to rules A→BC.</li>
+     * </ul>
+     * and checks if the start symbol appears in T[0][n−1].
+     * Before anything is allocated, the size of the chart is {@link Progress#reserve(long, long)
+     * reserved}: n(n+1)/2 cells, each holding at most every variable. Each phase is recorded
+     * as a {@link CykEvent} when Flight Recorder is on.
+     */
+    @Override
+    public boolean accepts(GrammarProfile profile, String word) {
+        return accepts(profile, word, null);
+    }
+
+    /**
+     * Runs the test of {@link #accepts(GrammarProfile, String)}, counting the work it does.
+     *
+     * @param profile the profile of the grammar
+     * @param word    the word to check
+     * @param stats   the counters to add to, or {@code null} not to count
+     * @return {@code true} if the word is in the language
+     */
+    public boolean accepts(GrammarProfile profile, String word, CykProfile stats) {
+        long start = System.nanoTime();
+        GrammarIndex grammarIndex = profile.getIndex();
+        String grammarId = profile.getGrammarId();
+        int n = word.length();
+        if (n == 0) {
+            return false;
+        }
+        long cells = (long) n * (n + 1) / 2;
+        Progress.reserve(cells, cells * (CELL_BYTES + profile.getVariableCount() * ENTRY_BYTES));
+
+        List<String> w = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            w.add(String.valueOf(word.charAt(i)));
+        }
+
+        Map<Integer, Map<Integer, Set<String>>> table = new HashMap<>();
+        int rules = grammarIndex.ruleCount();
+
+        // length = 1 cases
+        CykEvent event = new CykEvent();
+        event.begin();
+        long filled = 0;
+        for (int j = 0; j < n; j++) {
+            String terminal = w.get(j);
+            for (int index = 0; index < rules; index++) {
+                Rule r = grammarIndex.rule(index);
+                String lhs = String.valueOf(r.getLeftSide());
+                String rhs = r.getRightSide();
+                if (stats != null && rhs.length() == 1) {
+                    stats.probes[index]++;
+                    if (rhs.equals(terminal)) stats.matches[index]++;
+                }
+                if (rhs.length() == 1 && rhs.equals(terminal)) {
+                    if (!table.containsKey(j)) {
+                        table.put(j, new HashMap<>());
+                    }
+                    Map<Integer, Set<String>> row = table.get(j);
+                    if (!row.containsKey(j)) {
+                        row.put(j, new HashSet<>());
+                        filled++;
+                    }
+                    row.get(j).add(lhs);
+                }
+            }
+        }
+        commit(event, grammarId, CykEvent.TERMINALS, n, -1, rules, filled, 0);
+
+        // length = 2 cases
+        for (int j = 0; j < n; j++) {
+            event = new CykEvent();
+            event.begin();
+            filled = 0;
+            for (int i = j; i >= 0; i--) {
+                Progress.check();
+                for (int k = i; k < j; k++) {
+                    for (int index = 0; index < rules; index++) {
+                        Rule r = grammarIndex.rule(index);
+                        String lhs = String.valueOf(r.getLeftSide());
+                        String rhs = r.getRightSide();
+                        if (rhs.length() == 2) {
+                            String B = String.valueOf(rhs.charAt(0));
+                            String C = String.valueOf(rhs.charAt(1));
+                            boolean leftOk = table.containsKey(i)
+                                    && table.get(i).get(k) != null
+                                    && table.get(i).get(k).contains(B);
+                            boolean rightOk = table.containsKey(k + 1)
+                                    && table.get(k + 1).get(j) != null
+                                    && table.get(k + 1).get(j).contains(C);
+                            if (stats != null) {
+                                stats.probes[index]++;
+                                if (leftOk && rightOk) stats.matches[index]++;
+                            }
+                            if (leftOk && rightOk) {
+                                if (!table.containsKey(i)) {
+                                    table.put(i, new HashMap<>());
+                                }
+                                Map<Integer, Set<String>> row = table.get(i);
+                                if (!row.containsKey(j)) {
+                                    row.put(j, new HashSet<>());
+                                    filled++;
+                                }
+                                row.get(j).add(lhs);
+                            }
+                        }
+                    }
+                }
+            }
+            commit(event, grammarId, CykEvent.SPANS, n, j, rules, filled, (long) j * (j + 1) / 2);
+            Progress.report("cyk", j + 1, n);
+        }
+
+        event = new CykEvent();
+        event.begin();
+        boolean accepted = table.containsKey(0) && table.get(0).get(n - 1) != null
+                && table.get(0).get(n - 1).contains(String.valueOf(grammarIndex.variable(grammarIndex.getStart())));
+        commit(event, grammarId, CykEvent.CHECK, n, n - 1, rules, 0, 0);
+        if (stats != null) {
+            count(table, n, stats);
+            stats.nanos = System.nanoTime() - start;
+        }
+        return accepted;
+    }
+
+    /**
+     * Counts the non-empty cells by span length and the entries of a filled chart.
+     */
+    private static void count(Map<Integer, Map<Integer, Set<String>>> table, int n, CykProfile stats) {
+        stats.cellsByLength = new long[n + 1];
+        for (Map.Entry<Integer, Map<Integer, Set<String>>> row : table.entrySet()) {
+            for (Map.Entry<Integer, Set<String>> cell : row.getValue().entrySet()) {
+                if (cell.getValue().isEmpty()) continue;
+                stats.cellsByLength[cell.getKey() - row.getKey() + 1]++;
+                stats.cells++;
+                stats.entries += cell.getValue().size();
+            }
+        }
+        stats.chartBytes = stats.cells * CELL_BYTES + stats.entries * ENTRY_BYTES;
+    }
+
+    private static void commit(CykEvent event, String grammarId, String phase, int wordLength, int position,
+                               int rules, long cellsFilled, long splits) {
+        if (event.shouldCommit()) {
+            event.grammarId = grammarId;
+            event.phase = phase;
+            event.wordLength = wordLength;
+            event.position = position;
+            event.rules = rules;
+            event.cellsFilled = cellsFilled;
+            event.splits = splits;
+            event.commit();
+        }
+    }
+}
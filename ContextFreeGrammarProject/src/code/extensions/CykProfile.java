@@ -0,0 +1,118 @@
+package code.extensions;
+
+import code.Grammar;
+import code.Rule;
+
+import java.util.*;
+
+/**
+ * Work counters of one CYK membership test, filled in by
+ * {@link CykEngine#accepts(GrammarProfile, String, CykProfile)}: how often every rule was
+ * probed and how often it matched, how many cells of every span length are non-empty, and
+ * the estimated size of the chart, which only grows and so is largest at the end.
+ */
+public class CykProfile {
+    private final List<Rule> rules;
+    final long[] probes;
+    final long[] matches;
+    long[] cellsByLength = new long[0];
+    long cells;
+    long entries;
+    long chartBytes;
+    long nanos;
+
+    /**
+     * @param grammar the grammar the test runs on
+     */
+    public CykProfile(Grammar grammar) {
+        this.rules = new ArrayList<>(grammar.getAllRules());
+        this.probes = new long[rules.size()];
+        this.matches = new long[rules.size()];
+    }
+
+    /**
+     * @return the rules of the grammar, in the order the engine probes them
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @param rule the index of a rule in {@link #getRules()}
+     * @return how often the rule was checked against a terminal or a split
+     */
+    public long getProbes(int rule) {
+        return probes[rule];
+    }
+
+    /**
+     * @param rule the index of a rule in {@link #getRules()}
+     * @return how often the rule matched a terminal or combined the two halves of a split
+     */
+    public long getMatches(int rule) {
+        return matches[rule];
+    }
+
+    /**
+     * @return the probes of all rules
+     */
+    public long getTotalProbes() {
+        return Arrays.stream(probes).sum();
+    }
+
+    /**
+     * @return the matches of all rules
+     */
+    public long getTotalMatches() {
+        return Arrays.stream(matches).sum();
+    }
+
+    /**
+     * @param count the number of rules to return at most
+     * @return the indices of the rules with the most probes, most probed first
+     */
+    public List<Integer> getHottestRules(int count) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            if (probes[i] > 0) indices.add(i);
+        }
+        indices.sort(Comparator.comparingLong((Integer i) -> probes[i]).reversed()
+                .thenComparing(Comparator.comparingLong((Integer i) -> matches[i]).reversed()));
+        return indices.subList(0, Math.min(count, indices.size()));
+    }
+
+    /**
+     * @return at index k, the number of non-empty cells for substrings of length k
+     */
+    public long[] getCellsByLength() {
+        return cellsByLength;
+    }
+
+    /**
+     * @return the number of non-empty cells of the chart
+     */
+    public long getCells() {
+        return cells;
+    }
+
+    /**
+     * @return the number of variables in all cells of the chart
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the estimated bytes of the chart at its largest
+     */
+    public long getChartBytes() {
+        return chartBytes;
+    }
+
+    /**
+     * @return how long the test ran in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,100 @@
+package code.extensions;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Deterministic finite automaton stored as a dense transition table.
+ * <p>
+ * Input symbols are mapped to table columns through {@code columnOf}; a transition to
+ * {@code -1} means the word is rejected (the dead state is not stored). Membership is
+ * decided in time linear in the length of the word and without allocating memory.
+ * </p>
+ */
+public class Dfa {
+    private final int start;
+    private final int stateCount;
+    private final int columns;
+    private final int[] table;
+    private final boolean[] accepting;
+    private final int[] columnOf;
+    private final int grammarVersion;
+
+    /**
+     * @param start          the start state, or {@code -1} if the language is empty
+     * @param stateCount     number of states
+     * @param columns        number of input symbols
+     * @param table          transitions, the target of state {@code s} on column {@code c}
+     *                       is {@code table[s * columns + c]}
+     * @param accepting      accepting flag per state
+     * @param columnOf       column of each input character, {@code -1} for unknown characters
+     * @param grammarVersion version of the grammar the automaton was compiled from
+     */
+    Dfa(int start, int stateCount, int columns, int[] table, boolean[] accepting, int[] columnOf, int grammarVersion) {
+        this.start = start;
+        this.stateCount = stateCount;
+        this.columns = columns;
+        this.table = table;
+        this.accepting = accepting;
+        this.columnOf = columnOf;
+        this.grammarVersion = grammarVersion;
+    }
+
+    /**
+     * Checks whether the automaton accepts the given word.
+     *
+     * @param word the word to check
+     * @return {@code true} if the word is accepted
+     */
+    public boolean accepts(CharSequence word) {
+        int state = start;
+        for (int i = 0; i < word.length() && state >= 0; i++) {
+            char c = word.charAt(i);
+            int column = c < columnOf.length ? columnOf[c] : -1;
+            if (column < 0) {
+                return false;
+            }
+            state = table[state * columns + column];
+        }
+        return state >= 0 && accepting[state];
+    }
+
+    /**
+     * Writes the automaton in the form read by {@link #read(DataInput, int)}.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(start);
+        out.writeInt(stateCount);
+        out.writeInt(columns);
+        for (int target : table) out.writeInt(target);
+        GrammarAnalysis.writeFlags(out, accepting);
+        out.writeInt(columnOf.length);
+        for (int column : columnOf) out.writeInt(column);
+    }
+
+    /**
+     * Reads an automaton written by {@link #write(DataOutput)}.
+     *
+     * @param grammarVersion version of the grammar the automaton belongs to
+     */
+    static Dfa read(DataInput in, int grammarVersion) throws IOException {
+        int start = in.readInt();
+        int stateCount = in.readInt();
+        int columns = in.readInt();
+        int[] table = new int[Math.multiplyExact(stateCount, columns)];
+        for (int i = 0; i < table.length; i++) table[i] = in.readInt();
+        boolean[] accepting = GrammarAnalysis.readFlags(in, stateCount);
+        int[] columnOf = new int[in.readInt()];
+        for (int i = 0; i < columnOf.length; i++) columnOf[i] = in.readInt();
+        return new Dfa(start, stateCount, columns, table, accepting, columnOf, grammarVersion);
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getGrammarVersion() {
+        return grammarVersion;
+    }
+}
@@ -0,0 +1,33 @@
+package code.extensions;
+
+/**
+ * Membership engine for right- and left-linear grammars, backed by the minimal DFA
+ * from {@link RegularGrammarCompiler}.
+ */
+public class DfaEngine implements MembershipEngine {
+    @Override
+    public String getName() {
+        return "dfa";
+    }
+
+    @Override
+    public boolean supports(GrammarProfile profile) {
+        return profile.isRegular();
+    }
+
+    /**
+     * One table lookup per character. The subset construction is estimated by the grammar
+     * size times the number of terminals; its exponential worst case is not modelled.
+     */
+    @Override
+    public double estimateCost(GrammarProfile profile, int wordLength) {
+        double compile = profile.hasDfa()
+                ? 0 : (double) (profile.getSize() + profile.getVariableCount()) * Math.max(1, profile.getIndex().terminalCount());
+        return compile + wordLength;
+    }
+
+    @Override
+    public boolean accepts(GrammarProfile profile, String word) {
+        return profile.getDfa().accepts(word);
+    }
+}
@@ -0,0 +1,72 @@
+package code.extensions;
+
+import code.Grammar;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Supplies variable names that are not used by a grammar.
+ * <p>
+ * Names are handed out from 'A' to 'Z' first; once those are used up, the remaining
+ * upper case letters of the Unicode basic plane are used, and after them any other letter,
+ * so that transformations and imports that introduce many variables do not run out of
+ * names after 26.
+ * </p>
+ */
+public class FreshVariables {
+    private final Set<Character> used;
+    private char next = 'A';
+    private boolean anyLetter;
+
+    /**
+     * @param grammar the grammar whose variables and terminals must not be reused
+     */
+    public FreshVariables(Grammar grammar) {
+        used = new HashSet<>(grammar.getVariables());
+        used.addAll(grammar.getTerminals());
+        used.add(GrammarIndex.EPSILON);
+    }
+
+    /**
+     * @param symbols the symbols that must not be handed out
+     */
+    public FreshVariables(Collection<Character> symbols) {
+        used = new HashSet<>(symbols);
+        used.add(GrammarIndex.EPSILON);
+    }
+
+    /**
+     * Marks a symbol as used, for example a terminal that appears after this supplier was
+     * created, so that it is never handed out.
+     *
+     * @param symbol the symbol to exclude
+     */
+    public void reserve(char symbol) {
+        used.add(symbol);
+    }
+
+    /**
+     * Returns the next unused variable name.
+     *
+     * @return a fresh variable name
+     * @throws IllegalStateException if no unused name is left
+     */
+    public char next() {
+        while (true) {
+            while (next < Character.MAX_VALUE) {
+                char c = next++;
+                boolean candidate = anyLetter ? Character.isLetter(c) : Character.isUpperCase(c);
+                if (candidate && used.add(c)) {
+                    return c;
+                }
+            }
+            if (anyLetter) {
+                throw new IllegalStateException("Out of variable names");
+            }
+            anyLetter = true;
+            next = 'A';
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package code.extensions;
+
+import code.Grammar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * One-pass structural analysis of a {@link Grammar}.
+ * <p>
+ * The grammar is indexed once with {@link GrammarIndex} and every property is derived from
+ * that index with worklist or graph algorithms that are linear in the size of the grammar:
+ * <ul>
+ *   <li>productive variables (derive some terminal word),</li>
+ *   <li>reachable variables (occur in a sentential form derived from the start symbol),</li>
+ *   <li>nullable variables (derive the empty word),</li>
+ *   <li>cycles of unit rules {@code A → B},</li>
+ *   <li>emptiness and finiteness of the language, using Tarjan's strongly connected
+ *       components on the dependency graph of the reduced grammar.</li>
+ * </ul>
+ * </p>
+ */
+public class GrammarAnalysis {
+    private final GrammarIndex index;
+    private final boolean[] productive;
+    private final boolean[] reachable;
+    private final boolean[] nullable;
+    private final boolean[] useful;
+    private final boolean[] usefulRule;
+    private final List<Set<Character>> unitCycles;
+    private final boolean empty;
+    private final boolean infinite;
+    private final int unitRuleCount;
+    private final int epsilonRuleCount;
+    private final int maxRightSide;
+
+    private GrammarAnalysis(GrammarIndex index) {
+        this.index = index;
+        int n = index.variableCount();
+        int m = index.ruleCount();
+        int[] body = index.body();
+
+        productive = computeProductive(index);
+        nullable = computeNullable(index);
+        reachable = computeReachable(index, null);
+
+        usefulRule = new boolean[m];
+        for (int r = 0; r < m; r++) {
+            boolean ok = productive[index.lhs(r)];
+            for (int i = index.bodyStart(r); ok && i < index.bodyEnd(r); i++) {
+                if (body[i] >= 0 && !productive[body[i]]) ok = false;
+            }
+            usefulRule[r] = ok;
+        }
+        useful = productive[index.getStart()] ? computeReachable(index, usefulRule) : new boolean[n];
+        for (int r = 0; r < m; r++) {
+            usefulRule[r] = usefulRule[r] && useful[index.lhs(r)];
+        }
+        empty = !productive[index.getStart()];
+
+        int units = 0;
+        int epsilons = 0;
+        int maxRhs = 0;
+        for (int r = 0; r < m; r++) {
+            int len = index.bodyEnd(r) - index.bodyStart(r);
+            if (len == 0) epsilons++;
+            if (len == 1 && body[index.bodyStart(r)] >= 0) units++;
+            maxRhs = Math.max(maxRhs, index.rule(r).getRightSide().length());
+        }
+        unitRuleCount = units;
+        epsilonRuleCount = epsilons;
+        maxRightSide = maxRhs;
+
+        unitCycles = computeUnitCycles();
+        infinite = !empty && computeInfinite();
+    }
+
+    private GrammarAnalysis(GrammarIndex index, boolean[] productive, boolean[] reachable, boolean[] nullable,
+                            boolean[] useful, boolean[] usefulRule, List<Set<Character>> unitCycles,
+                            boolean empty, boolean infinite, int unitRuleCount, int epsilonRuleCount,
+                            int maxRightSide) {
+        this.index = index;
+        this.productive = productive;
+        this.reachable = reachable;
+        this.nullable = nullable;
+        this.useful = useful;
+        this.usefulRule = usefulRule;
+        this.unitCycles = unitCycles;
+        this.empty = empty;
+        this.infinite = infinite;
+        this.unitRuleCount = unitRuleCount;
+        this.epsilonRuleCount = epsilonRuleCount;
+        this.maxRightSide = maxRightSide;
+    }
+
+    /**
+     * Analyses the given grammar.
+     *
+     * @param grammar the grammar to analyse
+     * @return the analysis result
+     */
+    public static GrammarAnalysis analyze(Grammar grammar) {
+        return new GrammarAnalysis(new GrammarIndex(grammar));
+    }
+
+    /**
+     * Analyses an already indexed grammar.
+     *
+     * @param index the index of the grammar to analyse
+     * @return the analysis result
+     */
+    public static GrammarAnalysis analyze(GrammarIndex index) {
+        return new GrammarAnalysis(index);
+    }
+
+    /**
+     * Writes the results in the form read by {@link #read(GrammarIndex, DataInput)}.
+     */
+    void write(DataOutput out) throws IOException {
+        writeFlags(out, productive);
+        writeFlags(out, reachable);
+        writeFlags(out, nullable);
+        writeFlags(out, useful);
+        writeFlags(out, usefulRule);
+        out.writeInt(unitCycles.size());
+        for (Set<Character> cycle : unitCycles) {
+            out.writeInt(cycle.size());
+            for (char v : cycle) out.writeChar(v);
+        }
+        out.writeBoolean(empty);
+        out.writeBoolean(infinite);
+        out.writeInt(unitRuleCount);
+        out.writeInt(epsilonRuleCount);
+        out.writeInt(maxRightSide);
+    }
+
+    /**
+     * Restores the analysis of an indexed grammar from results written by
+     * {@link #write(DataOutput)} for the same grammar.
+     */
+    static GrammarAnalysis read(GrammarIndex index, DataInput in) throws IOException {
+        int n = index.variableCount();
+        boolean[] productive = readFlags(in, n);
+        boolean[] reachable = readFlags(in, n);
+        boolean[] nullable = readFlags(in, n);
+        boolean[] useful = readFlags(in, n);
+        boolean[] usefulRule = readFlags(in, index.ruleCount());
+        int cycleCount = in.readInt();
+        List<Set<Character>> unitCycles = new ArrayList<>(cycleCount);
+        for (int i = 0; i < cycleCount; i++) {
+            int size = in.readInt();
+            Set<Character> cycle = new TreeSet<>();
+            for (int j = 0; j < size; j++) cycle.add(in.readChar());
+            unitCycles.add(cycle);
+        }
+        return new GrammarAnalysis(index, productive, reachable, nullable, useful, usefulRule, unitCycles,
+                in.readBoolean(), in.readBoolean(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    /**
+     * Writes flags packed eight to a byte; the length is not written.
+     */
+    static void writeFlags(DataOutput out, boolean[] flags) throws IOException {
+        for (int i = 0; i < flags.length; i += 8) {
+            int b = 0;
+            for (int j = 0; j < 8 && i + j < flags.length; j++) {
+                if (flags[i + j]) b |= 1 << j;
+            }
+            out.writeByte(b);
+        }
+    }
+
+    static boolean[] readFlags(DataInput in, int length) throws IOException {
+        boolean[] flags = new boolean[length];
+        for (int i = 0; i < length; i += 8) {
+            int b = in.readUnsignedByte();
+            for (int j = 0; j < 8 && i + j < length; j++) {
+                flags[i + j] = (b & (1 << j)) != 0;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Marks every variable that derives a terminal word. A counter per rule tracks how many
+     * variable occurrences in its body are not yet known to be productive.
+     */
+    static boolean[] computeProductive(GrammarIndex index) {
+        int n = index.variableCount();
+        int m = index.ruleCount();
+        int[] body = index.body();
+        int[] pending = new int[m];
+        boolean[] result = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int r = 0; r < m; r++) {
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                if (body[i] >= 0) pending[r]++;
+            }
+            if (pending[r] == 0 && !result[index.lhs(r)]) {
+                result[index.lhs(r)] = true;
+                queue[tail++] = index.lhs(r);
+            }
+        }
+        return propagate(index, pending, result, queue, tail);
+    }
+
+    /**
+     * Marks every variable that derives the empty word. Rules containing a terminal can never
+     * become nullable, so they are excluded by giving them an unreachable counter.
+     */
+    static boolean[] computeNullable(GrammarIndex index) {
+        int n = index.variableCount();
+        int m = index.ruleCount();
+        int[] body = index.body();
+        int[] pending = new int[m];
+        boolean[] result = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int r = 0; r < m; r++) {
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                if (body[i] < 0) {
+                    pending[r] = Integer.MAX_VALUE;
+                    break;
+                }
+                pending[r]++;
+            }
+            if (pending[r] == 0 && !result[index.lhs(r)]) {
+                result[index.lhs(r)] = true;
+                queue[tail++] = index.lhs(r);
+            }
+        }
+        return propagate(index, pending, result, queue, tail);
+    }
+
+    private static boolean[] propagate(GrammarIndex index, int[] pending, boolean[] result, int[] queue, int tail) {
+        int[] occurrences = index.occurrences();
+        int head = 0;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = index.occurrencesStart(v); i < index.occurrencesEnd(v); i++) {
+                int r = occurrences[i];
+                if (--pending[r] == 0) {
+                    int lhs = index.lhs(r);
+                    if (!result[lhs]) {
+                        result[lhs] = true;
+                        queue[tail++] = lhs;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Breadth-first search from the start symbol following rule bodies.
+     *
+     * @param allowed if not {@code null}, only rules marked {@code true} are followed
+     */
+    private static boolean[] computeReachable(GrammarIndex index, boolean[] allowed) {
+        int n = index.variableCount();
+        int[] body = index.body();
+        int[] byLhs = index.rulesByLhs();
+        boolean[] result = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        result[index.getStart()] = true;
+        queue[tail++] = index.getStart();
+        while (head < tail) {
+            int v = queue[head++];
+            for (int k = index.rulesOfStart(v); k < index.rulesOfEnd(v); k++) {
+                int r = byLhs[k];
+                if (allowed != null && !allowed[r]) continue;
+                for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                    int s = body[i];
+                    if (s >= 0 && !result[s]) {
+                        result[s] = true;
+                        queue[tail++] = s;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the strongly connected components of the graph of unit rules that either contain
+     * more than one variable or a variable with a unit rule to itself.
+     */
+    private List<Set<Character>> computeUnitCycles() {
+        int n = index.variableCount();
+        int m = index.ruleCount();
+        int[] body = index.body();
+        boolean[] selfLoop = new boolean[n];
+        int[] edgeStart = new int[n + 1];
+        for (int r = 0; r < m; r++) {
+            if (isUnit(r)) edgeStart[index.lhs(r) + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            edgeStart[v + 1] += edgeStart[v];
+        }
+        int[] edges = new int[edgeStart[n]];
+        int[] fill = Arrays.copyOf(edgeStart, n);
+        for (int r = 0; r < m; r++) {
+            if (isUnit(r)) {
+                int to = body[index.bodyStart(r)];
+                edges[fill[index.lhs(r)]++] = to;
+                if (to == index.lhs(r)) selfLoop[to] = true;
+            }
+        }
+
+        int[] component = stronglyConnectedComponents(n, edgeStart, edges);
+        Map<Integer, Set<Character>> members = new TreeMap<>();
+        for (int v = 0; v < n; v++) {
+            members.computeIfAbsent(component[v], k -> new TreeSet<>()).add(index.variable(v));
+        }
+        List<Set<Character>> cycles = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            Set<Character> scc = members.get(component[v]);
+            if (scc != null && (scc.size() > 1 || selfLoop[v])) {
+                cycles.add(scc);
+                members.remove(component[v]);
+            }
+        }
+        return cycles;
+    }
+
+    private boolean isUnit(int r) {
+        return index.bodyEnd(r) - index.bodyStart(r) == 1 && index.body()[index.bodyStart(r)] >= 0;
+    }
+
+    /**
+     * Decides whether the language is infinite. In the reduced grammar the language is infinite
+     * exactly when some rule {@code A → αBβ} lies on a cycle ({@code A} and {@code B} in the same
+     * strongly connected component) and {@code αβ} can derive a non-empty word.
+     */
+    private boolean computeInfinite() {
+        int n = index.variableCount();
+        int m = index.ruleCount();
+        int[] body = index.body();
+
+        // variables of the reduced grammar that derive at least one non-empty word
+        boolean[] solid = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int r = 0; r < m; r++) {
+            if (!usefulRule[r] || solid[index.lhs(r)]) continue;
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                if (body[i] < 0) {
+                    solid[index.lhs(r)] = true;
+                    queue[tail++] = index.lhs(r);
+                    break;
+                }
+            }
+        }
+        int[] occurrences = index.occurrences();
+        int head = 0;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = index.occurrencesStart(v); i < index.occurrencesEnd(v); i++) {
+                int r = occurrences[i];
+                int lhs = index.lhs(r);
+                if (usefulRule[r] && !solid[lhs]) {
+                    solid[lhs] = true;
+                    queue[tail++] = lhs;
+                }
+            }
+        }
+
+        int[] edgeStart = new int[n + 1];
+        for (int r = 0; r < m; r++) {
+            if (!usefulRule[r]) continue;
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                if (body[i] >= 0) edgeStart[index.lhs(r) + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            edgeStart[v + 1] += edgeStart[v];
+        }
+        int[] edges = new int[edgeStart[n]];
+        int[] fill = Arrays.copyOf(edgeStart, n);
+        for (int r = 0; r < m; r++) {
+            if (!usefulRule[r]) continue;
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                if (body[i] >= 0) edges[fill[index.lhs(r)]++] = body[i];
+            }
+        }
+        int[] component = stronglyConnectedComponents(n, edgeStart, edges);
+
+        for (int r = 0; r < m; r++) {
+            if (!usefulRule[r]) continue;
+            int growing = 0;
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                if (body[i] < 0 || solid[body[i]]) growing++;
+            }
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                int s = body[i];
+                if (s >= 0 && component[s] == component[index.lhs(r)]) {
+                    int others = solid[s] ? growing - 1 : growing;
+                    if (others > 0) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Iterative version of Tarjan's algorithm, so that deep dependency chains in large grammars
+     * do not overflow the call stack.
+     *
+     * @param n         number of vertices
+     * @param edgeStart adjacency offsets, the successors of {@code v} are
+     *                  {@code edges[edgeStart[v] .. edgeStart[v + 1])}
+     * @param edges     adjacency targets
+     * @return the component number of every vertex
+     */
+    static int[] stronglyConnectedComponents(int n, int[] edgeStart, int[] edges) {
+        int[] order = new int[n];
+        int[] low = new int[n];
+        int[] component = new int[n];
+        int[] nextEdge = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] callStack = new int[n];
+        Arrays.fill(order, -1);
+        int counter = 0;
+        int components = 0;
+        int sp = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (order[root] != -1) continue;
+            int csp = 0;
+            callStack[csp++] = root;
+            order[root] = low[root] = counter++;
+            nextEdge[root] = edgeStart[root];
+            stack[sp++] = root;
+            onStack[root] = true;
+
+            while (csp > 0) {
+                int v = callStack[csp - 1];
+                if (nextEdge[v] < edgeStart[v + 1]) {
+                    int w = edges[nextEdge[v]++];
+                    if (order[w] == -1) {
+                        order[w] = low[w] = counter++;
+                        nextEdge[w] = edgeStart[w];
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callStack[csp++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                } else {
+                    csp--;
+                    if (csp > 0) {
+                        int parent = callStack[csp - 1];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                    if (low[v] == order[v]) {
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            component[w] = components;
+                        } while (w != v);
+                        components++;
+                    }
+                }
+            }
+        }
+        return component;
+    }
+
+    private Set<Character> collect(boolean[] marks, boolean value) {
+        Set<Character> result = new TreeSet<>();
+        for (int v = 0; v < marks.length; v++) {
+            if (marks[v] == value) result.add(index.variable(v));
+        }
+        return result;
+    }
+
+    public GrammarIndex getIndex() {
+        return index;
+    }
+
+    public Set<Character> getProductive() {
+        return collect(productive, true);
+    }
+
+    public Set<Character> getNonProductive() {
+        return collect(productive, false);
+    }
+
+    public Set<Character> getReachable() {
+        return collect(reachable, true);
+    }
+
+    public Set<Character> getUnreachable() {
+        return collect(reachable, false);
+    }
+
+    public Set<Character> getNullable() {
+        return collect(nullable, true);
+    }
+
+    /**
+     * @return the variables that are both reachable and productive in the reduced grammar
+     */
+    public Set<Character> getUseful() {
+        return collect(useful, true);
+    }
+
+    public boolean isProductive(int v) {
+        return productive[v];
+    }
+
+    public boolean isNullable(int v) {
+        return nullable[v];
+    }
+
+    public boolean isUseful(int v) {
+        return useful[v];
+    }
+
+    /**
+     * @return {@code true} if rule {@code r} only uses useful variables
+     */
+    public boolean isUsefulRule(int r) {
+        return usefulRule[r];
+    }
+
+    /**
+     * @return the groups of variables that derive each other through unit rules only
+     */
+    public List<Set<Character>> getUnitCycles() {
+        return unitCycles;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public boolean isInfinite() {
+        return infinite;
+    }
+
+    public boolean isFinite() {
+        return !infinite;
+    }
+
+    public int getUnitRuleCount() {
+        return unitRuleCount;
+    }
+
+    public int getEpsilonRuleCount() {
+        return epsilonRuleCount;
+    }
+
+    public int getMaxRightSide() {
+        return maxRightSide;
+    }
+}
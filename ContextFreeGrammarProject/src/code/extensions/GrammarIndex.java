@@ -0,0 +1,267 @@
+package code.extensions;
+
+import code.Grammar;
+import code.Rule;
+
+import java.util.*;
+
+/**
+ * Compact, array based view of a {@link Grammar} used by the analysis algorithms.
+ * <p>
+ * Variables and terminals are numbered densely in sorted order. Every rule body is stored
+ * as a slice of a single {@code int} array where a variable is encoded by its index
+ * ({@code >= 0}) and a terminal by the bitwise complement of its index ({@code < 0}).
+ * The empty string symbol {@link #EPSILON} is dropped from the bodies, so an ε-rule has
+ * an empty body. Rules are additionally grouped by their left side, and every variable
+ * occurrence on a right side is recorded, which lets worklist algorithms run in time
+ * linear in the size of the grammar.
+ * </p>
+ */
+public class GrammarIndex {
+    /**
+     * Symbol used by the grammars to denote the empty string.
+     */
+    public static final char EPSILON = 'ε';
+
+    private final char[] variables;
+    private final char[] terminals;
+    private final Map<Character, Integer> variableIds;
+    private final Map<Character, Integer> terminalIds;
+    private final Rule[] rules;
+    private final int[] ruleLhs;
+    private final int[] bodyStart;
+    private final int[] body;
+    private final int[] rulesByLhsStart;
+    private final int[] rulesByLhs;
+    private final int[] occurrenceStart;
+    private final int[] occurrences;
+    private final int start;
+
+    /**
+     * Builds the index for the given grammar.
+     *
+     * @param grammar the grammar to index
+     */
+    public GrammarIndex(Grammar grammar) {
+
+        List<Character> vars = new ArrayList<>(grammar.getVariables());
+        Collections.sort(vars);
+        variables = new char[vars.size()];
+        variableIds = new HashMap<>();
+        for (int i = 0; i < vars.size(); i++) {
+            variables[i] = vars.get(i);
+            variableIds.put(vars.get(i), i);
+        }
+
+        List<Character> terms = new ArrayList<>();
+        for (char t : grammar.getTerminals()) {
+            if (t != EPSILON && !variableIds.containsKey(t)) {
+                terms.add(t);
+            }
+        }
+        Collections.sort(terms);
+        terminals = new char[terms.size()];
+        terminalIds = new HashMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            terminals[i] = terms.get(i);
+            terminalIds.put(terms.get(i), i);
+        }
+
+        rules = grammar.getAllRules().toArray(new Rule[0]);
+        ruleLhs = new int[rules.length];
+        bodyStart = new int[rules.length + 1];
+        int total = 0;
+        for (Rule r : rules) {
+            total += r.getRightSide().length();
+        }
+        int[] symbols = new int[total];
+        int pos = 0;
+        int variableOccurrences = 0;
+        for (int r = 0; r < rules.length; r++) {
+            ruleLhs[r] = variableIds.get(rules[r].getLeftSide());
+            bodyStart[r] = pos;
+            String rhs = rules[r].getRightSide();
+            for (int i = 0; i < rhs.length(); i++) {
+                char c = rhs.charAt(i);
+                Integer v = variableIds.get(c);
+                if (v != null) {
+                    symbols[pos++] = v;
+                    variableOccurrences++;
+                } else if (c != EPSILON) {
+                    Integer t = terminalIds.get(c);
+                    if (t == null) {
+                        throw new IllegalArgumentException("Symbol '" + c + "' is not defined");
+                    }
+                    symbols[pos++] = ~t;
+                }
+            }
+        }
+        bodyStart[rules.length] = pos;
+        body = pos == total ? symbols : Arrays.copyOf(symbols, pos);
+
+        int n = variables.length;
+        rulesByLhsStart = new int[n + 1];
+        for (int r = 0; r < rules.length; r++) {
+            rulesByLhsStart[ruleLhs[r] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            rulesByLhsStart[v + 1] += rulesByLhsStart[v];
+        }
+        rulesByLhs = new int[rules.length];
+        int[] fill = Arrays.copyOf(rulesByLhsStart, n);
+        for (int r = 0; r < rules.length; r++) {
+            rulesByLhs[fill[ruleLhs[r]]++] = r;
+        }
+
+        occurrenceStart = new int[n + 1];
+        for (int s : body) {
+            if (s >= 0) occurrenceStart[s + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            occurrenceStart[v + 1] += occurrenceStart[v];
+        }
+        occurrences = new int[variableOccurrences];
+        fill = Arrays.copyOf(occurrenceStart, n);
+        for (int r = 0; r < rules.length; r++) {
+            for (int i = bodyStart[r]; i < bodyStart[r + 1]; i++) {
+                if (body[i] >= 0) occurrences[fill[body[i]]++] = r;
+            }
+        }
+
+        start = variableIds.get(grammar.getStartSymbol());
+    }
+
+    public int variableCount() {
+        return variables.length;
+    }
+
+    public int terminalCount() {
+        return terminals.length;
+    }
+
+    public int ruleCount() {
+        return rules.length;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public char variable(int v) {
+        return variables[v];
+    }
+
+    public char terminal(int t) {
+        return terminals[t];
+    }
+
+    /**
+     * Returns the index of a variable, or {@code -1} if the symbol is not a variable.
+     *
+     * @param c the symbol to look up
+     * @return the variable index or {@code -1}
+     */
+    public int variableId(char c) {
+        Integer v = variableIds.get(c);
+        return v == null ? -1 : v;
+    }
+
+    /**
+     * Returns the index of a terminal, or {@code -1} if the symbol is not a terminal.
+     *
+     * @param c the symbol to look up
+     * @return the terminal index or {@code -1}
+     */
+    public int terminalId(char c) {
+        Integer t = terminalIds.get(c);
+        return t == null ? -1 : t;
+    }
+
+    /**
+     * Builds a lookup table from a character to its terminal index, {@code -1} for characters
+     * that are not terminals. The table is as long as the largest terminal character plus one.
+     *
+     * @return the dense lookup table
+     */
+    public int[] terminalLookup() {
+        int maxChar = -1;
+        for (char t : terminals) {
+            maxChar = Math.max(maxChar, t);
+        }
+        int[] lookup = new int[maxChar + 1];
+        Arrays.fill(lookup, -1);
+        for (int t = 0; t < terminals.length; t++) {
+            lookup[terminals[t]] = t;
+        }
+        return lookup;
+    }
+
+    public Rule rule(int r) {
+        return rules[r];
+    }
+
+    public int lhs(int r) {
+        return ruleLhs[r];
+    }
+
+    /**
+     * @return the position in {@link #body()} where the body of rule {@code r} starts
+     */
+    public int bodyStart(int r) {
+        return bodyStart[r];
+    }
+
+    /**
+     * @return the position in {@link #body()} just past the end of the body of rule {@code r}
+     */
+    public int bodyEnd(int r) {
+        return bodyStart[r + 1];
+    }
+
+    /**
+     * @return the encoded symbols of all rule bodies; see the class description
+     */
+    public int[] body() {
+        return body;
+    }
+
+    /**
+     * @return the total number of symbols on all right sides, ε excluded
+     */
+    public int size() {
+        return body.length;
+    }
+
+    public int rulesOfStart(int v) {
+        return rulesByLhsStart[v];
+    }
+
+    public int rulesOfEnd(int v) {
+        return rulesByLhsStart[v + 1];
+    }
+
+    /**
+     * @return the rule indices grouped by left side; the rules of variable {@code v}
+     *         are in the range {@code [rulesOfStart(v), rulesOfEnd(v))}
+     */
+    public int[] rulesByLhs() {
+        return rulesByLhs;
+    }
+
+    public int occurrencesStart(int v) {
+        return occurrenceStart[v];
+    }
+
+    public int occurrencesEnd(int v) {
+        return occurrenceStart[v + 1];
+    }
+
+    /**
+     * @return for every variable, the rules in whose body it occurs, one entry per occurrence;
+     *         the entries of variable {@code v} are in the range
+     *         {@code [occurrencesStart(v), occurrencesEnd(v))}
+     */
+    public int[] occurrences() {
+        return occurrences;
+    }
+}
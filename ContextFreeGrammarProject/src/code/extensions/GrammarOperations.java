@@ -0,0 +1,343 @@
+package code.extensions;
+
+import code.Grammar;
+import code.Rule;
+import code.events.ChomskifyEvent;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Closure operations and the Chomsky Normal Form conversion, each building a new
+ * {@link Grammar} from existing ones without registering it anywhere.
+ */
+public class GrammarOperations {
+    private GrammarOperations() {
+    }
+
+    /**
+     * Number of operands from which their rules are renamed in parallel.
+     */
+    private static final int MIN_PARALLEL_OPERANDS = 64;
+
+    /**
+     * Creates a grammar for the union of languages: the operands are {@link #combine combined}
+     * and a new start symbol {@code S'} gets the rules {@code S' → Sᵢ} for the start symbol
+     * of every operand.
+     * <p>
+     * With {@code inlineStarts}, {@code S'} instead gets a copy of every rule of every
+     * {@code Sᵢ}. That generates the same language without the unit rules, so the union of
+     * grammars in Chomsky Normal Form is in CNF itself and needs no conversion.
+     * </p>
+     *
+     * @param operands     the grammars
+     * @param newId        the ID of the new grammar
+     * @param inlineStarts whether to copy the rules of the start symbols instead of linking
+     *                     to them
+     * @return the new grammar
+     * @throws IllegalStateException if the operands have more variables than there are names
+     */
+    public static Grammar union(List<Grammar> operands, String newId, boolean inlineStarts) {
+        Combined combined = combine(operands, newId);
+        Grammar unionG = combined.grammar;
+        int ruleNum = combined.nextRule;
+        if (!inlineStarts) {
+            for (char start : combined.starts) {
+                unionG.addRule("r" + ruleNum++, unionG.getStartSymbol(), Character.toString(start));
+            }
+            return unionG;
+        }
+        Set<String> inlined = new HashSet<>();
+        for (int k = 0; k < operands.size(); k++) {
+            for (int i = 0; i < combined.lefts[k].length; i++) {
+                String right = combined.rights[k][i];
+                if (combined.lefts[k][i] == combined.starts[k] && inlined.add(right)) {
+                    unionG.addRule("r" + ruleNum++, unionG.getStartSymbol(), right);
+                }
+            }
+        }
+        return unionG;
+    }
+
+    /**
+     * Creates a grammar for the concatenation of languages: the operands are
+     * {@link #combine combined} and a new start symbol gets the rule
+     * {@code S' → S₁ S₂ … Sₙ}.
+     *
+     * @param operands the grammars, in the order of concatenation
+     * @param newId    the ID of the new grammar
+     * @return the new grammar
+     * @throws IllegalStateException if the operands have more variables than there are names
+     */
+    public static Grammar concat(List<Grammar> operands, String newId) {
+        Combined combined = combine(operands, newId);
+        Grammar concatG = combined.grammar;
+        concatG.addRule("r" + combined.nextRule, concatG.getStartSymbol(), new String(combined.starts));
+        return concatG;
+    }
+
+    /**
+     * The grammars of {@link #combine} with their renamed rules and start symbols.
+     */
+    private static final class Combined {
+        Grammar grammar;
+        char[] starts;
+        char[][] lefts;
+        String[][] rights;
+        int nextRule;
+    }
+
+    /**
+     * Copies several grammars into one, so that their variables stay apart: a variable keeps
+     * its name unless an earlier operand already uses it or it is a terminal of any operand,
+     * in which case it gets a fresh name from {@link FreshVariables}. The terminals are
+     * merged, all rules are copied in the order of the operands as rules r1, r2, …, and a
+     * fresh variable becomes the start symbol, without rules of its own yet.
+     * <p>
+     * The names are chosen in one pass over the variables; the rules, which is where the work
+     * is, are then renamed in parallel if there are at least
+     * {@value #MIN_PARALLEL_OPERANDS} operands, and added in one more pass.
+     * </p>
+     */
+    private static Combined combine(List<Grammar> operands, String newId) {
+        Set<Character> terms = new LinkedHashSet<>();
+        for (Grammar g : operands) {
+            terms.addAll(g.getTerminals());
+        }
+        FreshVariables fresh = new FreshVariables(terms);
+        Set<Character> taken = new HashSet<>(terms);
+        List<Map<Character, Character>> renamings = new ArrayList<>(operands.size());
+        Combined combined = new Combined();
+        combined.starts = new char[operands.size()];
+        for (int k = 0; k < operands.size(); k++) {
+            Grammar g = operands.get(k);
+            Map<Character, Character> renaming = new HashMap<>();
+            for (char v : new TreeSet<>(g.getVariables())) {
+                if (taken.add(v)) {
+                    fresh.reserve(v);
+                } else {
+                    char name = fresh.next();
+                    taken.add(name);
+                    renaming.put(v, name);
+                }
+            }
+            renamings.add(renaming);
+            combined.starts[k] = renaming.getOrDefault(g.getStartSymbol(), g.getStartSymbol());
+        }
+
+        combined.lefts = new char[operands.size()][];
+        combined.rights = new String[operands.size()][];
+        IntStream indices = IntStream.range(0, operands.size());
+        if (operands.size() >= MIN_PARALLEL_OPERANDS && Runtime.getRuntime().availableProcessors() > 1) {
+            indices = indices.parallel();
+        }
+        indices.forEach(k -> rename(operands.get(k), renamings.get(k), combined, k));
+
+        Grammar result = new Grammar(newId, fresh.next());
+        for (char v : taken) {
+            if (!terms.contains(v)) result.addVariable(v);
+        }
+        for (char t : terms) result.addTerminal(t);
+        int ruleNum = 1;
+        for (int k = 0; k < operands.size(); k++) {
+            Progress.report("combine", k, operands.size());
+            for (int i = 0; i < combined.lefts[k].length; i++) {
+                result.addRule("r" + ruleNum++, combined.lefts[k][i], combined.rights[k][i]);
+            }
+        }
+        combined.grammar = result;
+        combined.nextRule = ruleNum;
+        return combined;
+    }
+
+    /**
+     * Stores the rules of one operand with its variables renamed at index {@code k}.
+     */
+    private static void rename(Grammar g, Map<Character, Character> renaming, Combined combined, int k) {
+        Collection<Rule> rules = g.getAllRules();
+        char[] lefts = new char[rules.size()];
+        String[] rights = new String[rules.size()];
+        int i = 0;
+        for (Rule r : rules) {
+            lefts[i] = renaming.getOrDefault(r.getLeftSide(), r.getLeftSide());
+            String right = r.getRightSide();
+            if (!renaming.isEmpty()) {
+                char[] symbols = right.toCharArray();
+                for (int j = 0; j < symbols.length; j++) {
+                    symbols[j] = renaming.getOrDefault(symbols[j], symbols[j]);
+                }
+                right = new String(symbols);
+            }
+            rights[i++] = right;
+        }
+        combined.lefts[k] = lefts;
+        combined.rights[k] = rights;
+    }
+
+    /**
+     * Creates a grammar for the Kleene star of a language: all variables, terminals and rules
+     * are copied, 'ε' is added as a terminal, and a new start symbol gets the rules
+     * {@code S' → ε} and {@code S' → S S'}.
+     *
+     * @param grammar the grammar
+     * @param newId   the ID of the new grammar
+     * @return the new grammar
+     */
+    public static Grammar iter(Grammar grammar, String newId) {
+        Set<Character> vars  = new HashSet<>(grammar.getVariables());
+        char newStart = 'S';
+        for (char c = 'A'; c <= 'Z'; c++) {
+            if (!vars.contains(c)) {
+                newStart = c;
+                break;
+            }
+        }
+
+        Grammar kleeneStar = new Grammar(newId, newStart);
+        for (char v : grammar.getVariables()) {
+            kleeneStar.addVariable(v);
+        }
+        kleeneStar.addVariable(newStart);
+        for (char t : grammar.getTerminals()) {
+            kleeneStar.addTerminal(t);
+        }
+        kleeneStar.addTerminal('ε');
+
+        int ruleNum = 1;
+        for (Rule r : grammar.getAllRules()) {
+            kleeneStar.addRule("r" + ruleNum++, r.getLeftSide(), r.getRightSide());
+        }
+
+        kleeneStar.addRule("r" + ruleNum++, newStart, "ε");
+        kleeneStar.addRule("r" + ruleNum++, newStart, "" + grammar.getStartSymbol() + newStart);
+        return kleeneStar;
+    }
+
+    /**
+     * Converts a grammar towards Chomsky Normal Form:
+     * <ol>
+     *   <li>Copy all variables and terminals from the original grammar.</li>
+     *   <li>Create new variables for each terminal which is in a rule with more than one
+     *       terminal, mapping each to a new rule of the form V → t.</li>
+     *   <li>For each original rule:
+     *     <ul>
+     *       <li>If it is already of length 1 or 2, add it (substituting terminals as needed).</li>
+     *       <li>If longer, iteratively break it into binary productions by introducing fresh
+     *           variables.</li>
+     *     </ul>
+     *   </li>
+     * </ol>
+     * Progress is reported to {@link Progress} after every rule, and steps 2 and 3 are recorded
+     * as {@link ChomskifyEvent}s when Flight Recorder is on.
+     *
+     * @param grammar the grammar to convert
+     * @param newId   the ID of the new grammar
+     * @return the new grammar
+     * @throws IllegalStateException if the conversion runs out of variable names
+     */
+    public static Grammar chomskify(Grammar grammar, String newId) {
+        Grammar cnf = new Grammar(newId, grammar.getStartSymbol());
+
+        for (char V : grammar.getVariables()) {
+            cnf.addVariable(V);
+        }
+        for (char t : grammar.getTerminals()) {
+            cnf.addTerminal(t);
+        }
+
+        Map<Character,Character> termToVar = new HashMap<>();
+        List<Character> availableVariables  = new ArrayList<>();
+        for (char c = 'A'; c <= 'Z'; c++) {
+            if (!cnf.getVariables().contains(c)){
+                availableVariables .add(c);
+            }
+        }
+        Iterator<Character> freeIt = availableVariables .iterator();
+
+        int ruleNum = 1;
+        int rules = grammar.getAllRules().size();
+
+        ChomskifyEvent event = new ChomskifyEvent();
+        event.begin();
+        for (char t : grammar.getTerminals()) {
+            if (!termToVar.containsKey(t) && freeIt.hasNext()) {
+                char newVar  = freeIt.next();
+                termToVar.put(t, newVar);
+                cnf.addVariable(newVar);
+                cnf.addRule("r" + (ruleNum++), newVar, "" + t);
+            }
+        }
+        commit(event, grammar, ChomskifyEvent.LIFT_TERMINALS, rules, ruleNum - 1, termToVar.size());
+
+        event = new ChomskifyEvent();
+        event.begin();
+        int liftedRules = ruleNum - 1;
+        int variables = cnf.getVariables().size();
+
+        int done = 0;
+        int total = rules;
+        for (Rule r : grammar.getAllRules()) {
+            Progress.report("chomskify", done++, total);
+            char leftVar = r.getLeftSide();
+            String rightSide  = r.getRightSide();
+
+            List<String> symbols = new ArrayList<>();
+            for (char c : rightSide.toCharArray()) {
+                if (grammar.getTerminals().contains(c) && rightSide.length() > 1) {
+                    Character var = termToVar.get(c);
+                    if (var == null) {
+                        throw new IllegalStateException("Out of variable names");
+                    }
+                    symbols.add(var.toString());
+                } else {
+                    symbols.add(String.valueOf(c));
+                }
+            }
+
+            if (symbols.size() == 1) {
+                cnf.addRule("r" + (ruleNum++), leftVar , symbols.get(0));
+            }
+            else if (symbols.size() == 2) {
+                cnf.addRule("r" + (ruleNum++), leftVar , symbols.get(0) + symbols.get(1));
+            }
+            else {
+                String firstSymbol = symbols.get(0);
+                String freeVar = freeIt.hasNext() ? freeIt.next().toString() : null;
+                if (freeVar == null) {
+                    throw new IllegalStateException("Out of variable names");
+                }
+                cnf.addVariable(freeVar.charAt(0));
+                cnf.addRule("r" + (ruleNum++), leftVar , firstSymbol + freeVar);
+
+                for (int i = 1; i < symbols.size() - 2; i++) {
+                    String current = symbols.get(i);
+                    String nextVar = freeIt.hasNext() ? freeIt.next().toString() : null;
+                    if (nextVar == null) {
+                        throw new IllegalStateException("Out of variable names");
+                    }
+                    cnf.addVariable(nextVar.charAt(0));
+                    cnf.addRule("r" + (ruleNum++), freeVar.charAt(0), current + nextVar);
+                    freeVar = nextVar;
+                }
+                String secondLast = symbols.get(symbols.size() - 2);
+                String lastSymbol = symbols.get(symbols.size() - 1);
+                cnf.addRule("r" + (ruleNum++), freeVar.charAt(0), secondLast  + lastSymbol);
+            }
+        }
+        commit(event, grammar, ChomskifyEvent.BINARIZE, rules, ruleNum - 1 - liftedRules,
+                cnf.getVariables().size() - variables);
+        return cnf;
+    }
+
+    private static void commit(ChomskifyEvent event, Grammar grammar, String phase, int rules,
+                               int rulesCreated, int variablesCreated) {
+        if (event.shouldCommit()) {
+            event.grammarId = grammar.getId();
+            event.phase = phase;
+            event.rules = rules;
+            event.rulesCreated = rulesCreated;
+            event.variablesCreated = variablesCreated;
+            event.commit();
+        }
+    }
+}
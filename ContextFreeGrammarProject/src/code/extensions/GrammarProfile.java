@@ -0,0 +1,445 @@
+package code.extensions;
+
+import code.Grammar;
+import code.Rule;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Capability profile of a {@link Grammar}, used to decide which membership engine can and
+ * should be used for it.
+ * <p>
+ * Extends the {@link IsCNF} check with linearity (regular grammars), the LL(1) property
+ * together with its predictive parsing table, a hint about ambiguity, and the size figures
+ * the cost estimates are based on. Profiles are cached per grammar and rebuilt only when
+ * {@link Grammar#getVersion()} changes. A profile does not refer to its grammar, so it is
+ * dropped from the cache together with the grammar.
+ * </p>
+ * <p>
+ * A profile can be written with {@link #write(DataOutput)} and restored for an equal grammar
+ * with {@link #read(Grammar, DataInput)}, which skips the analyses and the construction of the
+ * LL(1) table and of the automaton of a regular grammar; {@link #defer(Grammar, Stored, Sink)}
+ * puts that off until the profile is first needed.
+ * </p>
+ */
+public class GrammarProfile {
+    private static final Map<Grammar, GrammarProfile> CACHE = new WeakHashMap<>();
+    private static final Map<Grammar, Deferred> DEFERRED = new WeakHashMap<>();
+
+    /**
+     * Place from which a profile written by {@link #write(DataOutput)} can be read again.
+     */
+    public interface Stored {
+        /**
+         * @return an input positioned at the start of the written profile
+         * @throws IOException if the profile cannot be read
+         */
+        DataInput open() throws IOException;
+    }
+
+    /**
+     * Place to which a profile is written when it is computed, and again when the automaton of
+     * its grammar is compiled.
+     */
+    public interface Sink {
+        /**
+         * @param profile the profile to write with {@link #write(DataOutput)}
+         */
+        void write(GrammarProfile profile);
+    }
+
+    private static final class Deferred {
+        final Stored stored;
+        final Sink sink;
+        final int version;
+
+        Deferred(Stored stored, Sink sink, int version) {
+            this.stored = stored;
+            this.sink = sink;
+            this.version = version;
+        }
+    }
+
+    private final String grammarId;
+    private final int version;
+    private final GrammarIndex index;
+    private final GrammarAnalysis analysis;
+    private final boolean cnf;
+    private final RegularGrammarCompiler.Linearity linearity;
+    private final int[] ll1Table;
+    private final String ambiguityHint;
+    private final int terminalRuleCount;
+    private final int binaryRuleCount;
+    private Dfa dfa;
+    private Sink sink;
+
+    private GrammarProfile(Grammar grammar) {
+        this.grammarId = grammar.getId();
+        this.version = grammar.getVersion();
+        this.index = new GrammarIndex(grammar);
+        this.analysis = GrammarAnalysis.analyze(index);
+        this.cnf = IsCNF.isCNF(grammar);
+        this.linearity = RegularGrammarCompiler.linearity(index);
+        this.ll1Table = buildLl1Table();
+
+        int terminalRules = 0;
+        int binaryRules = 0;
+        for (Rule r : grammar.getAllRules()) {
+            if (r.getRightSide().length() == 1) terminalRules++;
+            if (r.getRightSide().length() == 2) binaryRules++;
+        }
+        this.terminalRuleCount = terminalRules;
+        this.binaryRuleCount = binaryRules;
+        this.ambiguityHint = computeAmbiguityHint();
+    }
+
+    private GrammarProfile(Grammar grammar, GrammarIndex index, DataInput in) throws IOException {
+        this.grammarId = grammar.getId();
+        this.version = grammar.getVersion();
+        this.index = index;
+        this.cnf = in.readBoolean();
+        this.linearity = RegularGrammarCompiler.Linearity.values()[in.readUnsignedByte()];
+        int tableLength = in.readInt();
+        if (tableLength < 0) {
+            this.ll1Table = null;
+        } else {
+            this.ll1Table = new int[tableLength];
+            for (int i = 0; i < tableLength; i++) ll1Table[i] = in.readInt();
+        }
+        this.ambiguityHint = in.readUTF();
+        this.terminalRuleCount = in.readInt();
+        this.binaryRuleCount = in.readInt();
+        this.analysis = GrammarAnalysis.read(index, in);
+    }
+
+    /**
+     * Returns the profile of a grammar, computing it if the cached one is missing or stale.
+     *
+     * @param grammar the grammar to profile
+     * @return the profile
+     */
+    public static GrammarProfile of(Grammar grammar) {
+        Deferred deferred;
+        synchronized (CACHE) {
+            GrammarProfile cached = CACHE.get(grammar);
+            if (cached != null && cached.version == grammar.getVersion()) {
+                return cached;
+            }
+            deferred = DEFERRED.remove(grammar);
+        }
+        if (deferred != null && deferred.version != grammar.getVersion()) {
+            deferred = null;
+        }
+        Sink sink = deferred == null ? null : deferred.sink;
+        if (deferred != null && deferred.stored != null) {
+            try {
+                return read(grammar, deferred.stored.open(), sink);
+            } catch (IOException | RuntimeException e) {
+                // an unreadable stored profile is simply computed again
+            }
+        }
+        // built outside the lock, so that grammars loaded in parallel are profiled in parallel
+        GrammarProfile profile = new GrammarProfile(grammar);
+        profile.sink = sink;
+        synchronized (CACHE) {
+            CACHE.put(grammar, profile);
+        }
+        if (sink != null) {
+            sink.write(profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Writes this profile, followed by the automaton if it has been compiled already; writing
+     * never compiles it, as that can take time exponential in the size of the grammar. Rules are
+     * referred to by their position in {@link Grammar#getAllRules()}, so the profile can only
+     * be restored for a grammar whose rules are in the same order.
+     *
+     * @param out the output to write to
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(ruleOrder(index));
+        out.writeBoolean(cnf);
+        out.writeByte(linearity.ordinal());
+        if (ll1Table == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(ll1Table.length);
+            for (int entry : ll1Table) out.writeInt(entry);
+        }
+        out.writeUTF(ambiguityHint);
+        out.writeInt(terminalRuleCount);
+        out.writeInt(binaryRuleCount);
+        analysis.write(out);
+
+        Dfa dfa;
+        synchronized (this) {
+            dfa = this.dfa;
+        }
+        out.writeBoolean(dfa != null);
+        if (dfa != null) {
+            dfa.write(out);
+        }
+    }
+
+    /**
+     * Restores a profile written by {@link #write(DataOutput)} and caches it, and the automaton
+     * if there is one, for the given grammar, which must equal the profiled one.
+     *
+     * @param grammar the grammar the profile was written for
+     * @param in      the input to read from
+     * @return the restored profile
+     * @throws IOException if reading fails or the rules of the grammar are not in the order
+     *                     the profile was written for
+     */
+    public static GrammarProfile read(Grammar grammar, DataInput in) throws IOException {
+        return read(grammar, in, null);
+    }
+
+    private static GrammarProfile read(Grammar grammar, DataInput in, Sink sink) throws IOException {
+        GrammarIndex index = new GrammarIndex(grammar);
+        if (in.readInt() != ruleOrder(index)) {
+            throw new IOException("Stored profile does not match the rules of grammar " + grammar.getId());
+        }
+        GrammarProfile profile = new GrammarProfile(grammar, index, in);
+        if (in.readBoolean()) {
+            profile.dfa = Dfa.read(in, grammar.getVersion());
+        }
+        profile.sink = sink;
+        synchronized (CACHE) {
+            CACHE.put(grammar, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Remembers where a stored profile of the grammar can be read, or where a computed one is
+     * to be written. On the first call of {@link #of(Grammar)}, unless the grammar has changed
+     * by then, a stored profile is restored with {@link #read(Grammar, DataInput)}; otherwise
+     * the profile is computed and handed to the sink, as it is again once
+     * {@link #getDfa()} has compiled the automaton. Grammars that are never queried cost
+     * nothing.
+     *
+     * @param grammar the grammar the profile was written for
+     * @param stored  the place of the written profile, or {@code null} if there is none
+     * @param sink    the place to write the profile to, or {@code null}
+     */
+    public static void defer(Grammar grammar, Stored stored, Sink sink) {
+        synchronized (CACHE) {
+            DEFERRED.put(grammar, new Deferred(stored, sink, grammar.getVersion()));
+        }
+    }
+
+    /**
+     * @return a hash of the rule IDs in index order
+     */
+    private static int ruleOrder(GrammarIndex index) {
+        int hash = index.ruleCount();
+        for (int r = 0; r < index.ruleCount(); r++) {
+            hash = 31 * hash + index.rule(r).getId().hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Builds the LL(1) parsing table from FIRST and FOLLOW sets. The table has one row per
+     * variable and one column per terminal plus a last column for the end of input; entries
+     * are rule indices or {@code -1}.
+     *
+     * @return the table, or {@code null} if two rules compete for the same entry
+     */
+    private int[] buildLl1Table() {
+        int n = index.variableCount();
+        int k = index.terminalCount();
+        int columns = k + 1;
+        int[] body = index.body();
+        boolean[] nullable = GrammarAnalysis.computeNullable(index);
+
+        BitSet[] first = new BitSet[n];
+        BitSet[] follow = new BitSet[n];
+        for (int v = 0; v < n; v++) {
+            first[v] = new BitSet(columns);
+            follow[v] = new BitSet(columns);
+        }
+        follow[index.getStart()].set(k);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < index.ruleCount(); r++) {
+                BitSet target = first[index.lhs(r)];
+                int before = target.cardinality();
+                firstOf(body, index.bodyStart(r), index.bodyEnd(r), first, nullable, target);
+                changed |= target.cardinality() != before;
+            }
+        }
+
+        BitSet scratch = new BitSet(columns);
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < index.ruleCount(); r++) {
+                int end = index.bodyEnd(r);
+                for (int i = index.bodyStart(r); i < end; i++) {
+                    int s = body[i];
+                    if (s < 0) continue;
+                    scratch.clear();
+                    boolean restNullable = firstOf(body, i + 1, end, first, nullable, scratch);
+                    if (restNullable) scratch.or(follow[index.lhs(r)]);
+                    int before = follow[s].cardinality();
+                    follow[s].or(scratch);
+                    changed |= follow[s].cardinality() != before;
+                }
+            }
+        }
+
+        int[] table = new int[n * columns];
+        Arrays.fill(table, -1);
+        for (int r = 0; r < index.ruleCount(); r++) {
+            int lhs = index.lhs(r);
+            scratch.clear();
+            if (firstOf(body, index.bodyStart(r), index.bodyEnd(r), first, nullable, scratch)) {
+                scratch.or(follow[lhs]);
+            }
+            for (int c = scratch.nextSetBit(0); c >= 0; c = scratch.nextSetBit(c + 1)) {
+                if (table[lhs * columns + c] >= 0) {
+                    return null;
+                }
+                table[lhs * columns + c] = r;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Adds FIRST of {@code body[from..to)} to {@code out}.
+     *
+     * @return {@code true} if the whole sequence is nullable
+     */
+    private static boolean firstOf(int[] body, int from, int to, BitSet[] first, boolean[] nullable, BitSet out) {
+        for (int i = from; i < to; i++) {
+            int s = body[i];
+            if (s < 0) {
+                out.set(~s);
+                return false;
+            }
+            out.or(first[s]);
+            if (!nullable[s]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String computeAmbiguityHint() {
+        if (ll1Table != null) {
+            return "unambiguous (LL(1))";
+        }
+        // a unit cycle only gives a word several derivations if it can take part in one
+        Set<Character> useful = analysis.getUseful();
+        for (Set<Character> cycle : analysis.getUnitCycles()) {
+            if (useful.containsAll(cycle)) {
+                return "ambiguous (unit cycles)";
+            }
+        }
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < index.ruleCount(); i++) {
+            Rule r = index.rule(i);
+            if (!seen.add(r.getLeftSide() + "->" + r.getRightSide())) {
+                return "ambiguous (duplicate rules)";
+            }
+        }
+        return "unknown";
+    }
+
+    public String getGrammarId() {
+        return grammarId;
+    }
+
+    public GrammarIndex getIndex() {
+        return index;
+    }
+
+    public GrammarAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    public boolean isCNF() {
+        return cnf;
+    }
+
+    public boolean isRegular() {
+        return linearity != RegularGrammarCompiler.Linearity.NONE;
+    }
+
+    public RegularGrammarCompiler.Linearity getLinearity() {
+        return linearity;
+    }
+
+    /**
+     * @return the minimal DFA of the grammar, compiled on the first call, or {@code null} if
+     *         the grammar is not regular
+     */
+    public Dfa getDfa() {
+        Dfa built;
+        synchronized (this) {
+            if (dfa != null || !isRegular()) {
+                return dfa;
+            }
+            dfa = RegularGrammarCompiler.build(index, linearity, version);
+            built = dfa;
+        }
+        if (sink != null) {
+            sink.write(this);
+        }
+        return built;
+    }
+
+    /**
+     * @return {@code true} if {@link #getDfa()} would not need to compile the automaton
+     */
+    public synchronized boolean hasDfa() {
+        return dfa != null;
+    }
+
+    public boolean isLL1() {
+        return ll1Table != null;
+    }
+
+    /**
+     * @return the LL(1) table described in {@link #buildLl1Table()}, or {@code null}
+     *         if the grammar is not LL(1)
+     */
+    int[] getLl1Table() {
+        return ll1Table;
+    }
+
+    public String getAmbiguityHint() {
+        return ambiguityHint;
+    }
+
+    public int getVariableCount() {
+        return index.variableCount();
+    }
+
+    public int getRuleCount() {
+        return index.ruleCount();
+    }
+
+    public int getSize() {
+        return index.size();
+    }
+
+    public int getTerminalRuleCount() {
+        return terminalRuleCount;
+    }
+
+    public int getBinaryRuleCount() {
+        return binaryRuleCount;
+    }
+}
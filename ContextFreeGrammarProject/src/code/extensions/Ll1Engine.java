@@ -0,0 +1,77 @@
+package code.extensions;
+
+import java.util.Arrays;
+
+/**
+ * Membership engine for LL(1) grammars: a table-driven predictive parser that
+ * reads the word once from left to right.
+ */
+public class Ll1Engine implements MembershipEngine {
+    @Override
+    public String getName() {
+        return "ll1";
+    }
+
+    @Override
+    public boolean supports(GrammarProfile profile) {
+        return profile.isLL1();
+    }
+
+    /**
+     * Every character is matched once and causes on average as many expansions as there
+     * are symbols per rule. The table itself is built together with the profile.
+     */
+    @Override
+    public double estimateCost(GrammarProfile profile, int wordLength) {
+        double symbolsPerRule = profile.getRuleCount() == 0 ? 1 : (double) profile.getSize() / profile.getRuleCount();
+        return (wordLength + 1) * (1 + symbolsPerRule);
+    }
+
+    @Override
+    public boolean accepts(GrammarProfile profile, String word) {
+        GrammarIndex index = profile.getIndex();
+        int[] table = profile.getLl1Table();
+        int[] lookup = index.terminalLookup();
+        int[] body = index.body();
+        int columns = index.terminalCount() + 1;
+        int n = word.length();
+
+        int[] stack = new int[16];
+        int sp = 0;
+        stack[sp++] = index.getStart();
+        int pos = 0;
+        while (sp > 0) {
+            int top = stack[--sp];
+            int column;
+            if (pos == n) {
+                column = columns - 1;
+            } else {
+                char c = word.charAt(pos);
+                column = c < lookup.length ? lookup[c] : -1;
+                if (column < 0) {
+                    return false;
+                }
+            }
+            if (top < 0) {
+                if (~top != column) {
+                    return false;
+                }
+                pos++;
+                continue;
+            }
+            int r = table[top * columns + column];
+            if (r < 0) {
+                return false;
+            }
+            int from = index.bodyStart(r);
+            int to = index.bodyEnd(r);
+            if (sp + to - from > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + to - from));
+            }
+            for (int i = to - 1; i >= from; i--) {
+                stack[sp++] = body[i];
+            }
+        }
+        return pos == n;
+    }
+}
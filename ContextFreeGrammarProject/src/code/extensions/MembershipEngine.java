@@ -0,0 +1,38 @@
+package code.extensions;
+
+/**
+ * Represents an algorithm that decides whether a word belongs to the language of a grammar.
+ */
+public interface MembershipEngine {
+    /**
+     * @return the name shown to the user for this engine
+     */
+    String getName();
+
+    /**
+     * Checks whether this engine can decide membership for the profiled grammar.
+     *
+     * @param profile the capability profile of the grammar
+     * @return {@code true} if {@link #accepts(GrammarProfile, String)} may be called
+     */
+    boolean supports(GrammarProfile profile);
+
+    /**
+     * Estimates the number of elementary steps needed to check a word of the given length,
+     * including any one-time preparation that is not cached yet.
+     *
+     * @param profile    the capability profile of the grammar
+     * @param wordLength the length of the word
+     * @return the estimated cost
+     */
+    double estimateCost(GrammarProfile profile, int wordLength);
+
+    /**
+     * Decides whether the word is in the language of the profiled grammar.
+     *
+     * @param profile the capability profile of the grammar
+     * @param word    the word to check
+     * @return {@code true} if the word is in the language
+     */
+    boolean accepts(GrammarProfile profile, String word);
+}
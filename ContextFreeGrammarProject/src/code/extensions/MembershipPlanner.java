@@ -0,0 +1,119 @@
+package code.extensions;
+
+import code.Grammar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the cheapest {@link MembershipEngine} for a grammar and a word length.
+ * <p>
+ * Every registered engine that supports the grammar's {@link GrammarProfile} is asked for a
+ * cost estimate and the one with the lowest estimate is selected.
+ * </p>
+ */
+public class MembershipPlanner {
+    private static final List<MembershipEngine> ENGINES = List.of(
+            new DfaEngine(),
+            new Ll1Engine(),
+            new CykEngine()
+    );
+
+    /**
+     * Cost estimate of one engine for one query.
+     */
+    public static class Estimate {
+        private final MembershipEngine engine;
+        private final boolean supported;
+        private final double cost;
+
+        Estimate(MembershipEngine engine, boolean supported, double cost) {
+            this.engine = engine;
+            this.supported = supported;
+            this.cost = cost;
+        }
+
+        public MembershipEngine getEngine() {
+            return engine;
+        }
+
+        public boolean isSupported() {
+            return supported;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+    }
+
+    /**
+     * The engines considered for a query and the one that was chosen.
+     */
+    public static class Plan {
+        private final GrammarProfile profile;
+        private final List<Estimate> estimates;
+        private final Estimate chosen;
+
+        Plan(GrammarProfile profile, List<Estimate> estimates, Estimate chosen) {
+            this.profile = profile;
+            this.estimates = estimates;
+            this.chosen = chosen;
+        }
+
+        public GrammarProfile getProfile() {
+            return profile;
+        }
+
+        public List<Estimate> getEstimates() {
+            return estimates;
+        }
+
+        /**
+         * @return the cheapest supported engine, or {@code null} if no engine supports the grammar
+         */
+        public MembershipEngine getEngine() {
+            return chosen == null ? null : chosen.getEngine();
+        }
+
+        public double getCost() {
+            return chosen == null ? Double.NaN : chosen.getCost();
+        }
+
+        /**
+         * Runs the chosen engine.
+         *
+         * @param word the word to check
+         * @return {@code true} if the word is in the language
+         * @throws IllegalStateException if no engine supports the grammar
+         */
+        public boolean accepts(String word) {
+            if (chosen == null) {
+                throw new IllegalStateException("No membership engine supports grammar " + profile.getGrammarId());
+            }
+            return chosen.getEngine().accepts(profile, word);
+        }
+    }
+
+    /**
+     * Plans a membership query.
+     *
+     * @param grammar    the grammar
+     * @param wordLength the length of the word to check
+     * @return the plan; its engine is {@code null} if no engine supports the grammar
+     */
+    public static Plan plan(Grammar grammar, int wordLength) {
+        GrammarProfile profile = GrammarProfile.of(grammar);
+        List<Estimate> estimates = new ArrayList<>();
+        Estimate best = null;
+        for (MembershipEngine engine : ENGINES) {
+            boolean supported = engine.supports(profile);
+            Estimate estimate = new Estimate(engine, supported,
+                    supported ? engine.estimateCost(profile, wordLength) : Double.NaN);
+            estimates.add(estimate);
+            if (supported && (best == null || estimate.getCost() < best.getCost())) {
+                best = estimate;
+            }
+        }
+        return new Plan(profile, estimates, best);
+    }
+}
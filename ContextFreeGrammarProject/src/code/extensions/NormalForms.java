@@ -0,0 +1,494 @@
+package code.extensions;
+
+import code.Grammar;
+
+import java.util.*;
+
+/**
+ * Transformations that remove left recursion from a grammar and bring it into
+ * Greibach Normal Form (GNF), where every rule has the form {@code A → aB₁…Bₖ}.
+ * <p>
+ * Both transformations share the same preparation:
+ * <ol>
+ *   <li>Remove non-productive and unreachable variables.</li>
+ *   <li>Remove ε-rules. Bodies with more than {@value #MAX_NULLABLE_OCCURRENCES} nullable
+ *       occurrences are split with a fresh variable first, so that every body produces at
+ *       most {@code 2^}{@value #MAX_NULLABLE_OCCURRENCES} variants instead of a number
+ *       exponential in its length. If the start symbol was nullable, a new start symbol
+ *       with an ε-rule is added at the very end.</li>
+ *   <li>Remove unit rules {@code A → B} using the unit closure of every variable.</li>
+ * </ol>
+ * Left recursion is then removed with Paull's algorithm, applied only inside the strongly
+ * connected components of the left-corner graph that actually contain a cycle; all other
+ * variables are left untouched. For GNF the now acyclic left-corner graph is processed in
+ * topological order, so every leading variable is substituted exactly once, and terminals
+ * that do not lead a body are replaced by fresh variables.
+ * </p>
+ */
+public class NormalForms {
+    private static final int MAX_NULLABLE_OCCURRENCES = 3;
+
+    /**
+     * Creates a grammar without left recursion that generates the same language.
+     *
+     * @param grammar the grammar to transform
+     * @param newId   the ID of the new grammar
+     * @return the new grammar
+     * @throws IllegalStateException if the transformation runs out of variable names
+     */
+    public static Grammar removeLeftRecursion(Grammar grammar, String newId) {
+        Work work = new Work(grammar);
+        work.prepare();
+        work.removeLeftRecursion();
+        work.dropUseless();
+        return work.build(newId);
+    }
+
+    /**
+     * Creates a grammar in Greibach Normal Form that generates the same language.
+     *
+     * @param grammar the grammar to transform
+     * @param newId   the ID of the new grammar
+     * @return the new grammar
+     * @throws IllegalStateException if the transformation runs out of variable names
+     */
+    public static Grammar toGreibach(Grammar grammar, String newId) {
+        Work work = new Work(grammar);
+        work.prepare();
+        work.removeLeftRecursion();
+        work.substituteLeadingVariables();
+        work.liftTrailingTerminals();
+        work.dropUseless();
+        return work.build(newId);
+    }
+
+    /**
+     * Rule body with value semantics, so that duplicate rules are merged.
+     */
+    private static final class Body {
+        final int[] symbols;
+        final int hash;
+
+        Body(int[] symbols) {
+            this.symbols = symbols;
+            this.hash = Arrays.hashCode(symbols);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Body && Arrays.equals(symbols, ((Body) o).symbols);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Mutable grammar in the encoding of {@link GrammarIndex}: variables are indices
+     * ({@code >= 0}), terminals are complemented terminal indices ({@code < 0}).
+     */
+    private static final class Work {
+        final GrammarIndex index;
+        final FreshVariables fresh;
+        final List<Character> names = new ArrayList<>();
+        List<Set<Body>> rules = new ArrayList<>();
+        int start;
+        boolean startNullable;
+
+        Work(Grammar grammar) {
+            index = new GrammarIndex(grammar);
+            fresh = new FreshVariables(grammar);
+            for (int v = 0; v < index.variableCount(); v++) {
+                names.add(index.variable(v));
+                rules.add(new LinkedHashSet<>());
+            }
+            int[] body = index.body();
+            for (int r = 0; r < index.ruleCount(); r++) {
+                rules.get(index.lhs(r)).add(new Body(Arrays.copyOfRange(body, index.bodyStart(r), index.bodyEnd(r))));
+            }
+            start = index.getStart();
+        }
+
+        int newVariable() {
+            names.add(fresh.next());
+            rules.add(new LinkedHashSet<>());
+            return names.size() - 1;
+        }
+
+        void prepare() {
+            dropUseless();
+            removeEpsilonRules();
+            dropUseless();
+            removeUnitRules();
+            dropUseless();
+        }
+
+        boolean[] nullable() {
+            boolean[] nullable = new boolean[rules.size()];
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int v = 0; v < rules.size(); v++) {
+                    if (nullable[v]) continue;
+                    for (Body b : rules.get(v)) {
+                        if (allNullable(b.symbols, 0, b.symbols.length, nullable)) {
+                            nullable[v] = true;
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            return nullable;
+        }
+
+        static boolean allNullable(int[] symbols, int from, int to, boolean[] nullable) {
+            for (int i = from; i < to; i++) {
+                if (symbols[i] < 0 || !nullable[symbols[i]]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Removes non-productive variables, then variables unreachable from the start symbol.
+         */
+        void dropUseless() {
+            int n = rules.size();
+            boolean[] productive = new boolean[n];
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int v = 0; v < n; v++) {
+                    if (productive[v]) continue;
+                    for (Body b : rules.get(v)) {
+                        if (allProductive(b.symbols, productive)) {
+                            productive[v] = true;
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                rules.get(v).removeIf(b -> !allProductive(b.symbols, productive));
+            }
+
+            boolean[] reachable = new boolean[n];
+            Deque<Integer> queue = new ArrayDeque<>();
+            reachable[start] = true;
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                for (Body b : rules.get(v)) {
+                    for (int s : b.symbols) {
+                        if (s >= 0 && !reachable[s]) {
+                            reachable[s] = true;
+                            queue.add(s);
+                        }
+                    }
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                if (!reachable[v]) rules.get(v).clear();
+            }
+        }
+
+        static boolean allProductive(int[] symbols, boolean[] productive) {
+            for (int s : symbols) {
+                if (s >= 0 && !productive[s]) return false;
+            }
+            return true;
+        }
+
+        void removeEpsilonRules() {
+            boolean[] nullable = nullable();
+            startNullable = nullable[start];
+            List<Boolean> nullableFresh = new ArrayList<>();
+            for (int v = 0; v < rules.size(); v++) {
+                Set<Body> result = new LinkedHashSet<>();
+                for (Body b : rules.get(v)) {
+                    int[] symbols = split(b.symbols, nullable, nullableFresh);
+                    addVariants(symbols, nullable, nullableFresh, result);
+                }
+                rules.set(v, result);
+            }
+        }
+
+        private boolean isNullable(int s, boolean[] nullable, List<Boolean> nullableFresh) {
+            if (s < 0) return false;
+            if (s < index.variableCount()) return nullable[s];
+            return nullableFresh.get(s - index.variableCount());
+        }
+
+        /**
+         * Moves the tail of a body that starts at its second nullable occurrence into a fresh
+         * variable while the body has too many nullable occurrences. The fresh variable's rule
+         * is processed later by the caller's loop.
+         */
+        private int[] split(int[] symbols, boolean[] nullable, List<Boolean> nullableFresh) {
+            int count = 0;
+            int second = -1;
+            for (int i = 0; i < symbols.length; i++) {
+                if (isNullable(symbols[i], nullable, nullableFresh)) {
+                    count++;
+                    if (count == 2) second = i;
+                }
+            }
+            if (count <= MAX_NULLABLE_OCCURRENCES) {
+                return symbols;
+            }
+            int[] tail = Arrays.copyOfRange(symbols, second, symbols.length);
+            int var = newVariable();
+            rules.get(var).add(new Body(tail));
+            boolean tailNullable = true;
+            for (int s : tail) {
+                tailNullable &= isNullable(s, nullable, nullableFresh);
+            }
+            nullableFresh.add(tailNullable);
+            int[] head = Arrays.copyOf(symbols, second + 1);
+            head[second] = var;
+            return head;
+        }
+
+        private void addVariants(int[] symbols, boolean[] nullable, List<Boolean> nullableFresh, Set<Body> out) {
+            int[] positions = new int[symbols.length];
+            int count = 0;
+            for (int i = 0; i < symbols.length; i++) {
+                if (isNullable(symbols[i], nullable, nullableFresh)) positions[count++] = i;
+            }
+            for (int mask = 0; mask < (1 << count); mask++) {
+                int[] variant = new int[symbols.length - Integer.bitCount(mask)];
+                int p = 0;
+                int bit = 0;
+                for (int i = 0; i < symbols.length; i++) {
+                    if (bit < count && positions[bit] == i) {
+                        boolean omit = (mask & (1 << bit)) != 0;
+                        bit++;
+                        if (omit) continue;
+                    }
+                    variant[p++] = symbols[i];
+                }
+                if (variant.length > 0) {
+                    out.add(new Body(variant));
+                }
+            }
+        }
+
+        void removeUnitRules() {
+            int n = rules.size();
+            List<Set<Body>> result = new ArrayList<>(n);
+            for (int v = 0; v < n; v++) {
+                Set<Body> bodies = new LinkedHashSet<>();
+                boolean[] seen = new boolean[n];
+                Deque<Integer> queue = new ArrayDeque<>();
+                seen[v] = true;
+                queue.add(v);
+                while (!queue.isEmpty()) {
+                    int u = queue.poll();
+                    for (Body b : rules.get(u)) {
+                        if (b.symbols.length == 1 && b.symbols[0] >= 0) {
+                            if (!seen[b.symbols[0]]) {
+                                seen[b.symbols[0]] = true;
+                                queue.add(b.symbols[0]);
+                            }
+                        } else {
+                            bodies.add(b);
+                        }
+                    }
+                }
+                result.add(bodies);
+            }
+            rules = result;
+        }
+
+        /**
+         * @return the component of every variable in the left-corner graph; an edge
+         *         {@code A → B} exists if a body of {@code A} starts with {@code B}
+         */
+        int[] leftCornerComponents(boolean[] selfLoop) {
+            int n = rules.size();
+            int[] edgeStart = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                for (Body b : rules.get(v)) {
+                    if (b.symbols[0] >= 0) edgeStart[v + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                edgeStart[v + 1] += edgeStart[v];
+            }
+            int[] edges = new int[edgeStart[n]];
+            int p = 0;
+            for (int v = 0; v < n; v++) {
+                for (Body b : rules.get(v)) {
+                    if (b.symbols[0] >= 0) {
+                        edges[p++] = b.symbols[0];
+                        if (b.symbols[0] == v && selfLoop != null) selfLoop[v] = true;
+                    }
+                }
+            }
+            return GrammarAnalysis.stronglyConnectedComponents(n, edgeStart, edges);
+        }
+
+        void removeLeftRecursion() {
+            int n = rules.size();
+            boolean[] selfLoop = new boolean[n];
+            int[] component = leftCornerComponents(selfLoop);
+            Map<Integer, List<Integer>> members = new TreeMap<>();
+            for (int v = 0; v < n; v++) {
+                members.computeIfAbsent(component[v], k -> new ArrayList<>()).add(v);
+            }
+            int done = 0;
+            for (List<Integer> order : members.values()) {
+                Progress.report("left recursion", done, n);
+                done += order.size();
+                if (order.size() == 1 && !selfLoop[order.get(0)]) continue;
+                for (int i = 0; i < order.size(); i++) {
+                    int ai = order.get(i);
+                    for (int j = 0; j < i; j++) {
+                        Progress.check();
+                        int aj = order.get(j);
+                        Set<Body> result = new LinkedHashSet<>();
+                        for (Body b : rules.get(ai)) {
+                            if (b.symbols[0] == aj) {
+                                for (Body replacement : rules.get(aj)) {
+                                    result.add(new Body(concat(replacement.symbols, b.symbols, 1)));
+                                }
+                            } else {
+                                result.add(b);
+                            }
+                        }
+                        rules.set(ai, result);
+                    }
+                    removeImmediateLeftRecursion(ai);
+                }
+            }
+        }
+
+        private void removeImmediateLeftRecursion(int a) {
+            List<int[]> alphas = new ArrayList<>();
+            List<int[]> betas = new ArrayList<>();
+            for (Body b : rules.get(a)) {
+                if (b.symbols[0] == a) {
+                    if (b.symbols.length > 1) alphas.add(Arrays.copyOfRange(b.symbols, 1, b.symbols.length));
+                } else {
+                    betas.add(b.symbols);
+                }
+            }
+            if (alphas.isEmpty()) {
+                return;
+            }
+            int tail = newVariable();
+            Set<Body> aRules = new LinkedHashSet<>();
+            for (int[] beta : betas) {
+                aRules.add(new Body(beta));
+                aRules.add(new Body(append(beta, tail)));
+            }
+            Set<Body> tailRules = rules.get(tail);
+            for (int[] alpha : alphas) {
+                tailRules.add(new Body(alpha));
+                tailRules.add(new Body(append(alpha, tail)));
+            }
+            rules.set(a, aRules);
+        }
+
+        /**
+         * Requires an acyclic left-corner graph. Tarjan's algorithm numbers the components in
+         * reverse topological order, so every leading variable is already in GNF when it is
+         * substituted.
+         */
+        void substituteLeadingVariables() {
+            int n = rules.size();
+            int[] component = leftCornerComponents(null);
+            Integer[] order = new Integer[n];
+            for (int v = 0; v < n; v++) order[v] = v;
+            Arrays.sort(order, Comparator.comparingInt(v -> component[v]));
+            int done = 0;
+            for (int v : order) {
+                Progress.report("greibach", done++, n);
+                Set<Body> result = new LinkedHashSet<>();
+                for (Body b : rules.get(v)) {
+                    int lead = b.symbols[0];
+                    if (lead >= 0) {
+                        for (Body replacement : rules.get(lead)) {
+                            result.add(new Body(concat(replacement.symbols, b.symbols, 1)));
+                        }
+                    } else {
+                        result.add(b);
+                    }
+                }
+                rules.set(v, result);
+            }
+        }
+
+        void liftTrailingTerminals() {
+            Map<Integer, Integer> terminalVariables = new HashMap<>();
+            int n = rules.size();
+            for (int v = 0; v < n; v++) {
+                Set<Body> result = new LinkedHashSet<>();
+                for (Body b : rules.get(v)) {
+                    int[] symbols = b.symbols.clone();
+                    for (int i = 1; i < symbols.length; i++) {
+                        if (symbols[i] < 0) {
+                            int t = symbols[i];
+                            Integer var = terminalVariables.get(t);
+                            if (var == null) {
+                                var = newVariable();
+                                rules.get(var).add(new Body(new int[]{t}));
+                                terminalVariables.put(t, var);
+                            }
+                            symbols[i] = var;
+                        }
+                    }
+                    result.add(new Body(symbols));
+                }
+                rules.set(v, result);
+            }
+        }
+
+        private static int[] concat(int[] prefix, int[] symbols, int from) {
+            int[] result = Arrays.copyOf(prefix, prefix.length + symbols.length - from);
+            System.arraycopy(symbols, from, result, prefix.length, symbols.length - from);
+            return result;
+        }
+
+        private static int[] append(int[] symbols, int s) {
+            int[] result = Arrays.copyOf(symbols, symbols.length + 1);
+            result[symbols.length] = s;
+            return result;
+        }
+
+        Grammar build(String newId) {
+            if (startNullable) {
+                int newStart = newVariable();
+                rules.get(newStart).addAll(rules.get(start));
+                rules.get(newStart).add(new Body(new int[0]));
+                start = newStart;
+            }
+
+            Grammar result = new Grammar(newId, names.get(start));
+            for (int t = 0; t < index.terminalCount(); t++) {
+                result.addTerminal(index.terminal(t));
+            }
+            for (int v = 0; v < rules.size(); v++) {
+                if (!rules.get(v).isEmpty()) result.addVariable(names.get(v));
+            }
+            int ruleNum = 1;
+            for (int v = 0; v < rules.size(); v++) {
+                for (Body b : rules.get(v)) {
+                    StringBuilder rhs = new StringBuilder();
+                    for (int s : b.symbols) {
+                        rhs.append(s >= 0 ? names.get(s) : index.terminal(~s));
+                    }
+                    if (rhs.length() == 0) {
+                        result.addTerminal(GrammarIndex.EPSILON);
+                        rhs.append(GrammarIndex.EPSILON);
+                    }
+                    result.addRule("r" + (ruleNum++), names.get(v), rhs.toString());
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package code.extensions;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation, progress reporting and resource guards for long-running algorithms.
+ * <p>
+ * Algorithms call {@link #report(String, long, long)} or {@link #check()} at points where they
+ * can stop; both throw a {@link CancellationException} once the running thread has been
+ * interrupted, which unwinds the algorithm and lets its working memory be collected. A thread
+ * that wants to follow the progress of the algorithms it runs installs a {@link Listener}.
+ * On threads that are never interrupted and have no listener the calls cost next to nothing.
+ * </p>
+ * <p>
+ * While a command runs under a {@link #guard(String, Budget) guard}, the checkpoints also
+ * throw a {@link BudgetExceededException} once its time limit has passed, and
+ * {@link #reserve(long, long)} refuses allocations beyond its cell and byte limits before
+ * they are made.
+ * </p>
+ */
+public final class Progress {
+    private static final ThreadLocal<Listener> LISTENER = new ThreadLocal<>();
+    private static final ThreadLocal<Guard> GUARD = new ThreadLocal<>();
+
+    /**
+     * Receives the progress of the algorithms running on a thread.
+     */
+    public interface Listener {
+        /**
+         * @param phase the name of the running algorithm or step
+         * @param done  the units of work finished so far
+         * @param total the units of work of the whole step
+         */
+        void update(String phase, long done, long total);
+    }
+
+    private Progress() {
+    }
+
+    /**
+     * Sets the listener of the current thread.
+     *
+     * @param listener the listener, or {@code null} to remove it
+     */
+    public static void setListener(Listener listener) {
+        if (listener == null) {
+            LISTENER.remove();
+        } else {
+            LISTENER.set(listener);
+        }
+    }
+
+    /**
+     * Limits of the command running on a thread.
+     */
+    public static final class Guard implements AutoCloseable {
+        private final String command;
+        private final Budget budget;
+        private final long deadline;
+        private final Guard outer;
+
+        private Guard(String command, Budget budget, Guard outer) {
+            this.command = command;
+            this.budget = budget;
+            long millis = budget.get(Budget.Kind.MILLIS);
+            this.deadline = millis == 0 ? 0 : System.nanoTime() + millis * 1_000_000;
+            this.outer = outer;
+        }
+
+        /**
+         * Ends the guard, restoring the one that was active before.
+         */
+        @Override
+        public void close() {
+            if (outer == null) {
+                GUARD.remove();
+            } else {
+                GUARD.set(outer);
+            }
+        }
+    }
+
+    /**
+     * Puts the current thread under the limits of a command until the returned guard is
+     * closed. Guards nest; the innermost one applies.
+     *
+     * @param command the name of the command, used in the messages
+     * @param budget  the limits
+     * @return the guard to close when the command ends
+     */
+    public static Guard guard(String command, Budget budget) {
+        Guard guard = new Guard(command, budget, GUARD.get());
+        GUARD.set(guard);
+        return guard;
+    }
+
+    /**
+     * @throws CancellationException    if the current thread has been interrupted
+     * @throws BudgetExceededException if the time limit of the running command has passed
+     */
+    public static void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Cancelled.");
+        }
+        Guard guard = GUARD.get();
+        if (guard != null && guard.deadline != 0 && System.nanoTime() - guard.deadline > 0) {
+            throw new BudgetExceededException(guard.command + " aborted: it ran longer than its time budget of "
+                    + String.format("%,d", guard.budget.get(Budget.Kind.MILLIS)) + " ms.");
+        }
+    }
+
+    /**
+     * Checks an allocation against the limits of the running command before it is made.
+     *
+     * @param cells the number of chart cells to allocate, or 0
+     * @param bytes the estimated number of bytes to allocate
+     * @throws BudgetExceededException if the allocation exceeds a limit
+     */
+    public static void reserve(long cells, long bytes) {
+        Guard guard = GUARD.get();
+        if (guard == null) {
+            return;
+        }
+        long maxCells = guard.budget.get(Budget.Kind.CELLS);
+        if (maxCells != 0 && cells > maxCells) {
+            throw new BudgetExceededException(String.format(
+                    "%s refused: it needs about %,d chart cells, more than its budget of %,d.",
+                    guard.command, cells, maxCells));
+        }
+        long maxBytes = guard.budget.get(Budget.Kind.BYTES);
+        if (maxBytes != 0 && bytes > maxBytes) {
+            throw new BudgetExceededException(String.format(
+                    "%s refused: it needs about %,d bytes of memory, more than its budget of %,d.",
+                    guard.command, bytes, maxBytes));
+        }
+    }
+
+    /**
+     * Reports progress to the listener of the current thread, after a {@link #check()}.
+     *
+     * @param phase the name of the running algorithm or step
+     * @param done  the units of work finished so far
+     * @param total the units of work of the whole step
+     * @throws CancellationException if the current thread has been interrupted
+     */
+    public static void report(String phase, long done, long total) {
+        check();
+        Listener listener = LISTENER.get();
+        if (listener != null) {
+            listener.update(phase, done, total);
+        }
+    }
+}
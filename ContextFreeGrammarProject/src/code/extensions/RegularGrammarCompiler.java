@@ -0,0 +1,450 @@
+package code.extensions;
+
+import code.Grammar;
+
+import java.util.*;
+
+/**
+ * Compiles right-linear and left-linear grammars into minimal {@link Dfa}s.
+ * <p>
+ * The grammar is first turned into an NFA with one state per variable (plus helper states for
+ * rules with several terminals), then determinised with the subset construction and minimised
+ * with Hopcroft's partition refinement. Compiled automata are kept by the
+ * {@link GrammarProfile} of the grammar and rebuilt only when {@link Grammar#getVersion()}
+ * changes.
+ * </p>
+ */
+public class RegularGrammarCompiler {
+    /**
+     * Shape of a grammar with respect to linearity.
+     */
+    public enum Linearity {
+        RIGHT_LINEAR,
+        LEFT_LINEAR,
+        NONE
+    }
+
+    /**
+     * Returns the automaton of a linear grammar, compiling it if the {@link GrammarProfile} of
+     * the grammar does not hold an up-to-date one yet.
+     *
+     * @param grammar the grammar to compile
+     * @return the minimal DFA, or {@code null} if the grammar is neither right- nor left-linear
+     */
+    public static Dfa compile(Grammar grammar) {
+        return GrammarProfile.of(grammar).getDfa();
+    }
+
+    /**
+     * Determines whether every rule has the form {@code A → wB} / {@code A → w}
+     * (right-linear) or {@code A → Bw} / {@code A → w} (left-linear), where {@code w}
+     * is a possibly empty word of terminals.
+     *
+     * @param grammar the grammar to classify
+     * @return the linearity of the grammar
+     */
+    public static Linearity linearity(Grammar grammar) {
+        return linearity(new GrammarIndex(grammar));
+    }
+
+    static Linearity linearity(GrammarIndex index) {
+        int[] body = index.body();
+        boolean right = true;
+        boolean left = true;
+        for (int r = 0; r < index.ruleCount() && (right || left); r++) {
+            int from = index.bodyStart(r);
+            int to = index.bodyEnd(r);
+            for (int i = from; i < to; i++) {
+                if (body[i] >= 0) {
+                    if (i != to - 1) right = false;
+                    if (i != from) left = false;
+                }
+            }
+        }
+        if (right) return Linearity.RIGHT_LINEAR;
+        if (left) return Linearity.LEFT_LINEAR;
+        return Linearity.NONE;
+    }
+
+    static Dfa build(GrammarIndex index, Linearity linearity, int version) {
+        int n = index.variableCount();
+        int k = index.terminalCount();
+        int[] body = index.body();
+
+        // NFA: states 0..n-1 are the variables, n is the extra initial or final state
+        Nfa nfa = new Nfa(n + 1);
+        int extra = n;
+        for (int r = 0; r < index.ruleCount(); r++) {
+            int from = index.bodyStart(r);
+            int to = index.bodyEnd(r);
+            int lhs = index.lhs(r);
+            if (linearity == Linearity.RIGHT_LINEAR) {
+                int target = extra;
+                int last = to;
+                if (to > from && body[to - 1] >= 0) {
+                    target = body[to - 1];
+                    last = to - 1;
+                }
+                nfa.chain(lhs, body, from, last, target);
+            } else {
+                int source = extra;
+                int first = from;
+                if (to > from && body[from] >= 0) {
+                    source = body[from];
+                    first = from + 1;
+                }
+                nfa.chain(source, body, first, to, lhs);
+            }
+        }
+        int nfaStart = linearity == Linearity.RIGHT_LINEAR ? index.getStart() : extra;
+        int nfaFinal = linearity == Linearity.RIGHT_LINEAR ? extra : index.getStart();
+
+        Determinized det = determinize(nfa, nfaStart, nfaFinal, k);
+        return minimize(det, k, index, version);
+    }
+
+    /**
+     * Growable NFA with transitions stored as (symbol, target) pairs, symbol {@code -1} being ε.
+     */
+    private static final class Nfa {
+        int states;
+        int[][] edges;
+        int[] edgeCount;
+
+        Nfa(int states) {
+            this.states = states;
+            this.edges = new int[states][];
+            this.edgeCount = new int[states];
+        }
+
+        int newState() {
+            if (states == edges.length) {
+                edges = Arrays.copyOf(edges, states * 2);
+                edgeCount = Arrays.copyOf(edgeCount, states * 2);
+            }
+            return states++;
+        }
+
+        void add(int from, int symbol, int to) {
+            int[] list = edges[from];
+            int count = edgeCount[from];
+            if (list == null) {
+                list = edges[from] = new int[4];
+            } else if (2 * count + 2 > list.length) {
+                list = edges[from] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[2 * count] = symbol;
+            list[2 * count + 1] = to;
+            edgeCount[from] = count + 1;
+        }
+
+        /**
+         * Adds a path from {@code from} to {@code to} reading the terminals
+         * {@code body[first..last)}, or an ε-transition if there are none.
+         */
+        void chain(int from, int[] body, int first, int last, int to) {
+            if (first == last) {
+                add(from, -1, to);
+                return;
+            }
+            int current = from;
+            for (int i = first; i < last; i++) {
+                int next = i == last - 1 ? to : newState();
+                add(current, ~body[i], next);
+                current = next;
+            }
+        }
+    }
+
+    /**
+     * Result of the subset construction; a complete DFA whose last row may be the dead state.
+     */
+    private static final class Determinized {
+        int states;
+        int start;
+        int[] table;
+        boolean[] accepting;
+    }
+
+    private static final class StateSet {
+        final int[] states;
+        final int hash;
+
+        StateSet(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateSet && Arrays.equals(states, ((StateSet) o).states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static Determinized determinize(Nfa nfa, int nfaStart, int nfaFinal, int k) {
+        int[] stamp = new int[nfa.states];
+        int[] stack = new int[nfa.states];
+        int[] buffer = new int[nfa.states];
+        int[] round = {0};
+
+        Map<StateSet, Integer> ids = new HashMap<>();
+        List<int[]> sets = new ArrayList<>();
+        int[] table = new int[Math.max(k, 1) * 16];
+        int tableRows = 0;
+
+        int[] startSet = closure(nfa, new int[]{nfaStart}, 1, stamp, stack, buffer, round);
+        ids.put(new StateSet(startSet), 0);
+        sets.add(startSet);
+
+        int[][] moves = new int[k][];
+        int[] moveCount = new int[k];
+        for (int d = 0; d < sets.size(); d++) {
+            Progress.check();
+            int[] set = sets.get(d);
+            Arrays.fill(moveCount, 0);
+            for (int q : set) {
+                int[] list = nfa.edges[q];
+                for (int e = 0; e < nfa.edgeCount[q]; e++) {
+                    int symbol = list[2 * e];
+                    if (symbol < 0) continue;
+                    if (moves[symbol] == null) {
+                        moves[symbol] = new int[4];
+                    } else if (moveCount[symbol] == moves[symbol].length) {
+                        moves[symbol] = Arrays.copyOf(moves[symbol], moveCount[symbol] * 2);
+                    }
+                    moves[symbol][moveCount[symbol]++] = list[2 * e + 1];
+                }
+            }
+            if ((tableRows + 1) * k > table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, (tableRows + 1) * k));
+            }
+            for (int c = 0; c < k; c++) {
+                int[] target = closure(nfa, moves[c], moveCount[c], stamp, stack, buffer, round);
+                StateSet key = new StateSet(target);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = sets.size();
+                    ids.put(key, id);
+                    sets.add(target);
+                }
+                table[tableRows * k + c] = id;
+            }
+            tableRows++;
+        }
+
+        Determinized result = new Determinized();
+        result.states = sets.size();
+        result.start = 0;
+        result.table = table;
+        result.accepting = new boolean[sets.size()];
+        for (int d = 0; d < sets.size(); d++) {
+            for (int q : sets.get(d)) {
+                if (q == nfaFinal) {
+                    result.accepting[d] = true;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the sorted ε-closure of {@code seeds[0..count)}.
+     */
+    private static int[] closure(Nfa nfa, int[] seeds, int count, int[] stamp, int[] stack, int[] buffer, int[] round) {
+        int mark = ++round[0];
+        int size = 0;
+        int sp = 0;
+        for (int i = 0; i < count; i++) {
+            int q = seeds[i];
+            if (stamp[q] != mark) {
+                stamp[q] = mark;
+                buffer[size++] = q;
+                stack[sp++] = q;
+            }
+        }
+        while (sp > 0) {
+            int q = stack[--sp];
+            int[] list = nfa.edges[q];
+            for (int e = 0; e < nfa.edgeCount[q]; e++) {
+                if (list[2 * e] >= 0) continue;
+                int t = list[2 * e + 1];
+                if (stamp[t] != mark) {
+                    stamp[t] = mark;
+                    buffer[size++] = t;
+                    stack[sp++] = t;
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(buffer, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Hopcroft's algorithm. Blocks are contiguous segments of {@code elements}; marking a state
+     * moves it to the front of its block, so a split costs time proportional to the smaller half.
+     */
+    private static Dfa minimize(Determinized det, int k, GrammarIndex index, int version) {
+        int n = det.states;
+        int[] table = det.table;
+
+        // inverse transitions per (symbol, target)
+        int[] invStart = new int[k * n + 1];
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < k; c++) {
+                invStart[c * n + table[s * k + c] + 1]++;
+            }
+        }
+        for (int i = 0; i < k * n; i++) {
+            invStart[i + 1] += invStart[i];
+        }
+        int[] inv = new int[n * k];
+        int[] fill = Arrays.copyOf(invStart, k * n);
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < k; c++) {
+                inv[fill[c * n + table[s * k + c]]++] = s;
+            }
+        }
+
+        int[] elements = new int[n];
+        int[] location = new int[n];
+        int[] blockOf = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] mid = new int[n];
+        int blocks = 0;
+
+        int pos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int blockStart = pos;
+            for (int s = 0; s < n; s++) {
+                if (det.accepting[s] == (pass == 0)) {
+                    elements[pos] = s;
+                    location[s] = pos++;
+                    blockOf[s] = blocks;
+                }
+            }
+            if (pos > blockStart) {
+                first[blocks] = mid[blocks] = blockStart;
+                end[blocks] = pos;
+                blocks++;
+            }
+        }
+
+        boolean[] inWork = new boolean[n];
+        int[] work = new int[n];
+        int workSize = 0;
+        int smallest = 0;
+        for (int b = 1; b < blocks; b++) {
+            if (end[b] - first[b] < end[smallest] - first[smallest]) smallest = b;
+        }
+        if (blocks > 1) {
+            work[workSize++] = smallest;
+            inWork[smallest] = true;
+        }
+
+        int[] touched = new int[n];
+        int[] splitter = new int[n];
+        while (workSize > 0) {
+            Progress.check();
+            int a = work[--workSize];
+            inWork[a] = false;
+            int splitterSize = end[a] - first[a];
+            System.arraycopy(elements, first[a], splitter, 0, splitterSize);
+            for (int c = 0; c < k; c++) {
+                int touchedCount = 0;
+                for (int i = 0; i < splitterSize; i++) {
+                    int t = splitter[i];
+                    for (int j = invStart[c * n + t]; j < invStart[c * n + t + 1]; j++) {
+                        int s = inv[j];
+                        int b = blockOf[s];
+                        int loc = location[s];
+                        if (loc < mid[b]) continue;
+                        if (mid[b] == first[b]) touched[touchedCount++] = b;
+                        int other = elements[mid[b]];
+                        elements[mid[b]] = s;
+                        location[s] = mid[b];
+                        elements[loc] = other;
+                        location[other] = loc;
+                        mid[b]++;
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int b = touched[i];
+                    if (mid[b] == end[b]) {
+                        mid[b] = first[b];
+                        continue;
+                    }
+                    int nb = blocks++;
+                    if (mid[b] - first[b] <= end[b] - mid[b]) {
+                        first[nb] = first[b];
+                        end[nb] = mid[b];
+                        first[b] = mid[b];
+                    } else {
+                        first[nb] = mid[b];
+                        end[nb] = end[b];
+                        end[b] = mid[b];
+                    }
+                    mid[b] = first[b];
+                    mid[nb] = first[nb];
+                    for (int p = first[nb]; p < end[nb]; p++) {
+                        blockOf[elements[p]] = nb;
+                    }
+                    work[workSize++] = nb;
+                    inWork[nb] = true;
+                }
+            }
+        }
+
+        // the dead state is the block that cannot reach an accepting block
+        boolean[] live = new boolean[blocks];
+        int[] queue = new int[blocks];
+        int tail = 0;
+        for (int b = 0; b < blocks; b++) {
+            if (det.accepting[elements[first[b]]]) {
+                live[b] = true;
+                queue[tail++] = b;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int b = queue[head];
+            for (int p = first[b]; p < end[b]; p++) {
+                int t = elements[p];
+                for (int c = 0; c < k; c++) {
+                    for (int j = invStart[c * n + t]; j < invStart[c * n + t + 1]; j++) {
+                        int source = blockOf[inv[j]];
+                        if (!live[source]) {
+                            live[source] = true;
+                            queue[tail++] = source;
+                        }
+                    }
+                }
+            }
+        }
+        int[] renumber = new int[blocks];
+        int states = 0;
+        for (int b = 0; b < blocks; b++) {
+            renumber[b] = live[b] ? states++ : -1;
+        }
+
+        int[] minTable = new int[states * k];
+        boolean[] accepting = new boolean[states];
+        for (int b = 0; b < blocks; b++) {
+            if (!live[b]) continue;
+            int representative = elements[first[b]];
+            int row = renumber[b];
+            accepting[row] = det.accepting[representative];
+            for (int c = 0; c < k; c++) {
+                minTable[row * k + c] = renumber[blockOf[table[representative * k + c]]];
+            }
+        }
+
+        return new Dfa(renumber[blockOf[det.start]], states, k, minTable, accepting, index.terminalLookup(), version);
+    }
+}
@@ -0,0 +1,211 @@
+package code.extensions;
+
+import code.Grammar;
+
+import java.util.Arrays;
+
+/**
+ * Computes, for every variable of a grammar, the length of the shortest terminal word it
+ * derives together with a witness word.
+ * <p>
+ * Implements Knuth's generalisation of Dijkstra's algorithm to grammars: variables are
+ * settled in order of increasing length using a priority queue; every rule keeps the number
+ * of variable occurrences in its body that are not settled yet and the length accumulated so
+ * far, and offers a candidate length for its left side once that number drops to zero.
+ * The running time is O(|G| log |G|).
+ * </p>
+ */
+public class ShortestWords {
+    private final GrammarIndex index;
+    private final long[] length;
+    private final int[] bestRule;
+
+    private ShortestWords(GrammarIndex index) {
+        this.index = index;
+        int n = index.variableCount();
+        int m = index.ruleCount();
+        int[] body = index.body();
+
+        length = new long[n];
+        Arrays.fill(length, -1);
+        bestRule = new int[n];
+        Arrays.fill(bestRule, -1);
+
+        int[] pending = new int[m];
+        long[] partial = new long[m];
+        Heap heap = new Heap(m + 1);
+        for (int r = 0; r < m; r++) {
+            for (int i = index.bodyStart(r); i < index.bodyEnd(r); i++) {
+                if (body[i] >= 0) {
+                    pending[r]++;
+                } else {
+                    partial[r]++;
+                }
+            }
+            if (pending[r] == 0) {
+                heap.push(partial[r], r);
+            }
+        }
+
+        int[] occurrences = index.occurrences();
+        while (!heap.isEmpty()) {
+            long dist = heap.topKey();
+            int r = heap.pop();
+            int v = index.lhs(r);
+            if (length[v] >= 0) {
+                continue;
+            }
+            length[v] = dist;
+            bestRule[v] = r;
+            for (int i = index.occurrencesStart(v); i < index.occurrencesEnd(v); i++) {
+                int user = occurrences[i];
+                partial[user] = saturatedAdd(partial[user], dist);
+                if (--pending[user] == 0 && length[index.lhs(user)] < 0) {
+                    heap.push(partial[user], user);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the shortest words of all variables of a grammar.
+     *
+     * @param grammar the grammar
+     * @return the result
+     */
+    public static ShortestWords compute(Grammar grammar) {
+        return new ShortestWords(new GrammarIndex(grammar));
+    }
+
+    /**
+     * Computes the shortest words of all variables of an indexed grammar.
+     *
+     * @param index the grammar index
+     * @return the result
+     */
+    public static ShortestWords compute(GrammarIndex index) {
+        return new ShortestWords(index);
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    public GrammarIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param v the variable index
+     * @return the length of the shortest word derived from the variable, or {@code -1}
+     *         if the variable does not derive any word
+     */
+    public long length(int v) {
+        return length[v];
+    }
+
+    /**
+     * @param v the variable index
+     * @return the index of the rule that starts a shortest derivation, or {@code -1}
+     */
+    public int bestRule(int v) {
+        return bestRule[v];
+    }
+
+    /**
+     * Builds a shortest word for a variable by expanding the best rule of every variable.
+     *
+     * @param v         the variable index
+     * @param maxLength the longest witness that should be built
+     * @return the witness, or {@code null} if the variable derives no word or the shortest
+     *         word is longer than {@code maxLength}
+     */
+    public String witness(int v, int maxLength) {
+        if (length[v] < 0 || length[v] > maxLength) {
+            return null;
+        }
+        int[] body = index.body();
+        StringBuilder word = new StringBuilder((int) length[v]);
+        int[] stack = new int[16];
+        int sp = 0;
+        stack[sp++] = v;
+        while (sp > 0) {
+            int symbol = stack[--sp];
+            if (symbol < 0) {
+                word.append(index.terminal(~symbol));
+                continue;
+            }
+            int r = bestRule[symbol];
+            int from = index.bodyStart(r);
+            int to = index.bodyEnd(r);
+            if (sp + to - from > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + to - from));
+            }
+            for (int i = to - 1; i >= from; i--) {
+                stack[sp++] = body[i];
+            }
+        }
+        return word.toString();
+    }
+
+    /**
+     * Binary min-heap of rule indices keyed by candidate lengths. Stale entries are skipped
+     * by the caller instead of being decreased in place.
+     */
+    private static final class Heap {
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        Heap(int capacity) {
+            keys = new long[Math.max(capacity, 1)];
+            values = new int[Math.max(capacity, 1)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long topKey() {
+            return keys[0];
+        }
+
+        void push(long key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) break;
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int pop() {
+            int top = values[0];
+            size--;
+            long key = keys[size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (key <= keys[child]) break;
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+    }
+}